@@ -0,0 +1,121 @@
+package gitlet;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** JMH benchmarks of the binary format of Codec against the Java
+ *  serialization it replaced, encoding and decoding a commit and a
+ *  staging area with many files tracked and some staged for removal.
+ *  The size of each encoding is printed when the state is set up.  Run
+ *  with "make bench BENCH_FLAGS=Codec" in proj3.
+ *  @author Aayush Sutaria
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    /** Files tracked in the staging area. */
+    @Param({ "100", "10000" })
+    public int files;
+
+    /** Make the commit and staging area, and encode them both ways. */
+    @Setup
+    public void setup() {
+        HashMap<String, String> tracked = new HashMap<>();
+        for (int i = 0; i < files; i += 1) {
+            tracked.put("src/dir" + i / 100 + "/file" + i + ".java",
+                        Utils.sha1("contents " + i));
+        }
+        _stage = new Stage("master");
+        _stage.getTrackedFiles().putAll(tracked);
+        Tree tree = new Tree();
+        tree.setTracked(tracked);
+        _stage.getStagingTree().add(tree);
+        for (int i = 0; i < files; i += 10) {
+            _stage.remove("src/dir" + i / 100 + "/file" + i + ".java");
+        }
+        _commit = new Commit(null, "a commit message of ordinary length",
+                             Utils.sha1("parent"), null);
+        _stageBytes = _stage.encode();
+        _stageSerialized = Utils.serialize(_stage);
+        _commitBytes = _commit.encode();
+        _commitSerialized = Utils.serialize(_commit);
+        System.out.printf("%nstage: %d bytes encoded, %d serialized%n"
+                          + "commit: %d bytes encoded, %d serialized%n",
+                          _stageBytes.length, _stageSerialized.length,
+                          _commitBytes.length, _commitSerialized.length);
+    }
+
+    /** Encode the staging area. */
+    @Benchmark
+    public byte[] encodeStage() {
+        return _stage.encode();
+    }
+
+    /** Decode the staging area. */
+    @Benchmark
+    public Stage decodeStage() {
+        return Stage.decode(_stageBytes);
+    }
+
+    /** Serialize the staging area, as before Codec. */
+    @Benchmark
+    public byte[] serializeStage() {
+        return Utils.serialize(_stage);
+    }
+
+    /** Deserialize the staging area, as before Codec. */
+    @Benchmark
+    public Stage deserializeStage() {
+        return Utils.deserialize(_stageSerialized, Stage.class);
+    }
+
+    /** Encode the commit. */
+    @Benchmark
+    public byte[] encodeCommit() {
+        return _commit.encode();
+    }
+
+    /** Decode the commit. */
+    @Benchmark
+    public Commit decodeCommit() {
+        return Commit.decode(_commitBytes);
+    }
+
+    /** Serialize the commit, as before Codec. */
+    @Benchmark
+    public byte[] serializeCommit() {
+        return Utils.serialize(_commit);
+    }
+
+    /** Deserialize the commit, as before Codec. */
+    @Benchmark
+    public Commit deserializeCommit() {
+        return Utils.deserialize(_commitSerialized, Commit.class);
+    }
+
+    /** The staging area and commit encoded. */
+    private Stage _stage;
+    /** The commit encoded. */
+    private Commit _commit;
+    /** Their encodings in the format of Codec. */
+    private byte[] _stageBytes, _commitBytes;
+    /** Their serialized forms. */
+    private byte[] _stageSerialized, _commitSerialized;
+}
@@ -0,0 +1,119 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** JMH benchmarks of gitlet commands run in a warmed-up JVM, as the
+ *  daemon runs them, on a repository from RepoGenerator, with the steps
+ *  of CommandScenario between runs untimed.  As gitlet works on the
+ *  working directory, the repository is built in the one JMH runs in,
+ *  which must be empty or hold only an earlier run's repository; "make
+ *  bench" in proj3 runs JMH in bench/work.  For CSV output, pass JMH
+ *  "-rf csv -rff FILE", as in
+ *      make bench BENCH_FLAGS="Command -rf csv -rff commands.csv"
+ *  Times that include starting the JVM come from TimingHarness.
+ *  @author Aayush Sutaria
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class CommandBenchmark {
+
+    /** The command timed. */
+    @Param({ "add", "commit", "status", "log", "checkout", "merge",
+             "fetch", "push" })
+    public String command;
+
+    /** Commits in the generated history. */
+    @Param({ "1000" })
+    public int commits;
+
+    /** Files in the generated repository. */
+    @Param({ "1000" })
+    public int files;
+
+    /** Build the repository and its remote in the working directory. */
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Path dir = Paths.get(".");
+        clear(dir);
+        Files.createFile(dir.resolve(MARKER));
+        Main.forget();
+        _out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        new RepoGenerator(commits, RepoGenerator.DEFAULT_BRANCHES, files,
+                          RepoGenerator.DEFAULT_MEDIAN_SIZE,
+                          RepoGenerator.DEFAULT_SIZE_SPREAD,
+                          RepoGenerator.DEFAULT_MERGE_EVERY, 1)
+            .generate(dir, RepoGenerator.inProcess());
+        _scenario = new CommandScenario(dir, RepoGenerator.inProcess(), 1);
+        _scenario.setUp();
+    }
+
+    /** Do the untimed steps before the command. */
+    @Setup(Level.Invocation)
+    public void prepare() throws IOException {
+        _scenario.prepare(command);
+    }
+
+    /** Run the command. */
+    @Benchmark
+    public void run() throws IOException {
+        _scenario.run(command);
+    }
+
+    /** Put back the standard output and drop the repository's state. */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        _scenario.finish(command);
+        System.setOut(_out);
+        Main.forget();
+    }
+
+    /** Delete everything in DIR, which must be empty or hold MARKER. */
+    private static void clear(Path dir) throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            boolean scratch = Files.exists(dir.resolve(MARKER));
+            for (Path p : entries) {
+                if (!scratch) {
+                    throw new IllegalStateException(
+                            "CommandBenchmark builds repositories in the "
+                            + "working directory, which must be empty; "
+                            + "run it with \"make bench\" in proj3");
+                }
+                CommandScenario.delete(p);
+            }
+        }
+    }
+
+    /** File marking a working directory as this benchmark's. */
+    private static final String MARKER = ".gitlet-bench";
+
+    /** The steps around the command. */
+    private CommandScenario _scenario;
+    /** The standard output, while it is replaced. */
+    private PrintStream _out;
+}
@@ -0,0 +1,219 @@
+package gitlet;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** The gitlet commands the benchmarks time, each with the untimed steps
+ *  that put a repository from RepoGenerator in the state it needs, so
+ *  that it can be run again and again.  The remote of fetch and push is
+ *  a copy of the repository in its subdirectory "remote", which the
+ *  repository ignores, on its own branch "upstream"; it is worked on by
+ *  gitlet run in a JVM of its own.
+ *  @author Aayush Sutaria
+ */
+public class CommandScenario {
+
+    /** The commands timed. */
+    public static final String[] COMMANDS = {
+        "add", "commit", "status", "log", "checkout", "merge", "fetch",
+        "push"
+    };
+
+    /** A scenario on the repository in DIR, which GITLET works on, with
+     *  edits chosen at random from SEED. */
+    public CommandScenario(Path dir, RepoGenerator.Gitlet gitlet, long seed) {
+        _dir = dir;
+        _gitlet = gitlet;
+        _remoteDir = dir.resolve(REMOTE);
+        _remote = RepoGenerator.process(_remoteDir);
+        _random = new Random(seed);
+        _edits = new RepoGenerator(1, 1, 1, 1, 0, 0, seed);
+    }
+
+    /** Make the remote and the side branch merge takes its commits
+     *  from. */
+    public void setUp() throws IOException {
+        RepoGenerator.write(_dir.resolve(Ignore.FILE_NAME),
+                            "/" + REMOTE + "/\n");
+        copy(_dir.resolve(".gitlet"), _remoteDir.resolve(".gitlet"));
+        _remote.run("branch", UPSTREAM);
+        _remote.run("checkout", UPSTREAM);
+        _gitlet.run("add-remote", REMOTE_NAME,
+                    REMOTE + "/.gitlet");
+        _gitlet.run("branch", SIDE);
+    }
+
+    /** Do the untimed steps before COMMAND. */
+    public void prepare(String command) throws IOException {
+        switch (command) {
+        case "add":
+        case "status":
+            editFiles();
+            break;
+        case "commit":
+            _gitlet.run(editFiles());
+            break;
+        case "merge":
+            _gitlet.run("checkout", SIDE);
+            String name = SIDE + "/s" + _sideFiles + ".txt";
+            _sideFiles += 1;
+            RepoGenerator.write(_dir.resolve(name), "side " + name + "\n");
+            _gitlet.run("add", name);
+            _gitlet.run("commit", "side commit");
+            _gitlet.run("checkout", "master");
+            break;
+        case "fetch":
+            name = "up/u" + _upstreamFiles + ".txt";
+            _upstreamFiles += 1;
+            RepoGenerator.write(_remoteDir.resolve(name),
+                                "upstream " + name + "\n");
+            _remote.run("add", name);
+            _remote.run("commit", "upstream commit");
+            break;
+        case "push":
+            _gitlet.run(editFiles());
+            _gitlet.run("commit", "commit to push");
+            break;
+        default:
+            break;
+        }
+    }
+
+    /** Return the arguments of gitlet for COMMAND. */
+    public String[] args(String command) {
+        switch (command) {
+        case "commit":
+            return new String[] { "commit", "timed commit" };
+        case "checkout":
+            _onSide = !_onSide;
+            return new String[] { "checkout", _onSide ? SIDE : "master" };
+        case "merge":
+            return new String[] { "merge", SIDE };
+        case "fetch":
+            return new String[] { "fetch", REMOTE_NAME, UPSTREAM };
+        case "push":
+            return new String[] { "push", REMOTE_NAME, "master" };
+        case "add":
+            return _added.toArray(new String[0]);
+        default:
+            return new String[] { command };
+        }
+    }
+
+    /** Run COMMAND, as timed. */
+    public void run(String command) throws IOException {
+        _gitlet.run(args(command));
+    }
+
+    /** Put the repository back on master after the last run of
+     *  COMMAND. */
+    public void finish(String command) throws IOException {
+        if (command.equals("checkout") && _onSide) {
+            _gitlet.run(args(command));
+        }
+    }
+
+    /** Change a few of the generated files, returning the arguments of
+     *  add for them, which are also those of the next "add". */
+    private String[] editFiles() throws IOException {
+        _added.clear();
+        _added.add("add");
+        for (int e = 0; e < EDITS; e += 1) {
+            String name = RepoGenerator.fileName(_random.nextInt(FILE_RANGE));
+            Path path = _dir.resolve(name);
+            if (Files.isRegularFile(path)) {
+                _edits.edit(path);
+                _added.add(name);
+            }
+        }
+        return _added.toArray(new String[0]);
+    }
+
+    /** Copy the directory FROM to TO. */
+    private static void copy(Path from, Path to) throws IOException {
+        Files.walkFileTree(from, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(
+                    Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(to.resolve(from.relativize(dir)));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file,
+                                             BasicFileAttributes attrs)
+                throws IOException {
+                Files.copy(file, to.resolve(from.relativize(file)),
+                           StandardCopyOption.COPY_ATTRIBUTES);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /** Delete the directory DIR and everything in it, if it exists. */
+    static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file,
+                                             BasicFileAttributes attrs)
+                throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path d,
+                                                      IOException excp)
+                throws IOException {
+                if (excp != null) {
+                    throw excp;
+                }
+                Files.delete(d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /** Files changed before add, commit, status and push. */
+    private static final int EDITS = 5;
+    /** Those files are among the first this many generated. */
+    private static final int FILE_RANGE = 100;
+    /** Directory of the remote in the repository's. */
+    private static final String REMOTE = "remote";
+    /** Name of the remote. */
+    private static final String REMOTE_NAME = "origin";
+    /** The branch of the remote that fetch fetches. */
+    private static final String UPSTREAM = "upstream";
+    /** The branch merged and checked out, and its directory of files. */
+    private static final String SIDE = "side";
+
+    /** The working directory of the repository. */
+    private final Path _dir;
+    /** Runs commands on the repository. */
+    private final RepoGenerator.Gitlet _gitlet;
+    /** The working directory of the remote. */
+    private final Path _remoteDir;
+    /** Runs commands on the remote. */
+    private final RepoGenerator.Gitlet _remote;
+    /** Chooses the files edited. */
+    private final Random _random;
+    /** Makes the edits. */
+    private final RepoGenerator _edits;
+    /** Arguments of the next add. */
+    private final List<String> _added = new ArrayList<>();
+    /** Files made on the side branch and the remote's. */
+    private int _sideFiles, _upstreamFiles;
+    /** True iff the last checkout was of the side branch. */
+    private boolean _onSide;
+}
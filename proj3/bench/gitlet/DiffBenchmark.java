@@ -0,0 +1,101 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import gitlet.LineDiff.Lines;
+
+/** JMH benchmarks of the line diff engine on large files with a few
+ *  edits, the case of diff and merge on a big file changed in a few
+ *  places.  Run with "make bench" in proj3.
+ *  @author Aayush Sutaria
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiffBenchmark {
+
+    /** Lines in each file. */
+    @Param({ "10000", "1000000" })
+    public int lines;
+
+    /** Lines changed between the two files. */
+    @Param({ "10", "100" })
+    public int edits;
+
+    /** Make the two versions of the file. */
+    @Setup
+    public void setup() {
+        Random random = new Random(lines + edits);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; i += 1) {
+            text.append("line ").append(i).append(" of the file\n");
+        }
+        _old = text.toString().getBytes(StandardCharsets.UTF_8);
+        for (int e = 0; e < edits; e += 1) {
+            int at = text.indexOf("line " + random.nextInt(lines) + " ");
+            if (at >= 0) {
+                text.insert(at, "edited ");
+            }
+        }
+        _new = text.toString().getBytes(StandardCharsets.UTF_8);
+        _oldLines = new Lines(_old);
+        _newLines = new Lines(_new);
+    }
+
+    /** Index the lines of both files. */
+    @Benchmark
+    public void index(Blackhole sink) {
+        sink.consume(new Lines(_old));
+        sink.consume(new Lines(_new));
+    }
+
+    /** Diff the indexed files, reusing the engine's arrays. */
+    @Benchmark
+    public int[] diff() {
+        return _engine.diff(_oldLines, _newLines);
+    }
+
+    /** Index and diff the files and write the unified diff. */
+    @Benchmark
+    public void unified() throws IOException {
+        new UnifiedDiff(NULL).write("f", new Lines(_old), new Lines(_new));
+    }
+
+    /** For comparison, only turn both files into arrays of Strings, as a
+     *  diff over Blob.fromFile contents would have to. */
+    @Benchmark
+    public void stringRoundTrip(Blackhole sink) {
+        sink.consume(new String(_old, StandardCharsets.UTF_8).split("\n"));
+        sink.consume(new String(_new, StandardCharsets.UTF_8).split("\n"));
+    }
+
+    /** Discards what is written to it. */
+    private static final OutputStream NULL = OutputStream.nullOutputStream();
+
+    /** The two versions of the file. */
+    private byte[] _old, _new;
+    /** Their lines. */
+    private Lines _oldLines, _newLines;
+    /** The engine, kept across invocations. */
+    private final LineDiff _engine = new LineDiff();
+}
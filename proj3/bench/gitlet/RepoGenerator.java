@@ -0,0 +1,314 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/** Builds a synthetic gitlet repository for the benchmarks, the same one
+ *  every time for the same settings and seed: FILES files of text in
+ *  directories of DIR_FILES, with sizes spread log-normally about a
+ *  median, then COMMITS commits over BRANCHES branches, a run of
+ *  RUN_LENGTH on each in turn, merging another branch into the current
+ *  one at every MERGE_EVERY-th commit.  Each commit rewrites a few lines
+ *  of a few files, and now and then adds a file; each branch only
+ *  touches its own share of the files, so merges never conflict.  The
+ *  commits are all dated COMMIT_TIME, so their ids are the same too.
+ *
+ *  Run as
+ *      java gitlet.RepoGenerator [--commits N] [--branches N]
+ *          [--files N] [--median-size BYTES] [--size-spread SIGMA]
+ *          [--merge-every N] [--seed N]
+ *  in an empty directory to build the repository there.
+ *  @author Aayush Sutaria
+ */
+public class RepoGenerator {
+
+    /** Runs gitlet commands on one repository. */
+    public interface Gitlet {
+        /** Run the command ARGS, as given to gitlet's main. */
+        void run(String... args) throws IOException;
+    }
+
+    /** Return a Gitlet running commands in this JVM, on the repository
+     *  in the working directory.  Commands that fail are dropped, with
+     *  the state Main kept for them, as the daemon does.  From then on,
+     *  commits made in this JVM are dated COMMIT_TIME. */
+    public static Gitlet inProcess() {
+        System.setProperty(Commit.TIME_PROPERTY, COMMIT_TIME);
+        return args -> {
+            try {
+                Main.run(args);
+            } catch (GitletException excp) {
+                Main.forget();
+            }
+        };
+    }
+
+    /** Return a Gitlet running each command in a JVM of its own, on the
+     *  repository in the directory DIR, with the class path of this
+     *  JVM, commits dated COMMIT_TIME and its output thrown away. */
+    public static Gitlet process(Path dir) {
+        return process(dir, "gitlet.Main");
+    }
+
+    /** Return a Gitlet that runs the main method of the class MAINCLASS
+     *  instead of gitlet's, as the other process() does. */
+    static Gitlet process(Path dir, String mainClass) {
+        ArrayList<String> classPath = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path")
+                 .split(File.pathSeparator)) {
+            classPath.add(new File(entry).getAbsolutePath());
+        }
+        String java = Paths.get(System.getProperty("java.home"), "bin",
+                                "java").toString();
+        return args -> {
+            List<String> command = new ArrayList<>(Arrays.asList(
+                    java, "-cp", String.join(File.pathSeparator, classPath),
+                    "-D" + Commit.TIME_PROPERTY + "=" + COMMIT_TIME,
+                    mainClass));
+            command.addAll(Arrays.asList(args));
+            Process p = new ProcessBuilder(command).directory(dir.toFile())
+                .redirectOutput(Redirect.DISCARD)
+                .redirectError(Redirect.INHERIT).start();
+            try {
+                if (p.waitFor() != 0) {
+                    throw new IOException(mainClass + " "
+                                          + String.join(" ", args)
+                                          + " failed in " + dir);
+                }
+            } catch (InterruptedException excp) {
+                p.destroy();
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted");
+            }
+        };
+    }
+
+    /** A generator of COMMITS commits on BRANCHES branches over FILES
+     *  files whose sizes are MEDIANSIZE bytes times e to the power of a
+     *  normal variate with deviation SIZESPREAD, merging every
+     *  MERGEEVERY-th commit (never if 0), chosen at random from SEED. */
+    public RepoGenerator(int commits, int branches, int files,
+                         int medianSize, double sizeSpread, int mergeEvery,
+                         long seed) {
+        if (commits < 1 || branches < 1 || files < branches || medianSize < 1
+            || sizeSpread < 0 || mergeEvery < 0) {
+            throw new IllegalArgumentException("bad repository settings");
+        }
+        _commits = commits;
+        _branches = branches;
+        _files = files;
+        _medianSize = medianSize;
+        _sizeSpread = sizeSpread;
+        _mergeEvery = mergeEvery;
+        _random = new Random(seed);
+    }
+
+    /** Build the repository in the working directory DIR of GITLET,
+     *  which must hold no repository yet. */
+    public void generate(Path dir, Gitlet gitlet) throws IOException {
+        gitlet.run("init");
+        TreeSet<String> dirs = new TreeSet<>();
+        for (int i = 0; i < _files; i += 1) {
+            String name = fileName(i);
+            write(dir.resolve(name), text(size()));
+            dirs.add(name.substring(0, name.indexOf('/')));
+        }
+        List<String> add = new ArrayList<>(dirs);
+        add.add(0, "add");
+        gitlet.run(add.toArray(new String[0]));
+        gitlet.run("commit", "initial files");
+        for (int b = 1; b < _branches; b += 1) {
+            gitlet.run("branch", branchName(b));
+        }
+        int current = 0, next = _files;
+        for (int k = 1; k < _commits; k += 1) {
+            if (_branches > 1 && k % RUN_LENGTH == 0) {
+                current = (current + 1) % _branches;
+                gitlet.run("checkout", branchName(current));
+            }
+            if (_branches > 1 && _mergeEvery > 0 && k % _mergeEvery == 0) {
+                int other = (current + 1 + _random.nextInt(_branches - 1))
+                    % _branches;
+                gitlet.run("merge", branchName(other));
+                continue;
+            }
+            List<String> changed = new ArrayList<>();
+            changed.add("add");
+            for (int e = 1 + _random.nextInt(MAX_EDITS); e > 0; e -= 1) {
+                int i = current + _branches
+                    * _random.nextInt((_files + _branches - 1 - current)
+                                      / _branches);
+                String name = fileName(i);
+                edit(dir.resolve(name));
+                changed.add(name);
+            }
+            if (_random.nextInt(NEW_FILE_ODDS) == 0) {
+                String name = fileName(next);
+                next += 1;
+                write(dir.resolve(name), text(size()));
+                changed.add(name);
+            }
+            gitlet.run(changed.toArray(new String[0]));
+            gitlet.run("commit", "commit " + k + " on "
+                       + branchName(current));
+        }
+        if (current != 0) {
+            gitlet.run("checkout", branchName(0));
+        }
+    }
+
+    /** Rewrite a random line of the file at PATH, and now and then add
+     *  one. */
+    public void edit(Path path) throws IOException {
+        List<String> lines = new ArrayList<>(
+                Files.readAllLines(path, StandardCharsets.UTF_8));
+        String line = line();
+        if (lines.isEmpty() || _random.nextInt(NEW_LINE_ODDS) == 0) {
+            lines.add(_random.nextInt(lines.size() + 1), line);
+        } else {
+            lines.set(_random.nextInt(lines.size()), line);
+        }
+        write(path, String.join("\n", lines) + "\n");
+    }
+
+    /** Return the name of file number I. */
+    public static String fileName(int i) {
+        return String.format("d%03d/f%05d.txt", i / DIR_FILES, i);
+    }
+
+    /** Return the name of branch number B, the first being master. */
+    public static String branchName(int b) {
+        return b == 0 ? "master" : "b" + b;
+    }
+
+    /** Write TEXT to the file at PATH, making its directory. */
+    static void write(Path path, String text) throws IOException {
+        Files.createDirectories(path.getParent());
+        Files.write(path, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Return a random file size. */
+    private int size() {
+        double size = _medianSize * Math.exp(_sizeSpread
+                                             * _random.nextGaussian());
+        return (int) Math.max(1, Math.min(size,
+                                          (double) MAX_SIZE_FACTOR
+                                          * _medianSize));
+    }
+
+    /** Return random lines of text of about SIZE bytes. */
+    private String text(int size) {
+        StringBuilder text = new StringBuilder(size + LINE_LENGTH);
+        while (text.length() < size) {
+            text.append(line()).append('\n');
+        }
+        return text.toString();
+    }
+
+    /** Return a random line of words. */
+    private String line() {
+        StringBuilder line = new StringBuilder(LINE_LENGTH);
+        while (line.length() < LINE_LENGTH) {
+            if (line.length() > 0) {
+                line.append(' ');
+            }
+            for (int n = 2 + _random.nextInt(8); n > 0; n -= 1) {
+                line.append((char) ('a' + _random.nextInt(26)));
+            }
+        }
+        return line.toString();
+    }
+
+    /** Build a repository in the working directory with the settings in
+     *  ARGS. */
+    public static void main(String... args) throws IOException {
+        int commits = DEFAULT_COMMITS, branches = DEFAULT_BRANCHES,
+            files = DEFAULT_FILES, medianSize = DEFAULT_MEDIAN_SIZE,
+            mergeEvery = DEFAULT_MERGE_EVERY;
+        double sizeSpread = DEFAULT_SIZE_SPREAD;
+        long seed = 1;
+        if (args.length % 2 != 0) {
+            throw new IllegalArgumentException("options take values");
+        }
+        for (int i = 0; i < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+            case "--commits":
+                commits = Integer.parseInt(value);
+                break;
+            case "--branches":
+                branches = Integer.parseInt(value);
+                break;
+            case "--files":
+                files = Integer.parseInt(value);
+                break;
+            case "--median-size":
+                medianSize = Integer.parseInt(value);
+                break;
+            case "--size-spread":
+                sizeSpread = Double.parseDouble(value);
+                break;
+            case "--merge-every":
+                mergeEvery = Integer.parseInt(value);
+                break;
+            case "--seed":
+                seed = Long.parseLong(value);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown option "
+                                                   + args[i]);
+            }
+        }
+        new RepoGenerator(commits, branches, files, medianSize, sizeSpread,
+                          mergeEvery, seed)
+            .generate(Paths.get("."), inProcess());
+    }
+
+    /** Settings of main when not given. */
+    static final int DEFAULT_COMMITS = 1000, DEFAULT_BRANCHES = 4,
+        DEFAULT_FILES = 1000, DEFAULT_MEDIAN_SIZE = 4096,
+        DEFAULT_MERGE_EVERY = 50;
+    /** Size spread of main when not given. */
+    static final double DEFAULT_SIZE_SPREAD = 1;
+    /** Time stamp of every commit, in seconds since the epoch. */
+    static final String COMMIT_TIME = "1000000000";
+    /** Files in each directory. */
+    static final int DIR_FILES = 100;
+    /** Commits made on a branch before moving to the next. */
+    static final int RUN_LENGTH = 10;
+    /** Most files changed by a commit. */
+    private static final int MAX_EDITS = 3;
+    /** One commit in this many adds a file. */
+    private static final int NEW_FILE_ODDS = 20;
+    /** One edit in this many adds a line rather than changing one. */
+    private static final int NEW_LINE_ODDS = 4;
+    /** Characters in a line. */
+    private static final int LINE_LENGTH = 60;
+    /** Largest file size, in medians. */
+    private static final int MAX_SIZE_FACTOR = 64;
+
+    /** Commits to make, counting the first. */
+    private final int _commits;
+    /** Branches, counting master. */
+    private final int _branches;
+    /** Files in the first commit. */
+    private final int _files;
+    /** Median file size in bytes. */
+    private final int _medianSize;
+    /** Deviation of the log of file sizes. */
+    private final double _sizeSpread;
+    /** Commits between merges, or 0. */
+    private final int _mergeEvery;
+    /** Source of every random choice. */
+    private final Random _random;
+}
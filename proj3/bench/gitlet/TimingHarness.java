@@ -0,0 +1,153 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/** Times gitlet commands end to end, each run as a user runs it, in a
+ *  JVM of its own, on a repository from RepoGenerator, and writes the
+ *  times as CSV lines of
+ *      label,commits,branches,files,command,run,millis
+ *  with a header if the output is new.  Appending the lines of runs
+ *  with different labels (a commit id, say) to one file tracks the
+ *  times across changes.  Run as
+ *      java gitlet.TimingHarness [--runs N] [--label TEXT] [--out FILE]
+ *          [--dir DIR] [--commands add,commit,...] [GENERATOR OPTIONS]
+ *  where the generator options are those of RepoGenerator, or with
+ *  "make timing TIMING_FLAGS=..." in proj3.  The repository is built in
+ *  DIR, which must not exist yet, or in a new temporary directory that
+ *  is deleted at the end.  The time taken to build it is the line of
+ *  the command "generate".
+ *  @author Aayush Sutaria
+ */
+public class TimingHarness {
+
+    /** Time the commands with the options in ARGS. */
+    public static void main(String... args) throws IOException {
+        int runs = DEFAULT_RUNS;
+        String label = "", out = null, dir = null;
+        List<String> commands = Arrays.asList(CommandScenario.COMMANDS);
+        List<String> generator = new ArrayList<>();
+        String commits = String.valueOf(RepoGenerator.DEFAULT_COMMITS),
+            branches = String.valueOf(RepoGenerator.DEFAULT_BRANCHES),
+            files = String.valueOf(RepoGenerator.DEFAULT_FILES);
+        long seed = 1;
+        if (args.length % 2 != 0) {
+            throw new IllegalArgumentException("options take values");
+        }
+        for (int i = 0; i < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+            case "--runs":
+                runs = Integer.parseInt(value);
+                break;
+            case "--label":
+                label = value;
+                break;
+            case "--out":
+                out = value;
+                break;
+            case "--dir":
+                dir = value;
+                break;
+            case "--commands":
+                commands = Arrays.asList(value.split(","));
+                break;
+            default:
+                generator.add(args[i]);
+                generator.add(value);
+                if (args[i].equals("--commits")) {
+                    commits = value;
+                } else if (args[i].equals("--branches")) {
+                    branches = value;
+                } else if (args[i].equals("--files")) {
+                    files = value;
+                } else if (args[i].equals("--seed")) {
+                    seed = Long.parseLong(value);
+                }
+            }
+        }
+        Path repo = dir == null ? Files.createTempDirectory("gitlet-bench")
+            : Files.createDirectory(Paths.get(dir));
+        try (PrintStream csv = csv(out)) {
+            String prefix = String.join(",", quote(label), commits,
+                                        branches, files) + ",";
+            long start = System.nanoTime();
+            RepoGenerator.process(repo, "gitlet.RepoGenerator")
+                .run(generator.toArray(new String[0]));
+            csv.println(prefix + "generate,1," + millis(start));
+            CommandScenario scenario =
+                new CommandScenario(repo, RepoGenerator.process(repo), seed);
+            scenario.setUp();
+            for (String command : commands) {
+                for (int run = 1; run <= runs; run += 1) {
+                    scenario.prepare(command);
+                    start = System.nanoTime();
+                    scenario.run(command);
+                    csv.println(prefix + command + "," + run + ","
+                                + millis(start));
+                }
+                scenario.finish(command);
+            }
+        } finally {
+            if (dir == null) {
+                CommandScenario.delete(repo);
+            }
+        }
+    }
+
+    /** Return the stream of CSV lines to the file OUT, appended to it,
+     *  or to the standard output if OUT is null, with the header first
+     *  if it is new. */
+    private static PrintStream csv(String out) throws IOException {
+        PrintStream result;
+        boolean isNew = true;
+        if (out == null) {
+            result = new PrintStream(System.out, true) {
+                @Override
+                public void close() {
+                    flush();
+                }
+            };
+        } else {
+            Path path = Paths.get(out);
+            isNew = !Files.exists(path) || Files.size(path) == 0;
+            result = new PrintStream(Files.newOutputStream(
+                    path, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND), true);
+        }
+        if (isNew) {
+            result.println(HEADER);
+        }
+        return result;
+    }
+
+    /** Return the milliseconds since START, from System.nanoTime, to
+     *  three places. */
+    private static String millis(long start) {
+        return String.format(Locale.ROOT, "%.3f",
+                             (System.nanoTime() - start) / 1e6);
+    }
+
+    /** Return TEXT as a CSV field. */
+    private static String quote(String text) {
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0
+            && text.indexOf('\n') < 0) {
+            return text;
+        }
+        return "\"" + text.replace("\"", "\"\"") + "\"";
+    }
+
+    /** First line of a new CSV file. */
+    private static final String HEADER =
+        "label,commits,branches,files,command,run,millis";
+    /** Runs of each command unless --runs says otherwise. */
+    private static final int DEFAULT_RUNS = 5;
+}
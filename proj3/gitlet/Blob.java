@@ -1,39 +1,203 @@
 package gitlet;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 
 /** Blob class which uses SHA-1 values to point to specific file content.
+ *  Blobs are stored zlib-compressed behind a "blob SIZE\0" header, and
+ *  are hashed, compressed and restored a buffer at a time, so no file is
+ *  ever held in memory whole.  Blobs written before compression was added
+ *  are stored verbatim and are still read as such.  A file large enough
+ *  for the Chunker is instead stored as content-defined chunks, each a
+ *  blob of its own, and a list of them named by the SHA-1 val of the
+ *  whole file; the object store reassembles it when it is read.
  * @author Aayush Sutaria
  */
 public class Blob {
-    /** Constructor for Blob class which takes in a file name.
+    /** Constructor for Blob class which takes in a file name.  Only hashes
+     *  the file; its contents are stored by saveContent.
      * @param fileName name of input file
      */
     public Blob(String fileName) {
         _fileName = fileName;
-        _fileContents = Utils.readContents(Utils.join(Main.CWD, fileName));
-        _shaVal = Utils.sha1(_fileContents);
+        File file = Utils.join(Main.CWD, fileName);
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            MessageDigest md = sha1Digest();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+                md.update(buffer, 0, n);
+            }
+            _shaVal = Utils.toHex(md.digest());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return a Blob for the file named FILENAME, storing its contents in
+     *  the object store in the same pass that hashes it. */
+    public static Blob store(String fileName) throws IOException {
+        Blob blob = new Blob();
+        blob._fileName = fileName;
+        blob.saveContent();
+        return blob;
+    }
+
+    /** A Blob for the working file FILENAME, known to have contents with
+     *  SHA-1 val SHAVAL that are already in the object store.
+     * @param fileName name of input file
+     * @param shaVal SHA-1 val of its contents */
+    Blob(String fileName, String shaVal) {
+        _fileName = fileName;
+        _shaVal = shaVal;
+        _saved = true;
     }
 
+    /** A Blob whose SHA-1 val is computed by saveContent. */
+    private Blob() {
+    }
 
-    /** Save file "fname" into file with SHA-1 val of shaVal.
+    /** Write the file with SHA-1 val SHAVAL to the file named FNAME in the
+     *  working directory.
      * @param fName is the file name
      * @param shaVal is a SHA-1 value
      */
     public static void saveContent(String fName, String shaVal)
             throws IOException {
-        Utils.join(Main.OBJECT, shaVal).createNewFile();
-        Utils.writeContents(Utils.join(Main.CWD, fName),
-                Utils.readContentsAsString(Utils.join(Main.OBJECT, shaVal)));
+        checkout(shaVal, Utils.join(Main.CWD, fName));
+    }
 
+    /** Save file as its SHA-1 val as its name, unless already stored.
+     *  The file is hashed again as it is compressed, so the object is
+     *  always named by the contents actually stored. */
+    public void saveContent() throws IOException {
+        if (_saved) {
+            return;
+        }
+        File file = Utils.join(Main.CWD, _fileName);
+        if (Chunker.chunked(file.length())) {
+            saveChunks(file);
+            _saved = true;
+            return;
+        }
+        Path temp = Files.createTempFile(Main.OBJECT.toPath(),
+                                          ObjectStore.TEMP_PREFIX, "");
+        try {
+            MessageDigest md = sha1Digest();
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+            try (InputStream in = Files.newInputStream(file.toPath());
+                 OutputStream out = new DeflaterOutputStream(
+                         new BufferedOutputStream(Files.newOutputStream(temp)),
+                         deflater, BUFFER_SIZE)) {
+                out.write(header(file.length()));
+                byte[] buffer = new byte[BUFFER_SIZE];
+                for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+                    md.update(buffer, 0, n);
+                    out.write(buffer, 0, n);
+                }
+            } finally {
+                deflater.end();
+            }
+            _shaVal = Utils.toHex(md.digest());
+            if (!ObjectStore.local().contains(_shaVal)) {
+                Files.move(temp,
+                        ObjectStore.local().newLooseFile(_shaVal).toPath(),
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        _saved = true;
     }
 
-    /** Save file as its SHA-1 val as its name. */
-    public static void saveContent() throws IOException {
-        Utils.join(Main.OBJECT, _shaVal).createNewFile();
-        Utils.writeContents(Utils.join(Main.OBJECT, _shaVal), _fileContents);
+    /** Store FILE as a list of content-defined chunks, each stored as a
+     *  blob of its own unless already present, naming the list by the
+     *  SHA-1 val of the whole file. */
+    private void saveChunks(File file) throws IOException {
+        ObjectStore store = ObjectStore.local();
+        MessageDigest md = sha1Digest();
+        StringBuilder list = new StringBuilder();
+        long size = 0;
+        byte[] buffer = new byte[Chunker.MAX_CHUNK];
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int end = 0;
+            boolean eof = false;
+            while (true) {
+                if (!eof) {
+                    end += in.readNBytes(buffer, end, buffer.length - end);
+                    eof = end < buffer.length;
+                }
+                if (end == 0) {
+                    break;
+                }
+                int len = Chunker.cut(buffer, 0, end);
+                md.update(buffer, 0, len);
+                String chunk = storeChunk(store, deflater, buffer, len);
+                list.append(chunk).append(' ').append(len).append('\n');
+                size += len;
+                System.arraycopy(buffer, len, buffer, 0, end - len);
+                end -= len;
+            }
+        } finally {
+            deflater.end();
+        }
+        _shaVal = Utils.toHex(md.digest());
+        if (!store.contains(_shaVal)) {
+            byte[] text = list.toString().getBytes(StandardCharsets.UTF_8);
+            store.writeLoose(_shaVal, deflate(null,
+                    ObjectStore.chunksHeader(size), text, text.length));
+        }
     }
 
+    /** Store the first LEN bytes of DATA in STORE as a blob, compressed by
+     *  DEFLATER, unless already present, and return its SHA-1 val. */
+    private static String storeChunk(ObjectStore store, Deflater deflater,
+                                     byte[] data, int len)
+            throws IOException {
+        MessageDigest md = sha1Digest();
+        md.update(data, 0, len);
+        String shaVal = Utils.toHex(md.digest());
+        if (!store.contains(shaVal)) {
+            store.writeLoose(shaVal,
+                             deflate(deflater, header(len), data, len));
+        }
+        return shaVal;
+    }
+
+    /** Return HEADER followed by the first LEN bytes of DATA, compressed
+     *  as a zlib stream by DEFLATER, or by a new deflater if it is
+     *  null. */
+    private static byte[] deflate(Deflater deflater, byte[] header,
+                                  byte[] data, int len) throws IOException {
+        Deflater d = deflater == null
+            ? new Deflater(Deflater.DEFAULT_COMPRESSION) : deflater;
+        d.reset();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(len / 2);
+        try (OutputStream out = new DeflaterOutputStream(bytes, d,
+                                                         BUFFER_SIZE)) {
+            out.write(header);
+            out.write(data, 0, len);
+        } finally {
+            if (deflater == null) {
+                d.end();
+            }
+        }
+        return bytes.toByteArray();
+    }
 
     /** get file name.
      * @return file name
@@ -54,21 +218,64 @@ public class Blob {
      * @return content of file which the indicated blob points to
      */
     public static String fromFile(String shaVal) {
-        File f = Utils.join(Main.OBJECT, shaVal);
-        if (!f.exists()) {
+        String contents = ObjectCache.shared().get(shaVal, String.class);
+        if (contents == null) {
+            contents = fromFile(ObjectStore.local(), shaVal);
+            ObjectCache.shared().put(shaVal, contents, contents.length());
+        }
+        return contents;
+    }
+
+    /** Return the contents of the blob SHAVAL in STORE as a String.
+     * @param store object store holding the blob
+     * @param shaVal is a SHA-1 value */
+    static String fromFile(ObjectStore store, String shaVal) {
+        if (!store.contains(shaVal)) {
             throw new IllegalArgumentException(
                     "No blob file with that name found.");
         }
-        return Utils.readContentsAsString(f);
+        return new String(store.read(shaVal), StandardCharsets.UTF_8);
     }
 
-    /** store file name. */
-    private static String _fileName;
+    /** Write the contents of the blob with SHA-1 val SHAVAL to DEST,
+     *  decompressing it as it is copied.
+     * @param shaVal is a SHA-1 value
+     * @param dest file to write */
+    public static void checkout(String shaVal, File dest) throws IOException {
+        if (!ObjectStore.local().contains(shaVal)) {
+            throw new IllegalArgumentException(
+                    "No blob file with that name found.");
+        }
+        try (InputStream in = ObjectStore.local().open(shaVal)) {
+            Files.copy(in, dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /** Return the header written before the contents of a blob of SIZE
+     *  bytes. */
+    private static byte[] header(long size) {
+        return ("blob " + size + "\0").getBytes(StandardCharsets.UTF_8);
+    }
 
-    /** store file contents. */
-    private static byte[] _fileContents;
+    /** Return a new SHA-1 digest. */
+    private static MessageDigest sha1Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /** Size of the buffers used to stream file contents. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** store file name. */
+    private String _fileName;
 
     /** store file SHA-1. */
-    private static String _shaVal;
+    private String _shaVal;
+
+    /** True once the contents have been saved in the object store. */
+    private boolean _saved;
 
 }
@@ -1,10 +1,12 @@
 package gitlet;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
-import java.util.LinkedList;
+import java.nio.charset.StandardCharsets;
 
-/** Class Branch.
+/** Class Branch.  A branch is stored as a plain-text file in
+ *  .gitlet/branch holding the SHA-1 val of its head commit.
  * @author Aayush Sutaria
  */
 public class Branch implements Serializable {
@@ -27,7 +29,6 @@ public class Branch implements Serializable {
      * @param b is a branch **/
     public void copyBranch(Branch b) {
         _branchHead = b.getHead();
-        _branchCommits = b.getCommits();
     }
 
     /** Change branch name to newName.
@@ -36,11 +37,11 @@ public class Branch implements Serializable {
         _branchName = newName;
     }
 
-    /** Change branch head to newHead.
+    /** Change branch head to newHead.  The branch file is only updated
+     *  when the branch is saved.
      * @param newHead new Head */
     public void changeHead(String newHead) {
         _branchHead = newHead;
-        Utils.writeContents(Utils.join(Main.BRANCH, _branchName), newHead);
     }
     /** Return Name of branch. */
     public String getName() {
@@ -51,46 +52,34 @@ public class Branch implements Serializable {
     public String getHead() {
         return _branchHead;
     }
-    /** Return LinkedList of the SHA1 vals for commits in this branch. */
-    public LinkedList<String> getCommits() {
-        return _branchCommits;
-    }
-
-    /** Return LinkedList size. */
-    public int getCommitSize() {
-        return _branchCommits.size();
-    }
-
-    /** Return if Commit is in _branchCommits.
-     * @param shaVal SHA-1 Val of the commit */
-    public boolean hasCommit(String shaVal) {
-        return _branchCommits.contains(shaVal);
-    }
-    /** Return SHA1-Val of commit at index idx.
-     * @param idx index
-     * */
-    public String getCommit(int idx) {
-        return _branchCommits.get(idx);
-    }
 
     /** Add commit to this branch.
      *@param shaVal sha val of commit needed to be added*/
     public void addCommit(String shaVal) {
-        _branchCommits.add(shaVal);
         changeHead(shaVal);
     }
 
-    /** Add commits to this branch.
-     * @param commits commits */
-    public void addCommits(LinkedList<String> commits) throws IOException {
-        _branchCommits.addAll(commits);
-        saveBranch();
-    }
-
     /** Save branch to a file. */
     public void saveBranch() throws IOException {
-        Utils.join(Main.BRANCH, _branchName).createNewFile();
-        Utils.writeObject(Utils.join(Main.BRANCH, _branchName), this);
+        saveBranch(Utils.join(Main.BRANCH, _branchName));
+        ObjectCache.shared().put(KEY_PREFIX + _branchName, this,
+                _branchHead.length() + 1);
+    }
+
+    /** Save branch to the branch file FILE, as the SHA-1 val of its head
+     *  on a line of its own.  The write is made by the journal.
+     * @param file branch file */
+    public void saveBranch(File file) {
+        saveBranch(file, Journal.local());
+    }
+
+    /** Save branch to the branch file FILE of another repository, whose
+     *  journal JOURNAL makes the write.
+     * @param file branch file
+     * @param journal journal of the repository of FILE */
+    void saveBranch(File file, Journal journal) {
+        journal.write(file, (_branchHead + "\n")
+                .getBytes(StandardCharsets.UTF_8));
     }
 
     /** Takes in and deserializes curr branch.
@@ -110,20 +99,46 @@ public class Branch implements Serializable {
      * @param name name of branch
      */
     public static Branch fromFile(String name) {
-        if (!Utils.join(Main.BRANCH, name).exists()) {
+        Branch b = ObjectCache.shared().get(KEY_PREFIX + name, Branch.class);
+        if (b == null) {
+            File file = Utils.join(Main.BRANCH, name);
+            b = fromFile(file, name);
+            ObjectCache.shared().put(KEY_PREFIX + name, b, file.length());
+        }
+        return b;
+    }
+
+    /** Return the branch NAME stored in FILE, either as the SHA-1 val of
+     *  its head or, as branch files once were, a serialized Branch.
+     * @param file branch file
+     * @param name name of branch */
+    static Branch fromFile(File file, String name) {
+        if (!file.exists()) {
             throw new IllegalArgumentException(
                     "No branch file with that name found.");
         }
-        return Utils.readObject(Utils.join(Main.
-                BRANCH, name), Branch.class);
+        byte[] contents = Utils.readContents(file);
+        if (contents.length >= 2 && (contents[0] & 0xff) == LEGACY_MAGIC0
+                && (contents[1] & 0xff) == LEGACY_MAGIC1) {
+            Branch b = Utils.deserialize(contents, Branch.class);
+            b._branchName = name;
+            return b;
+        }
+        return new Branch(name,
+                new String(contents, StandardCharsets.UTF_8).trim());
     }
 
+    /** Prefix of the keys of branches in the object cache, which keeps
+     *  them apart from objects named by SHA-1 val. */
+    private static final String KEY_PREFIX = "branch:";
+    /** First two bytes of a Java serialization stream. */
+    private static final int LEGACY_MAGIC0 = 0xac, LEGACY_MAGIC1 = 0xed;
+    /** Branches were once stored serialized, so they must still be read
+     *  that way. */
+    private static final long serialVersionUID = 7230242573283516130L;
+
     /** Name of branch. */
     private String _branchName;
     /** SHA-1 val of the head commit of branch. */
     private String _branchHead = "";
-    /** LinkedList of the SHA1 vals for commits in this branch. */
-    private LinkedList<String> _branchCommits = new LinkedList<>();
-
-
 }
@@ -0,0 +1,169 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/** A batch of changes to a working directory: files to write from blobs
+ *  and files to delete.  Blobs are read and written on a pool of worker
+ *  threads into a scratch directory inside the repository; only when all
+ *  of them are written are they renamed into place, with the files they
+ *  replace or delete first moved aside.  If anything fails, the files
+ *  moved aside are put back, so the working directory is left either
+ *  fully updated or as it was.
+ *  @author Aayush Sutaria
+ */
+class Checkout {
+
+    /** A checkout into the working directory WORKDIR of the repository
+     *  REPO, noting written files in INDEX if it is not null. */
+    Checkout(File workDir, File repo, StatIndex index) {
+        _workDir = workDir;
+        _repo = repo;
+        _index = index;
+    }
+
+    /** Arrange for the working file NAME to get the contents of the blob
+     *  SHAVAL. */
+    void write(String name, String shaVal) {
+        _deletes.remove(name);
+        _writes.put(name, shaVal);
+    }
+
+    /** Arrange for the working file NAME to be deleted. */
+    void delete(String name) {
+        if (!_writes.containsKey(name)) {
+            _deletes.add(name);
+        }
+    }
+
+    /** Arrange for the working file NAME to be left as it is. */
+    void keep(String name) {
+        _deletes.remove(name);
+        _writes.remove(name);
+    }
+
+    /** Make all the arranged changes, or none of them. */
+    void run() throws IOException {
+        if (_writes.isEmpty() && _deletes.isEmpty()) {
+            return;
+        }
+        Path scratch = Files.createTempDirectory(_repo.toPath(),
+                                                 "checkout-");
+        try {
+            List<Path> written = writeAll(scratch);
+            replace(scratch, written);
+        } finally {
+            deleteTree(scratch);
+        }
+        for (String name : _deletes) {
+            pruneParents(name);
+        }
+        if (_index != null) {
+            for (String name : _deletes) {
+                _index.remove(name);
+            }
+            for (Map.Entry<String, String> e : _writes.entrySet()) {
+                _index.written(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /** Write every arranged blob to a file in SCRATCH, using the worker
+     *  pool, and return those files in the order of _writes. */
+    private List<Path> writeAll(Path scratch) throws IOException {
+        List<Path> result = new ArrayList<>();
+        int k = 0;
+        for (String name : _writes.keySet()) {
+            result.add(scratch.resolve("new-" + k));
+            k += 1;
+        }
+        List<String> shaVals = new ArrayList<>(_writes.values());
+        WorkerPool.forEach(shaVals.size(), i ->
+                Blob.checkout(shaVals.get(i), result.get(i).toFile()));
+        return result;
+    }
+
+    /** Move the files to be replaced or deleted into SCRATCH, then move
+     *  the WRITTEN files into place.  On failure, undo all moves. */
+    private void replace(Path scratch, List<Path> written)
+            throws IOException {
+        List<Path[]> moves = new ArrayList<>();
+        int k = 0;
+        try {
+            List<String> displaced = new ArrayList<>(_deletes);
+            displaced.addAll(_writes.keySet());
+            for (String name : displaced) {
+                Path file = Utils.join(_workDir, name).toPath();
+                if (Files.isRegularFile(file)) {
+                    Path saved = scratch.resolve("old-" + k);
+                    k += 1;
+                    move(file, saved, moves);
+                }
+            }
+            int i = 0;
+            for (String name : _writes.keySet()) {
+                Path file = Utils.join(_workDir, name).toPath();
+                Files.createDirectories(file.getParent());
+                move(written.get(i), file, moves);
+                i += 1;
+            }
+        } catch (IOException | RuntimeException excp) {
+            for (int j = moves.size() - 1; j >= 0; j -= 1) {
+                Path[] m = moves.get(j);
+                Files.move(m[1], m[0], StandardCopyOption.REPLACE_EXISTING);
+            }
+            throw excp;
+        }
+    }
+
+    /** Rename FROM to TO, recording the move in MOVES. */
+    private static void move(Path from, Path to, List<Path[]> moves)
+            throws IOException {
+        Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+        moves.add(new Path[] { from, to });
+    }
+
+    /** Delete the directories holding the working file NAME that were
+     *  left empty, innermost first, stopping at the working directory. */
+    private void pruneParents(String name) {
+        File dir = Utils.join(_workDir, name).getParentFile();
+        while (dir != null && !dir.equals(_workDir)) {
+            String[] left = dir.list();
+            if (left == null || left.length > 0 || !dir.delete()) {
+                return;
+            }
+            dir = dir.getParentFile();
+        }
+    }
+
+    /** Delete DIR and everything in it. */
+    private static void deleteTree(Path dir) throws IOException {
+        File[] files = dir.toFile().listFiles();
+        if (files != null) {
+            for (File f : files) {
+                Files.deleteIfExists(f.toPath());
+            }
+        }
+        Files.deleteIfExists(dir);
+    }
+
+    /** Working directory. */
+    private final File _workDir;
+    /** Repository directory, which holds the scratch directory. */
+    private final File _repo;
+    /** Stat cache of _workDir, or null. */
+    private final StatIndex _index;
+    /** Files to write, with the SHA-1 vals of their new contents. */
+    private final LinkedHashMap<String, String> _writes =
+        new LinkedHashMap<>();
+    /** Files to delete. */
+    private final LinkedHashSet<String> _deletes = new LinkedHashSet<>();
+}
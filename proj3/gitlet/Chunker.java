@@ -0,0 +1,82 @@
+package gitlet;
+
+/** Content-defined chunking of large files, after FastCDC.  A gear hash
+ *  rolled over the bytes of a file picks chunk boundaries that depend
+ *  only on the nearby contents, so an edit to one part of a file changes
+ *  only the chunks around it, and the rest are shared with the previous
+ *  version in the object store.
+ *
+ *  No chunk is shorter than MIN_CHUNK bytes, except the last of a file,
+ *  or longer than MAX_CHUNK.  Up to AVG_CHUNK bytes a boundary needs
+ *  more hash bits clear than after it ("normalized chunking"), which
+ *  keeps most chunks near the average size.  The hash is tested in its
+ *  top bits, which depend on the last 64 bytes read.
+ *  @author Aayush Sutaria
+ */
+class Chunker {
+
+    /** Return the length of the first chunk of the LEN bytes of DATA from
+     *  OFFSET, which are all that remain of a file or at least
+     *  MAX_CHUNK. */
+    static int cut(byte[] data, int offset, int len) {
+        if (len <= MIN_CHUNK) {
+            return len;
+        }
+        int end = Math.min(len, MAX_CHUNK),
+            normal = Math.min(AVG_CHUNK, end);
+        long hash = 0;
+        int i = MIN_CHUNK;
+        for (; i < normal; i += 1) {
+            hash = (hash << 1) + GEAR[data[offset + i] & 0xff];
+            if ((hash & MASK_SMALL) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < end; i += 1) {
+            hash = (hash << 1) + GEAR[data[offset + i] & 0xff];
+            if ((hash & MASK_LARGE) == 0) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+
+    /** Return true iff a file of SIZE bytes should be stored in chunks:
+     *  if it is at least the number of bytes given by the system property
+     *  gitlet.chunk.threshold, 1 MiB by default.  A threshold of 0 or
+     *  less turns chunking off. */
+    static boolean chunked(long size) {
+        long threshold = Long.getLong("gitlet.chunk.threshold",
+                                      DEFAULT_THRESHOLD);
+        return threshold > 0 && size >= threshold;
+    }
+
+    /** Return the gear table: a fixed pseudo-random value for each byte,
+     *  from the SplitMix64 sequence. */
+    private static long[] gear() {
+        long[] result = new long[256];
+        long x = GEAR_SEED;
+        for (int b = 0; b < result.length; b += 1) {
+            x += 0x9e3779b97f4a7c15L;
+            long z = x;
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            result[b] = z ^ (z >>> 31);
+        }
+        return result;
+    }
+
+    /** Shortest, average and longest chunk, in bytes. */
+    static final int MIN_CHUNK = 16 << 10, AVG_CHUNK = 64 << 10,
+        MAX_CHUNK = 256 << 10;
+    /** Default size from which files are chunked. */
+    private static final long DEFAULT_THRESHOLD = 1 << 20;
+    /** Hash bits that must be clear for a boundary before and after
+     *  AVG_CHUNK: two more and two fewer than the 16 of the average. */
+    private static final long MASK_SMALL = -1L << (64 - 18),
+        MASK_LARGE = -1L << (64 - 14);
+    /** Seed of the gear table.  Changing it moves every boundary. */
+    private static final long GEAR_SEED = 0x6769746c6574L;
+    /** Value rolled into the hash for each byte. */
+    private static final long[] GEAR = gear();
+}
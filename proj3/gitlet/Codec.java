@@ -0,0 +1,336 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/** The binary format of the commits, staging areas and remotes gitlet
+ *  keeps in files, in place of Java serialization.  Each record starts
+ *  with the two bytes "gl", a byte naming its kind and a format version
+ *  byte, and holds its fields in a fixed order: counts and lengths as
+ *  unsigned varints (seven bits a byte, low bits first), strings as
+ *  their length and UTF-8 bytes, and SHA-1 vals as their 20 bytes.  A
+ *  string is written as its length plus one, so that 0 can stand for
+ *  null.  Sets of file names, and maps from them to SHA-1 vals, are
+ *  written sorted by name, each name as the number of characters it
+ *  shares with the one before and the rest of it.  Records in the older
+ *  serialized form start with the bytes of a Java serialization stream,
+ *  which no record starts with, and are still read by each kind's
+ *  decoder.
+ *  @author Aayush Sutaria
+ */
+class Codec {
+
+    /** Return true iff BYTES is a Java serialization stream, as gitlet
+     *  wrote before this format. */
+    static boolean isSerialized(byte[] bytes) {
+        return bytes.length >= 2 && (bytes[0] & 0xff) == SERIAL0
+            && (bytes[1] & 0xff) == SERIAL1;
+    }
+
+    /** Return true iff BYTES starts a record of kind KIND. */
+    static boolean isRecord(byte[] bytes, int kind) {
+        return bytes.length >= HEADER_BYTES && bytes[0] == MAGIC0
+            && bytes[1] == MAGIC1 && bytes[2] == kind;
+    }
+
+    /** Writes one record. */
+    static class Writer {
+
+        /** A writer of a record of kind KIND in the current version. */
+        Writer(int kind) {
+            _buf = new byte[INITIAL_SIZE];
+            _buf[0] = MAGIC0;
+            _buf[1] = MAGIC1;
+            _buf[2] = (byte) kind;
+            _buf[3] = VERSION;
+            _len = HEADER_BYTES;
+        }
+
+        /** Write the unsigned VALUE as a varint. */
+        Writer varint(long value) {
+            reserve(MAX_VARINT);
+            while ((value & ~0x7fL) != 0) {
+                _buf[_len++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            _buf[_len++] = (byte) value;
+            return this;
+        }
+
+        /** Write the string S, which may be null. */
+        Writer string(String s) {
+            if (s == null) {
+                return varint(0);
+            }
+            string(s, 0);
+            return this;
+        }
+
+        /** Write SHAVAL, which may be null or, as in some old records,
+         *  not a SHA-1 val at all. */
+        Writer sha(String shaVal) {
+            if (shaVal == null) {
+                return varint(NO_SHA);
+            }
+            if (shaVal.length() == Utils.UID_LENGTH) {
+                byte[] hex = shaVal.getBytes(StandardCharsets.ISO_8859_1);
+                int mark = _len;
+                varint(BINARY_SHA);
+                reserve(ObjectStore.SHA_BYTES);
+                int i;
+                for (i = 0; i < hex.length; i += 2) {
+                    int hi = HEX_VALUES[hex[i] & 0xff],
+                        lo = HEX_VALUES[hex[i + 1] & 0xff];
+                    if ((hi | lo) < 0) {
+                        break;
+                    }
+                    _buf[_len++] = (byte) (hi << 4 | lo);
+                }
+                if (i == hex.length) {
+                    return this;
+                }
+                _len = mark;
+            }
+            varint(OTHER_SHA);
+            return string(shaVal);
+        }
+
+        /** Write the file names NAMES. */
+        Writer names(Collection<String> names) {
+            String[] sorted = names.toArray(new String[0]);
+            if (!(names instanceof SortedSet)) {
+                Arrays.sort(sorted);
+            }
+            varint(sorted.length);
+            String last = "";
+            for (String name : sorted) {
+                name(last, name);
+                last = name;
+            }
+            return this;
+        }
+
+        /** Write the map FILES from file names to SHA-1 vals. */
+        Writer files(Map<String, String> files) {
+            String[] sorted = files.keySet().toArray(new String[0]);
+            Arrays.sort(sorted);
+            varint(sorted.length);
+            String last = "";
+            for (String name : sorted) {
+                name(last, name);
+                sha(files.get(name));
+                last = name;
+            }
+            return this;
+        }
+
+        /** Return the record written. */
+        byte[] toByteArray() {
+            return Arrays.copyOf(_buf, _len);
+        }
+
+        /** Write NAME as the length of its prefix in common with LAST
+         *  and the rest of it. */
+        private void name(String last, String name) {
+            int n = Math.min(last.length(), name.length()), shared = 0;
+            while (shared < n && last.charAt(shared) == name.charAt(shared)) {
+                shared += 1;
+            }
+            if (shared > 0
+                && Character.isHighSurrogate(name.charAt(shared - 1))) {
+                shared -= 1;
+            }
+            varint(shared);
+            string(name, shared);
+        }
+
+        /** Write the characters of S from START as a string. */
+        private void string(String s, int start) {
+            byte[] utf8 = (start == 0 ? s : s.substring(start))
+                .getBytes(StandardCharsets.UTF_8);
+            varint(utf8.length + 1);
+            reserve(utf8.length);
+            System.arraycopy(utf8, 0, _buf, _len, utf8.length);
+            _len += utf8.length;
+        }
+
+        /** Make room for N more bytes. */
+        private void reserve(int n) {
+            if (_len + n > _buf.length) {
+                _buf = Arrays.copyOf(_buf,
+                                     Math.max(2 * _buf.length, _len + n));
+            }
+        }
+
+        /** The record so far, in its first _len bytes. */
+        private byte[] _buf;
+        /** Bytes written. */
+        private int _len;
+    }
+
+    /** Reads one record.  Any record that is cut short, or not of the
+     *  kind or a version expected, raises IllegalArgumentException. */
+    static class Reader {
+
+        /** A reader of the record BYTES, which must be of kind KIND. */
+        Reader(byte[] bytes, int kind) {
+            if (!isRecord(bytes, kind)) {
+                throw new IllegalArgumentException("not a gitlet record");
+            }
+            _buf = bytes;
+            _version = bytes[HEADER_BYTES - 1];
+            _pos = HEADER_BYTES;
+            if (_version < 1 || _version > VERSION) {
+                throw new IllegalArgumentException(
+                        "gitlet record version " + _version
+                        + " is newer than this gitlet");
+            }
+        }
+
+        /** Return the format version of the record. */
+        int version() {
+            return _version;
+        }
+
+        /** Read an unsigned varint. */
+        long varint() {
+            long result = 0;
+            for (int shift = 0; shift < Long.SIZE; shift += 7) {
+                if (_pos >= _buf.length) {
+                    throw truncated();
+                }
+                int b = _buf[_pos++];
+                result |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IllegalArgumentException("corrupt gitlet record");
+        }
+
+        /** Read a count, as written by varint. */
+        int count() {
+            long n = varint();
+            if (n > _buf.length - _pos) {
+                throw truncated();
+            }
+            return (int) n;
+        }
+
+        /** Read a string, which may be null. */
+        String string() {
+            long n = varint();
+            if (n == 0) {
+                return null;
+            } else if (n - 1 > _buf.length - _pos) {
+                throw truncated();
+            }
+            int len = (int) n - 1;
+            String result = new String(_buf, _pos, len,
+                                       StandardCharsets.UTF_8);
+            _pos += len;
+            return result;
+        }
+
+        /** Read a SHA-1 val, or whatever was written in its place. */
+        String sha() {
+            long form = varint();
+            if (form == NO_SHA) {
+                return null;
+            } else if (form == OTHER_SHA) {
+                return string();
+            } else if (_buf.length - _pos < ObjectStore.SHA_BYTES) {
+                throw truncated();
+            }
+            char[] hex = new char[Utils.UID_LENGTH];
+            for (int i = 0; i < hex.length; i += 2) {
+                int b = _buf[_pos++];
+                hex[i] = HEX_DIGITS[(b >> 4) & 0xf];
+                hex[i + 1] = HEX_DIGITS[b & 0xf];
+            }
+            return new String(hex);
+        }
+
+        /** Read file names, as written by Writer.names. */
+        TreeSet<String> names() {
+            TreeSet<String> result = new TreeSet<>();
+            String last = "";
+            for (int k = count(); k > 0; k -= 1) {
+                last = name(last);
+                result.add(last);
+            }
+            return result;
+        }
+
+        /** Read a map from file names to SHA-1 vals, as written by
+         *  Writer.files. */
+        HashMap<String, String> files() {
+            int n = count();
+            HashMap<String, String> result = new HashMap<>(n * 4 / 3 + 1);
+            String last = "";
+            for (int k = 0; k < n; k += 1) {
+                last = name(last);
+                result.put(last, sha());
+            }
+            return result;
+        }
+
+        /** Read a name written after LAST by Writer.name. */
+        private String name(String last) {
+            long shared = varint();
+            String rest = string();
+            if (shared > last.length() || rest == null) {
+                throw new IllegalArgumentException("corrupt gitlet record");
+            }
+            return shared == 0 ? rest
+                : last.substring(0, (int) shared).concat(rest);
+        }
+
+        /** Return the exception for a record cut short. */
+        private static IllegalArgumentException truncated() {
+            return new IllegalArgumentException("truncated gitlet record");
+        }
+
+        /** The record. */
+        private final byte[] _buf;
+        /** Position of the next field in _buf. */
+        private int _pos;
+        /** Format version of the record. */
+        private final int _version;
+    }
+
+    /** Kinds of record. */
+    static final int COMMIT = 'C', STAGE = 'S', REMOTE = 'R';
+    /** The current format version. */
+    static final byte VERSION = 1;
+
+    /** First two bytes of every record, "gl". */
+    private static final byte MAGIC0 = 'g', MAGIC1 = 'l';
+    /** Bytes before the fields of a record. */
+    private static final int HEADER_BYTES = 4;
+    /** First two bytes of a Java serialization stream. */
+    private static final int SERIAL0 = 0xac, SERIAL1 = 0xed;
+    /** Forms of a SHA-1 val field: null, 20 bytes, or a string. */
+    private static final int NO_SHA = 0, BINARY_SHA = 1, OTHER_SHA = 2;
+    /** Most bytes in a varint. */
+    private static final int MAX_VARINT = 10;
+    /** Bytes first allotted to a record. */
+    private static final int INITIAL_SIZE = 256;
+    /** The value of each byte that is a lower-case hex digit, and -1 for
+     *  every other byte. */
+    private static final int[] HEX_VALUES = new int[256];
+    static {
+        Arrays.fill(HEX_VALUES, -1);
+        for (int d = 0; d < 16; d += 1) {
+            HEX_VALUES[Character.forDigit(d, 16)] = d;
+        }
+    }
+    /** Lower-case hex digits. */
+    private static final char[] HEX_DIGITS =
+        "0123456789abcdef".toCharArray();
+}
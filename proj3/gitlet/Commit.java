@@ -1,54 +1,75 @@
 package gitlet;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 
-/** Commit class which points to a tree.
+/** Commit class which points to a tree.  A commit only records the
+ *  SHA-1 vals of its parents and tree; those are read in on demand.  It
+ *  is stored in the binary format of Codec; commits stored serialized,
+ *  as they once were, are still read.
  * @author Aayush Sutaria
  */
 
 public class Commit implements Serializable {
     /** Constructor for commit with input of a Tree tree and Message msg.
+     *  The SHA-1 val of a commit without parents leaves out its time stamp,
+     *  so every repository starts from the same initial commit.  The time
+     *  stamp is the current time unless TIME_PROPERTY pins it.
      * @param tree tree input
-     * @param msg input message */
-    public Commit(Tree tree, String msg) {
+     * @param msg input message
+     * @param parent SHA-1 val of the first parent, or null
+     * @param secondParent SHA-1 val of the merged-in parent, or null */
+    public Commit(Tree tree, String msg, String parent, String secondParent) {
         if (tree == null) {
-            _tree = new Tree();
-            _treeShaVal = _tree.getTreeShaVal();
-            _blobFiles = new HashMap<>();
-        } else {
-            _tree = tree;
-            _treeShaVal = _tree.getTreeShaVal();
-            _blobFiles = tree.getTracked();
+            tree = new Tree();
         }
-        ZonedDateTime timeStamp = ZonedDateTime.now();
+        _tree = tree;
+        _treeShaVal = tree.getTreeShaVal();
+        _parent = parent;
+        _secondParent = secondParent;
+        Long pinned = Long.getLong(TIME_PROPERTY);
+        ZonedDateTime timeStamp = pinned == null ? ZonedDateTime.now()
+            : ZonedDateTime.ofInstant(Instant.ofEpochSecond(pinned),
+                                      ZoneOffset.UTC);
         DateTimeFormatter pattern
                 = DateTimeFormatter.ofPattern("EEE LLL d HH:mm:ss y Z");
         _timeStamp = timeStamp.format(pattern);
-        _commitShaVal = Utils.sha1(_treeShaVal, msg);
-        _allParents = new HashSet<>();
         _msg = msg;
+        _commitShaVal = Utils.sha1(_treeShaVal, nonNull(parent),
+                nonNull(secondParent), parent == null ? "" : _timeStamp, msg);
     }
 
-    /** Returns true if the current commit is merged. */
-    public boolean isMerged() {
-        return _merged;
+    /** Returns true if this commit was read in serialized, as commits
+     *  were stored before Codec, and has not been saved since. */
+    public boolean isSerialized() {
+        return _serialized;
     }
 
-    /** Set merge state to true. */
-    public void merge() {
-        _merged = true;
+    /** A commit whose fields are filled in by decode. */
+    private Commit() {
+    }
+
+    /** Returns true if this commit was read in from the old format, which
+     *  embedded its parent commits, and has not been saved since. */
+    public boolean isLegacy() {
+        return _legacy;
+    }
+
+    /** Returns true if the current commit is merged. */
+    public boolean isMerged() {
+        return _secondParent != null;
     }
 
     /** Returns if there are any tracked files in the current commit. */
     public boolean hasFiles() {
-        return _blobFiles != null && _blobFiles.isEmpty();
+        return getBlobFiles() != null && getBlobFiles().isEmpty();
     }
 
     /** Sha-1 val of commit.
@@ -57,36 +78,49 @@ public class Commit implements Serializable {
         return _commitShaVal;
     }
 
-    /** Return Commit's Parent. */
+    /** Return Commit's Parent, or null for the initial commit. */
     public Commit getParent() {
-        return _firstParent;
+        return _parent == null ? null : fromFile(_parent);
     }
 
-    /** Set Commit's Parent.
-     * @param c commit */
-    public void setParent(Commit c) {
-        _firstParent = c;
+    /** Return SHA-1 val of Commit's Parent, or null. */
+    public String getParentShaVal() {
+        return _parent;
     }
 
-    /** Return Commit's Parent's parent. */
-    public Commit getParentsParent() {
-        return _firstParentsParent;
+    /** Return the parent merged into this commit, or null. */
+    public Commit getSecondParent() {
+        return _secondParent == null ? null : fromFile(_secondParent);
     }
 
-    /** Sets Commit's Parent's parent.
-     * @param c commit */
-    public void setParentsParent(Commit c) {
-        _firstParentsParent = c;
+    /** Return SHA-1 val of the parent merged into this commit, or null. */
+    public String getSecondParentShaVal() {
+        return _secondParent;
     }
 
-    /** Retrun tree.
+    /** Retrun tree.  A tree read from disk is kept in the object cache,
+     *  which bounds the memory trees use, rather than by the commit,
+     *  unless it is too large for the cache.
      * @return tree */
     public Tree getTree() {
-        return _tree;
+        if (_tree != null) {
+            return _tree;
+        }
+        Tree tree = Tree.fromFile(_treeShaVal);
+        if (!ObjectCache.shared().contains(_treeShaVal)) {
+            _tree = tree;
+        }
+        return tree;
     }
+
+    /** Return SHA-1 val of the tree. */
+    public String getTreeShaVal() {
+        return _treeShaVal;
+    }
+
     /** Return Hashmap of blobs with key:file name and value:SHA-1 val. */
     public HashMap<String, String> getBlobFiles() {
-        return _blobFiles;
+        return getTree().getTracked();
     }
 
     /** Return Commit Message. */
@@ -104,66 +138,162 @@ public class Commit implements Serializable {
     }
 
 
-    /** Return true if Commit c is an ancestor of the current commit.
-     * @param c commit */
-    public boolean isAncestor(String c) {
-        return _allParents.contains(c);
+    /** Save Commit to a file.  Its tree, saved before it, is read back
+     *  through the object cache when next needed rather than kept by the
+     *  commit, which the cache counts only by its own bytes. */
+    public void saveCommit() throws IOException {
+        byte[] contents = encode();
+        ObjectStore.local().writeLoose(getCommitShaVal(), contents);
+        _legacy = false;
+        _serialized = false;
+        _tree = null;
+        ObjectCache.shared().put(getCommitShaVal(), this, contents.length);
+    }
+
+    /** Read this commit from IN.  A commit in the old format, which held
+     *  its parent commits, tree and ancestor set as objects, is converted
+     *  to parent SHA-1 vals and a tree rebuilt from its tracked files. */
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        _msg = (String) fields.get("_msg", null);
+        _timeStamp = (String) fields.get("_timeStamp", null);
+        _commitShaVal = (String) fields.get("_commitShaVal", null);
+        if (fields.getObjectStreamClass().getField("_firstParent") == null) {
+            _treeShaVal = (String) fields.get("_treeShaVal", null);
+            _parent = (String) fields.get("_parent", null);
+            _secondParent = (String) fields.get("_secondParent", null);
+        } else {
+            Commit parent = (Commit) fields.get("_firstParent", null);
+            Commit second = (Commit) fields.get("_firstParentsParent", null);
+            _parent = parent == null ? null : parent.getCommitShaVal();
+            _secondParent = second == null ? null : second.getCommitShaVal();
+            @SuppressWarnings("unchecked")
+            HashMap<String, String> blobFiles =
+                    (HashMap<String, String>) fields.get("_blobFiles", null);
+            _tree = new Tree();
+            if (blobFiles != null) {
+                _tree.setTracked(blobFiles);
+            }
+            _tree.commit();
+            _treeShaVal = _tree.getTreeShaVal();
+            _legacy = true;
+        }
+    }
+
+    /** Takes in SHA-1 and outputs file content of deserialized commit.
+     * @param shaVal is a SHA-1 value
+     * @return commit from file
+     */
+    public static Commit fromFile(String shaVal) {
+        Commit c = ObjectCache.shared().get(shaVal, Commit.class);
+        if (c != null) {
+            return c;
+        }
+        byte[] contents = read(ObjectStore.local(), shaVal);
+        c = decode(contents);
+        ObjectCache.shared().put(shaVal, c, contents.length);
+        return c;
+    }
+
+    /** Return the commit with SHA-1 val SHAVAL in STORE. */
+    static Commit fromStore(ObjectStore store, String shaVal) {
+        return decode(read(store, shaVal));
     }
 
-    /** Add a single ancestor to the current commit.
-     * @param parent is an ancestor */
-    public void addAncestor(String parent) {
-        _allParents.add(parent);
+    /** Return this commit in the binary format of Codec. */
+    byte[] encode() {
+        return new Codec.Writer(Codec.COMMIT).sha(_commitShaVal)
+            .sha(_treeShaVal).sha(_parent).sha(_secondParent)
+            .string(_timeStamp).string(_msg).toByteArray();
     }
 
-    /** Add a collection of ancestors to the current commit.
-     * @param parents are ancestors */
-    public void addAncestors(Collection<String> parents) {
-        _allParents.addAll(parents);
+    /** Return the commit stored as CONTENTS, in the binary format of
+     *  Codec or, as commits once were, serialized. */
+    static Commit decode(byte[] contents) {
+        if (Codec.isSerialized(contents)) {
+            Commit c = Utils.deserialize(contents, Commit.class);
+            c._serialized = true;
+            return c;
+        }
+        Codec.Reader in = new Codec.Reader(contents, Codec.COMMIT);
+        Commit c = new Commit();
+        c._commitShaVal = in.sha();
+        c._treeShaVal = in.sha();
+        c._parent = in.sha();
+        c._secondParent = in.sha();
+        c._timeStamp = in.string();
+        c._msg = in.string();
+        return c;
     }
 
-    /** Return ancestors of commit. */
-    public HashSet<String> getAncestors() {
-        return _allParents;
+    /** Return true iff object SHAVAL in the current repository is a
+     *  commit.  Only the start of other objects is read. */
+    static boolean isCommit(String shaVal) throws IOException {
+        return isCommit(ObjectStore.local(), shaVal);
     }
 
-    /** Save Commit to a file. */
-    public void saveCommit() throws IOException {
-        Utils.join(Main.OBJECT, getCommitShaVal()).createNewFile();
-        Utils.writeObject(Utils.join(Main.OBJECT, getCommitShaVal()), this);
+    /** Return true iff object SHAVAL in STORE is a commit. */
+    static boolean isCommit(ObjectStore store, String shaVal)
+            throws IOException {
+        try (InputStream in = store.open(shaVal)) {
+            byte[] start = in.readNBytes(START_BYTES);
+            if (!Codec.isSerialized(start)
+                && !Codec.isRecord(start, Codec.COMMIT)) {
+                return false;
+            }
+        }
+        try {
+            fromStore(store, shaVal);
+            return true;
+        } catch (IllegalArgumentException excp) {
+            return false;
+        }
     }
 
-    /** Takes in SHA-1 and outputs file content of deserialized commit.
-     * @param shaVal is a SHA-1 value
-     * @return commit from file
-     */
-    public static Commit fromFile(String shaVal) {
-        File f = Utils.join(Main.OBJECT, shaVal);
-        if (!f.exists()) {
+    /** Return the contents of the commit SHAVAL in STORE. */
+    private static byte[] read(ObjectStore store, String shaVal) {
+        if (!store.contains(shaVal)) {
             throw new IllegalArgumentException(
                     "No commit file with that name found.");
         }
-        return Utils.readObject(f, Commit.class);
+        return store.read(shaVal);
+    }
+
+    /** Return S, or the empty string if S is null. */
+    private static String nonNull(String s) {
+        return s == null ? "" : s;
     }
 
-    /** Tree of the current commit. */
-    private Tree _tree;
+    /** System property giving, in seconds since the epoch, the time
+     *  stamp of every new commit, so that the same commands make the
+     *  same commits. */
+    static final String TIME_PROPERTY = "gitlet.commit.time";
+
+    /** Bytes read to tell whether an object is a commit. */
+    private static final int START_BYTES = 4;
+
+    /** Serialization version, kept from the old format so that old
+     *  commits can still be read and migrated. */
+    private static final long serialVersionUID = 7376265801033083343L;
+
+    /** Tree of the current commit if built in memory or too large for
+     *  the object cache, or null. */
+    private transient Tree _tree;
     /** SHA-1 val for the tree of the current commit. */
     private String _treeShaVal;
-    /** Hashmap of blobs with key:file name and value:SHA-1 val. */
-    private HashMap<String, String> _blobFiles;
-    /** HashSet of all SHA-1 vals for the ancestors of the current commit. */
-    private HashSet<String> _allParents;
     /** Message of the current commit. */
     private String _msg;
     /** Time Stamp of the time that the current commit was committed. */
     private String _timeStamp;
     /** SHA-1 val for the current commit. */
     private String _commitShaVal;
-    /** Parent of the current commit. */
-    private Commit _firstParent;
-    /** Parent of the current commit's parent. */
-    private Commit _firstParentsParent;
-    /** Merge state. */
-    private boolean _merged;
+    /** SHA-1 val of the parent of the current commit. */
+    private String _parent;
+    /** SHA-1 val of the parent merged into the current commit. */
+    private String _secondParent;
+    /** True if read from the old format and not yet rewritten. */
+    private transient boolean _legacy;
+    /** True if read serialized and not yet rewritten. */
+    private transient boolean _serialized;
 }
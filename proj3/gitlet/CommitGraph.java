@@ -0,0 +1,363 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+/** The commit graph: one fixed-size record per commit holding its SHA-1
+ *  val, the indices of its parents and its generation number (one more
+ *  than the largest generation of its parents).  Ancestry questions are
+ *  answered from these records without reading any commit objects, and
+ *  generation numbers bound how far a search has to go.  The file is only
+ *  appended to, except by gc, which drops the records of the commits it
+ *  deletes.
+ *
+ *  Beside it, the file commit-graph-paths holds a PathFilter of the files
+ *  each commit changed from its first parent, in the same order as the
+ *  records: each the length of the filter and its bytes, or a length of
+ *  -1 for a commit with too many changes to filter.  Filters are made as
+ *  records are saved, and for any records saved before there were
+ *  filters.
+ *  @author Aayush Sutaria
+ */
+class CommitGraph {
+
+    /** A commit graph backed by FILE.  Commits missing from FILE are read
+     *  from the object store and added as they are asked about. */
+    CommitGraph(File file) {
+        _file = file;
+        _filterFile = new File(file.getPath() + FILTER_SUFFIX);
+        _filters = new ArrayList<>();
+        _index = new HashMap<>();
+        _shaVals = new ArrayList<>();
+        _firstParents = new int[INITIAL_SIZE];
+        _secondParents = new int[INITIAL_SIZE];
+        _generations = new int[INITIAL_SIZE];
+        if (file.exists()) {
+            ByteBuffer records = ByteBuffer.wrap(Utils.readContents(file));
+            byte[] shaVal = new byte[SHA_BYTES];
+            while (records.remaining() >= RECORD_BYTES) {
+                records.get(shaVal);
+                append(Utils.toHex(shaVal), records.getInt(), records.getInt(),
+                        records.getInt());
+            }
+        }
+        _saved = _shaVals.size();
+        if (_filterFile.exists()) {
+            ByteBuffer filters =
+                ByteBuffer.wrap(Utils.readContents(_filterFile));
+            while (filters.remaining() >= Integer.BYTES
+                   && _filters.size() < _saved) {
+                int len = filters.getInt();
+                if (len < 0) {
+                    _filters.add(null);
+                } else if (len <= filters.remaining()) {
+                    byte[] bits = new byte[len];
+                    filters.get(bits);
+                    _filters.add(bits);
+                } else {
+                    break;
+                }
+            }
+        }
+        _filtersSaved = _filters.size();
+    }
+
+    /** Return the commit graph of the current repository. */
+    static CommitGraph fromFile() {
+        return new CommitGraph(Utils.join(Main.REPO, "commit-graph"));
+    }
+
+    /** Return the index of the commit with SHA-1 val SHAVAL, adding it and
+     *  any of its ancestors not yet in the graph. */
+    int indexOf(String shaVal) {
+        Integer result = _index.get(shaVal);
+        if (result != null) {
+            return result;
+        }
+        ArrayDeque<Commit> work = new ArrayDeque<>();
+        work.push(Commit.fromFile(shaVal));
+        while (!work.isEmpty()) {
+            Commit c = work.peek();
+            if (_index.containsKey(c.getCommitShaVal())) {
+                work.pop();
+                continue;
+            }
+            String first = c.getParentShaVal(),
+                second = c.getSecondParentShaVal();
+            if (first != null && !_index.containsKey(first)) {
+                work.push(Commit.fromFile(first));
+            } else if (second != null && !_index.containsKey(second)) {
+                work.push(Commit.fromFile(second));
+            } else {
+                work.pop();
+                int p1 = first == null ? NONE : _index.get(first),
+                    p2 = second == null ? NONE : _index.get(second);
+                int gen = 1 + Math.max(p1 == NONE ? 0 : _generations[p1],
+                                       p2 == NONE ? 0 : _generations[p2]);
+                append(c.getCommitShaVal(), p1, p2, gen);
+            }
+        }
+        return _index.get(shaVal);
+    }
+
+    /** Return true iff the commit SHAVAL is already in the graph. */
+    boolean contains(String shaVal) {
+        return _index.containsKey(shaVal);
+    }
+
+    /** Add commit C (whose parents are already stored) to the graph. */
+    void add(Commit c) {
+        indexOf(c.getCommitShaVal());
+    }
+
+    /** Return the SHA-1 val of the commit with index K. */
+    String shaVal(int k) {
+        return _shaVals.get(k);
+    }
+
+    /** Return the index of the first parent of the commit with index K,
+     *  or -1 if it has none. */
+    int firstParent(int k) {
+        return _firstParents[k];
+    }
+
+    /** Return false if the commit with index K certainly did not change
+     *  the file whose PathFilter.hash is PATHHASH from its first parent,
+     *  and true if it may have, or has no filter. */
+    boolean mayHaveChanged(int k, long pathHash) {
+        byte[] bits = k < _filters.size() ? _filters.get(k) : null;
+        return bits == null || PathFilter.mayContain(bits, pathHash);
+    }
+
+    /** Return the generation number of commit SHAVAL. */
+    int generation(String shaVal) {
+        return _generations[indexOf(shaVal)];
+    }
+
+    /** Return true iff commit ANCESTOR is DESCENDANT or one of its
+     *  ancestors. */
+    boolean isAncestor(String ancestor, String descendant) {
+        int target = indexOf(ancestor), start = indexOf(descendant);
+        int minGen = _generations[target];
+        boolean[] seen = new boolean[_shaVals.size()];
+        ArrayDeque<Integer> fringe = new ArrayDeque<>();
+        fringe.add(start);
+        while (!fringe.isEmpty()) {
+            int k = fringe.poll();
+            if (k == target) {
+                return true;
+            }
+            if (seen[k] || _generations[k] <= minGen) {
+                continue;
+            }
+            seen[k] = true;
+            if (_firstParents[k] != NONE) {
+                fringe.add(_firstParents[k]);
+            }
+            if (_secondParents[k] != NONE) {
+                fringe.add(_secondParents[k]);
+            }
+        }
+        return false;
+    }
+
+    /** Return the SHA-1 val of a lowest common ancestor of commits A and
+     *  B: the common ancestor with the largest generation number.  Commits
+     *  are visited in decreasing generation order, so every child of a
+     *  commit is visited before it and the first commit reached from both
+     *  sides is the answer. */
+    String lowestCommonAncestor(String a, String b) {
+        int ia = indexOf(a), ib = indexOf(b);
+        byte[] marks = new byte[_shaVals.size()];
+        PriorityQueue<Integer> fringe = new PriorityQueue<>(
+            (x, y) -> _generations[y] != _generations[x]
+                ? Integer.compare(_generations[y], _generations[x])
+                : Integer.compare(y, x));
+        marks[ia] |= FROM_A;
+        marks[ib] |= FROM_B;
+        fringe.add(ia);
+        if (ib != ia) {
+            fringe.add(ib);
+        }
+        while (!fringe.isEmpty()) {
+            int k = fringe.poll();
+            if (marks[k] == (FROM_A | FROM_B)) {
+                return _shaVals.get(k);
+            }
+            for (int p : new int[] { _firstParents[k], _secondParents[k] }) {
+                if (p != NONE && (marks[p] | marks[k]) != marks[p]) {
+                    if (marks[p] == 0) {
+                        fringe.add(p);
+                    }
+                    marks[p] |= marks[k];
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Append the records added since this graph was read to its file. */
+    void save() throws IOException {
+        if (_saved == _shaVals.size() && _filtersSaved == _saved) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int k = _saved; k < _shaVals.size(); k += 1) {
+            writeRecord(out, k, _firstParents[k], _secondParents[k]);
+        }
+        out.close();
+        Journal.local().append(_file, bytes.toByteArray());
+        _saved = _shaVals.size();
+        saveFilters();
+    }
+
+    /** Append the filters of the saved records that have none to the
+     *  filter file. */
+    private void saveFilters() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int k = _filters.size(); k < _saved; k += 1) {
+            byte[] bits = filter(k);
+            _filters.add(bits);
+            writeFilter(out, bits);
+        }
+        out.close();
+        Journal.local().append(_filterFile, bytes.toByteArray());
+        _filtersSaved = _filters.size();
+    }
+
+    /** Rewrite the saved records and filters, through the journal,
+     *  keeping only the commits for which KEEP is true, whose parents must
+     *  be kept as well.  Does nothing if all are kept. */
+    void retain(Predicate<String> keep) throws IOException {
+        int[] renumbered = new int[_saved];
+        ByteArrayOutputStream records = new ByteArrayOutputStream(),
+            filters = new ByteArrayOutputStream();
+        DataOutputStream recordsOut = new DataOutputStream(records),
+            filtersOut = new DataOutputStream(filters);
+        int kept = 0;
+        for (int k = 0; k < _saved; k += 1) {
+            if (!keep.test(_shaVals.get(k))) {
+                renumbered[k] = NONE;
+                continue;
+            }
+            renumbered[k] = kept;
+            kept += 1;
+            int p1 = _firstParents[k], p2 = _secondParents[k];
+            writeRecord(recordsOut, k, p1 == NONE ? NONE : renumbered[p1],
+                        p2 == NONE ? NONE : renumbered[p2]);
+            if (k < _filtersSaved) {
+                writeFilter(filtersOut, _filters.get(k));
+            }
+        }
+        if (kept == _saved) {
+            return;
+        }
+        recordsOut.close();
+        filtersOut.close();
+        Journal.local().write(_file, records.toByteArray());
+        Journal.local().write(_filterFile, filters.toByteArray());
+    }
+
+    /** Write to OUT the record of the commit with index K, giving its
+     *  parents as P1 and P2. */
+    private void writeRecord(DataOutputStream out, int k, int p1, int p2)
+            throws IOException {
+        out.write(Utils.fromHex(_shaVals.get(k)));
+        out.writeInt(p1);
+        out.writeInt(p2);
+        out.writeInt(_generations[k]);
+    }
+
+    /** Write the filter BITS, or null for none, to OUT. */
+    private static void writeFilter(DataOutputStream out, byte[] bits)
+            throws IOException {
+        if (bits == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(bits.length);
+            out.write(bits);
+        }
+    }
+
+    /** Return the filter of the files the commit with index K changed
+     *  from its first parent, or null if there are too many or its trees
+     *  cannot be compared by listing. */
+    private byte[] filter(int k) {
+        try {
+            Commit c = Commit.fromFile(_shaVals.get(k));
+            Commit parent = _firstParents[k] == NONE ? null
+                : Commit.fromFile(_shaVals.get(_firstParents[k]));
+            if (c.isLegacy() || parent != null && parent.isLegacy()) {
+                return null;
+            }
+            return PathFilter.of(Tree.changedPaths(
+                    parent == null ? null : parent.getTreeShaVal(),
+                    c.getTreeShaVal()));
+        } catch (IllegalArgumentException excp) {
+            return null;
+        }
+    }
+
+    /** Add a record for SHAVAL with parent indices P1 and P2 and
+     *  generation GEN. */
+    private void append(String shaVal, int p1, int p2, int gen) {
+        int k = _shaVals.size();
+        if (k == _generations.length) {
+            _firstParents = Arrays.copyOf(_firstParents, 2 * k);
+            _secondParents = Arrays.copyOf(_secondParents, 2 * k);
+            _generations = Arrays.copyOf(_generations, 2 * k);
+        }
+        _shaVals.add(shaVal);
+        _index.put(shaVal, k);
+        _firstParents[k] = p1;
+        _secondParents[k] = p2;
+        _generations[k] = gen;
+    }
+
+    /** Parent index denoting no parent. */
+    static final int NONE = -1;
+    /** Bytes in a binary SHA-1 val. */
+    private static final int SHA_BYTES = 20;
+    /** Bytes in one record: SHA-1 val, two parent indices, generation. */
+    private static final int RECORD_BYTES = SHA_BYTES + 3 * 4;
+    /** Initial capacity of the record arrays. */
+    private static final int INITIAL_SIZE = 64;
+    /** Marks for commits reached from either side of a merge. */
+    private static final byte FROM_A = 1, FROM_B = 2;
+
+    /** Added to the name of the graph file to give that of its filters. */
+    private static final String FILTER_SUFFIX = "-paths";
+
+    /** File holding the records. */
+    private final File _file;
+    /** File holding the filters. */
+    private final File _filterFile;
+    /** The filter of each commit by index, null if it has too many
+     *  changes, for as many commits as have filters. */
+    private final ArrayList<byte[]> _filters;
+    /** Number of filters already in _filterFile. */
+    private int _filtersSaved;
+    /** Index of each commit by SHA-1 val. */
+    private final HashMap<String, Integer> _index;
+    /** SHA-1 val of each commit by index. */
+    private final ArrayList<String> _shaVals;
+    /** Index of the first parent of each commit, or NONE. */
+    private int[] _firstParents;
+    /** Index of the second parent of each commit, or NONE. */
+    private int[] _secondParents;
+    /** Generation number of each commit. */
+    private int[] _generations;
+    /** Number of records already in _file. */
+    private int _saved;
+}
@@ -0,0 +1,228 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** A long-running server for one repository, started by
+ *  "java gitlet.Main daemon" in its working directory.  It listens on
+ *  the Unix domain socket .gitlet/daemon.sock and runs the commands sent
+ *  to it one at a time, keeping the current branch, stage, history,
+ *  commit graph and object cache in memory between them.  Main sends
+ *  every command to the daemon when one is running, and runs it itself
+ *  otherwise.
+ *
+ *  Before each command the daemon compares the size and modification
+ *  time of every file in .gitlet, other than loose objects, with what
+ *  they were after its last command; if anything changed underneath it,
+ *  it drops what it holds and reads the repository in again.  It does
+ *  the same after a command that fails, since that may leave its state
+ *  in memory different from that on disk.  It holds the repository
+ *  lock from before that comparison until it has taken the new stamps,
+ *  so that a command run by another process cannot slip in between.
+ *
+ *  A request is the number of arguments followed by each argument; the
+ *  reply is the exit status, then the standard output and the standard
+ *  error of the command, each preceded by its length.
+ *  @author Aayush Sutaria
+ */
+class Daemon {
+
+    /** Send the command ARGS to the daemon of the repository in the
+     *  current directory, if there is one, copy its output to ours, and
+     *  return true.  Returns false if no daemon is listening. */
+    static boolean forward(String[] args) throws IOException {
+        if (!SOCKET.exists()) {
+            return false;
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(address());
+        } catch (IOException excp) {
+            return false;
+        }
+        int status;
+        try (channel) {
+            DataOutputStream out = new DataOutputStream(
+                    Channels.newOutputStream(channel));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            DataInputStream in = new DataInputStream(
+                    Channels.newInputStream(channel));
+            status = in.readInt();
+            System.out.write(readBlock(in));
+            System.out.flush();
+            System.err.write(readBlock(in));
+            System.err.flush();
+        }
+        if (status != 0) {
+            System.exit(status);
+        }
+        return true;
+    }
+
+    /** Serve commands on the socket of the repository in the current
+     *  directory until killed. */
+    static void serve() throws IOException {
+        if (SOCKET.exists()) {
+            try {
+                SocketChannel.open(address()).close();
+                System.out.println("A daemon is already running.");
+                return;
+            } catch (IOException excp) {
+                Files.delete(SOCKET.toPath());
+            }
+        }
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(address());
+            Runtime.getRuntime().addShutdownHook(new Thread(() ->
+                    SOCKET.delete()));
+            Daemon daemon = new Daemon();
+            while (true) {
+                try (SocketChannel client = server.accept()) {
+                    daemon.handle(client);
+                } catch (IOException excp) {
+                    /* The client went away; serve the next one. */
+                }
+            }
+        }
+    }
+
+    /** Read one command from CLIENT, run it and send back its output. */
+    private void handle(SocketChannel client) throws IOException {
+        DataInputStream in = new DataInputStream(
+                Channels.newInputStream(client));
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            args[i] = in.readUTF();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(),
+            err = new ByteArrayOutputStream();
+        int status = run(args, out, err);
+        DataOutputStream reply = new DataOutputStream(
+                Channels.newOutputStream(client));
+        reply.writeInt(status);
+        writeBlock(reply, out.toByteArray());
+        writeBlock(reply, err.toByteArray());
+        reply.flush();
+    }
+
+    /** Run the command ARGS, writing its standard output to OUT and its
+     *  standard error to ERR, and return its exit status. */
+    private int run(String[] args, ByteArrayOutputStream out,
+                    ByteArrayOutputStream err) throws IOException {
+        PrintStream stdout = System.out, stderr = System.err;
+        PrintStream cmdOut =
+            new PrintStream(out, true, StandardCharsets.UTF_8);
+        PrintStream cmdErr =
+            new PrintStream(err, true, StandardCharsets.UTF_8);
+        System.setOut(cmdOut);
+        System.setErr(cmdErr);
+        int status = 0;
+        RepoLock lock = null;
+        try {
+            lock = Main.lock(args);
+            if (!stamp().equals(_stamp)) {
+                Main.forget();
+            }
+            ObjectCache.shared().clearCounts();
+            Main.run(args);
+        } catch (GitletException excp) {
+            cmdOut.println(excp.getMessage());
+            Main.forget();
+        } catch (IOException | RuntimeException | Error excp) {
+            cmdErr.println(excp.getMessage() == null ? excp.toString()
+                           : excp.getMessage());
+            status = 1;
+            Main.forget();
+        } finally {
+            if (args.length > 0 && args[0].equals("--stats")) {
+                cmdErr.println(ObjectCache.shared().stats());
+            }
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        _stamp = stamp();
+        if (lock != null) {
+            lock.close();
+        }
+        return status;
+    }
+
+    /** Return the size and modification time of every file in the
+     *  repository that the daemon's state is read from, by path: all
+     *  but loose objects, which never change once written, the stat
+     *  cache, which is read in for every command, and the socket. */
+    private static Map<String, String> stamp() {
+        TreeMap<String, String> result = new TreeMap<>();
+        File[] files = Main.REPO.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (f.getName().equals(Main.OBJECT.getName())) {
+                    stamp(new File(f, ObjectStore.PACK_DIR), result);
+                } else if (!f.getName().equals(INDEX)
+                           && !f.getName().equals(SOCKET.getName())) {
+                    stamp(f, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Add the stamps of the file F, or of the files in it and its
+     *  subdirectories if it is a directory, to RESULT. */
+    private static void stamp(File f, Map<String, String> result) {
+        File[] files = f.listFiles();
+        if (files != null) {
+            for (File g : files) {
+                stamp(g, result);
+            }
+        } else if (f.isFile()) {
+            result.put(f.getPath(), f.length() + " " + f.lastModified());
+        }
+    }
+
+    /** Return the address of the socket. */
+    private static UnixDomainSocketAddress address() {
+        return UnixDomainSocketAddress.of(SOCKET.toPath());
+    }
+
+    /** Write BLOCK to OUT, preceded by its length. */
+    private static void writeBlock(DataOutputStream out, byte[] block)
+            throws IOException {
+        out.writeInt(block.length);
+        out.write(block);
+    }
+
+    /** Return the next block written by writeBlock from IN. */
+    private static byte[] readBlock(DataInputStream in) throws IOException {
+        byte[] block = new byte[in.readInt()];
+        in.readFully(block);
+        return block;
+    }
+
+    /** The socket the daemon listens on. */
+    static final File SOCKET = Utils.join(Main.REPO, "daemon.sock");
+    /** Name of the stat cache file. */
+    private static final String INDEX = "index";
+
+    /** Stamps of the repository's files after the last command, or null
+     *  before the first. */
+    private Map<String, String> _stamp;
+}
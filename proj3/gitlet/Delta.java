@@ -0,0 +1,221 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/** Delta encoding of one byte sequence against another, as used in
+ *  packfiles.  A delta is the lengths of the base and result, followed by
+ *  instructions that either copy a range of the base or insert literal
+ *  bytes.  Matches are found by indexing the base in BLOCK-byte blocks,
+ *  looking up a rolling hash of each BLOCK bytes of the target, and
+ *  extending each block match in both directions.  Of the blocks with
+ *  the same contents, as text repeats, the one matching furthest is
+ *  used, and among those the nearest to where the last copy ended.
+ *  @author Aayush Sutaria
+ */
+class Delta {
+
+    /** Return a delta that turns BASE into TARGET. */
+    static byte[] create(byte[] base, byte[] target) {
+        return new Index(base).create(target);
+    }
+
+    /** The blocks of a base, indexed by hash, for creating any number of
+     *  deltas against it.  The table is open-addressed, holding for each
+     *  hash the first MAX_CHAIN blocks with that hash. */
+    static class Index {
+        /** An index of BASE. */
+        Index(byte[] base) {
+            _base = base;
+            int blocks = base.length / BLOCK;
+            int size = Integer.highestOneBit(Math.max(1, 2 * blocks)) * 2;
+            _hashes = new int[size];
+            _starts = new int[size];
+            for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+                int h = hash(base, i);
+                int slot = h & (size - 1), chain = 0;
+                while (_starts[slot] != 0 && chain < MAX_CHAIN) {
+                    if (_hashes[slot] == h) {
+                        chain += 1;
+                    }
+                    slot = (slot + 1) & (size - 1);
+                }
+                if (chain < MAX_CHAIN) {
+                    _hashes[slot] = h;
+                    _starts[slot] = i + 1;
+                }
+            }
+        }
+
+        /** Return the start of the block of the base with hash H that
+         *  matches TARGET from T the furthest, and of those the nearest
+         *  to NEAR, or -1 if none matches. */
+        private int find(int h, byte[] target, int t, int near) {
+            int mask = _hashes.length - 1, best = -1, bestLen = BLOCK - 1;
+            for (int slot = h & mask; _starts[slot] != 0;
+                 slot = (slot + 1) & mask) {
+                if (_hashes[slot] != h) {
+                    continue;
+                }
+                int b = _starts[slot] - 1, len = 0;
+                while (b + len < _base.length && t + len < target.length
+                       && _base[b + len] == target[t + len]) {
+                    len += 1;
+                }
+                if (len > bestLen || len == bestLen && best >= 0
+                    && Math.abs(b - near) < Math.abs(best - near)) {
+                    best = b;
+                    bestLen = len;
+                }
+            }
+            return best;
+        }
+
+        /** Return a delta that turns the base into TARGET. */
+        byte[] create(byte[] target) {
+            byte[] base = _base;
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeVarint(out, base.length);
+            writeVarint(out, target.length);
+            int pending = 0, t = 0, copied = 0;
+            int h = target.length >= BLOCK ? hash(target, 0) : 0;
+            while (t + BLOCK <= target.length) {
+                int b = find(h, target, t, copied + t - pending);
+                if (b < 0) {
+                    if (t + BLOCK < target.length) {
+                        h = (h - target[t] * HIGH_POWER) * HASH_MULTIPLIER
+                            + target[t + BLOCK];
+                    }
+                    t += 1;
+                    continue;
+                }
+                int start = b, tStart = t;
+                while (start > 0 && tStart > pending
+                       && base[start - 1] == target[tStart - 1]) {
+                    start -= 1;
+                    tStart -= 1;
+                }
+                int len = t - tStart + BLOCK;
+                while (start + len < base.length
+                       && tStart + len < target.length
+                       && base[start + len] == target[tStart + len]) {
+                    len += 1;
+                }
+                insert(out, target, pending, tStart);
+                out.write(COPY);
+                writeVarint(out, start);
+                writeVarint(out, len);
+                t = pending = tStart + len;
+                copied = start + len;
+                if (t + BLOCK <= target.length) {
+                    h = hash(target, t);
+                }
+            }
+            insert(out, target, pending, target.length);
+            return out.toByteArray();
+        }
+
+        /** Indexed base. */
+        private final byte[] _base;
+        /** Hash of the block in each slot. */
+        private final int[] _hashes;
+        /** One more than the start of the block in each slot; 0 if the
+         *  slot is empty. */
+        private final int[] _starts;
+    }
+
+    /** Return the result of applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        ByteBuffer in = ByteBuffer.wrap(delta);
+        if (readVarint(in) != base.length) {
+            throw new IllegalArgumentException("delta does not match base");
+        }
+        byte[] result = new byte[readVarint(in)];
+        int r = 0;
+        while (in.hasRemaining()) {
+            int op = in.get();
+            if (op == COPY) {
+                int start = readVarint(in), len = readVarint(in);
+                System.arraycopy(base, start, result, r, len);
+                r += len;
+            } else if (op == INSERT) {
+                int len = readVarint(in);
+                in.get(result, r, len);
+                r += len;
+            } else {
+                throw new IllegalArgumentException("corrupt delta");
+            }
+        }
+        if (r != result.length) {
+            throw new IllegalArgumentException("corrupt delta");
+        }
+        return result;
+    }
+
+    /** Write an instruction inserting TARGET[FROM .. TO-1], if nonempty,
+     *  to OUT. */
+    private static void insert(ByteArrayOutputStream out, byte[] target,
+                               int from, int to) {
+        if (from < to) {
+            out.write(INSERT);
+            writeVarint(out, to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    /** Return a hash of the BLOCK bytes of DATA starting at START. */
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int k = start; k < start + BLOCK; k += 1) {
+            h = h * HASH_MULTIPLIER + data[k];
+        }
+        return h;
+    }
+
+    /** Return X to the power N, in int arithmetic. */
+    private static int power(int x, int n) {
+        int result = 1;
+        for (int k = 0; k < n; k += 1) {
+            result *= x;
+        }
+        return result;
+    }
+
+    /** Write the non-negative X to OUT in 7-bit groups, low-order first,
+     *  with the high bit set on all but the last. */
+    static void writeVarint(ByteArrayOutputStream out, long x) {
+        while (x >= VARINT_HIGH) {
+            out.write((int) (x & VARINT_LOW) | VARINT_HIGH);
+            x >>>= VARINT_SHIFT;
+        }
+        out.write((int) x);
+    }
+
+    /** Return the varint read from IN. */
+    static int readVarint(ByteBuffer in) {
+        int result = 0;
+        for (int shift = 0;; shift += VARINT_SHIFT) {
+            int b = in.get() & 0xff;
+            result |= (b & VARINT_LOW) << shift;
+            if (b < VARINT_HIGH) {
+                return result;
+            }
+        }
+    }
+
+    /** Instruction: copy a range of the base. */
+    private static final int COPY = 1;
+    /** Instruction: insert literal bytes. */
+    private static final int INSERT = 2;
+    /** Size of the blocks of the base that are indexed. */
+    private static final int BLOCK = 16;
+    /** Most blocks with the same hash that are indexed. */
+    private static final int MAX_CHAIN = 64;
+    /** Multiplier of the block hash. */
+    private static final int HASH_MULTIPLIER = 31;
+    /** HASH_MULTIPLIER to the power BLOCK - 1, for rolling the hash. */
+    private static final int HIGH_POWER = power(HASH_MULTIPLIER, BLOCK - 1);
+    /** Bits per varint byte, and the masks used in encoding them. */
+    private static final int VARINT_SHIFT = 7, VARINT_LOW = 0x7f,
+        VARINT_HIGH = 0x80;
+}
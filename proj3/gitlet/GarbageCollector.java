@@ -0,0 +1,285 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+/** Garbage collection of the objects of a repository that nothing refers
+ *  to any more, such as those left by rm-branch, reset or a staging area
+ *  that was never committed.
+ *
+ *  Every object in the store, loose or packed, is given a slot in an
+ *  open-addressed table of binary SHA-1 vals, and marks are kept in a
+ *  bitmap over the slots, so the memory used is about 40 bytes per object
+ *  whatever is reachable.  Marking starts from the head of every branch,
+ *  including those fetched from remotes, and from the files of every
+ *  staging area.  It walks commits to their parents and trees to their
+ *  directories and blobs, and a blob stored in chunks to its chunks.  It
+ *  goes no further from an object it has marked already, so a history
+ *  or directory shared by many branches or commits is walked once.
+ *  @author Aayush Sutaria
+ */
+class GarbageCollector {
+
+    /** A collector for the repository whose objects are in STORE. */
+    GarbageCollector(ObjectStore store) throws IOException {
+        _store = store;
+        int[] count = new int[1];
+        store.forEachLoose(name -> count[0] += 1);
+        for (ObjectStore.Pack pack : store.packs()) {
+            count[0] += pack.count();
+        }
+        int capacity = Integer.highestOneBit(Math.max(1, 2 * count[0])) * 2;
+        _keys = new byte[capacity * SHA_BYTES];
+        _used = new BitSet(capacity);
+        _marked = new BitSet(capacity);
+        store.forEachLoose(this::add);
+        for (ObjectStore.Pack pack : store.packs()) {
+            for (int k = 0; k < pack.count(); k += 1) {
+                add(pack.name(k));
+            }
+        }
+    }
+
+    /** Mark every object reachable from the branches and staging areas
+     *  of the repository. */
+    void mark() throws IOException {
+        ArrayDeque<String> commits = new ArrayDeque<>();
+        for (String name : Utils.plainFilenamesIn(Main.BRANCH)) {
+            commits.push(Branch.fromFile(name).getHead());
+        }
+        for (File file : Main.STAGE.listFiles()) {
+            Stage stage = Stage.fromFile(file);
+            markBlobs(stage.getTrackedFiles().values());
+            if (stage.hasStagingTree()) {
+                markBlobs(stage.getTree().getTracked().values());
+                markBlobs(stage.getTree().getStaged().values());
+            }
+        }
+        while (!commits.isEmpty()) {
+            String shaVal = commits.pop();
+            if (!mark(shaVal)) {
+                continue;
+            }
+            Commit c = Commit.fromStore(_store, shaVal);
+            if (c.isLegacy()) {
+                markBlobs(c.getTree().getTracked().values());
+            } else {
+                markTree(c.getTreeShaVal());
+            }
+            if (c.getParentShaVal() != null) {
+                commits.push(c.getParentShaVal());
+            }
+            if (c.getSecondParentShaVal() != null) {
+                commits.push(c.getSecondParentShaVal());
+            }
+        }
+    }
+
+    /** Return true iff object SHAVAL is in the store and was marked. */
+    boolean isMarked(String shaVal) {
+        int slot = find(Utils.fromHex(shaVal));
+        return slot >= 0 && _marked.get(slot);
+    }
+
+    /** Drop the commits that are not marked from each history index and
+     *  from the commit graph and its filters, through the journal. */
+    void pruneHistories() throws IOException {
+        for (String name : Utils.plainFilenamesIn(Main.HISTORY)) {
+            File index = Utils.join(Main.HISTORY, name);
+            StringBuilder lines = new StringBuilder();
+            boolean dropped = false;
+            for (String shaVal : new History(index).ids()) {
+                if (isMarked(shaVal)) {
+                    lines.append(shaVal).append('\n');
+                } else {
+                    dropped = true;
+                }
+            }
+            if (dropped) {
+                Journal.local().write(index,
+                        lines.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        CommitGraph.fromFile().retain(this::isMarked);
+    }
+
+    /** Delete the loose objects that are not marked, and any temporary
+     *  files left in the store by commands that were killed, and return
+     *  the number of objects deleted. */
+    int pruneLoose() throws IOException {
+        int[] deleted = new int[1];
+        _store.forEachLoose(name -> {
+            if (!isMarked(name) && _store.looseFile(name).delete()) {
+                deleted[0] += 1;
+            }
+        });
+        deleteTemporary(_store.getDir());
+        deleteTemporary(Utils.join(_store.getDir(), ObjectStore.PACK_DIR));
+        return deleted[0];
+    }
+
+    /** Rewrite the packs holding objects that are not marked as one pack
+     *  of their marked objects, and return the number of objects
+     *  dropped. */
+    int prunePacks() throws IOException {
+        List<ObjectStore.Pack> rewritten = new ArrayList<>();
+        List<String> kept = new ArrayList<>();
+        int dropped = 0;
+        for (ObjectStore.Pack pack : _store.packs()) {
+            List<String> marked = new ArrayList<>();
+            for (int k = 0; k < pack.count(); k += 1) {
+                String shaVal = pack.name(k);
+                if (isMarked(shaVal)) {
+                    marked.add(shaVal);
+                }
+            }
+            if (marked.size() < pack.count()) {
+                rewritten.add(pack);
+                kept.addAll(marked);
+                dropped += pack.count() - marked.size();
+            }
+        }
+        if (rewritten.isEmpty()) {
+            return 0;
+        }
+        String name = kept.isEmpty() ? ""
+            : new PackWriter(_store, new HashMap<>()).send(_store, kept);
+        for (ObjectStore.Pack old : rewritten) {
+            if (!old.indexFile().getName().equals(name + ".idx")) {
+                Files.deleteIfExists(old.indexFile().toPath());
+                Files.deleteIfExists(old.packFile().toPath());
+            }
+        }
+        _store.reopenPacks();
+        return dropped;
+    }
+
+    /** Mark the directory listing SHAVAL and everything in it. */
+    private void markTree(String shaVal) throws IOException {
+        ArrayDeque<String> trees = new ArrayDeque<>();
+        trees.push(shaVal);
+        while (!trees.isEmpty()) {
+            String tree = trees.pop();
+            if (!mark(tree)) {
+                continue;
+            }
+            List<Tree.Entry> entries = Tree.entries(_store, tree);
+            if (entries == null) {
+                markBlobs(Tree.fromStore(_store, tree).getTracked().values());
+                continue;
+            }
+            for (Tree.Entry e : entries) {
+                if (e.isTree) {
+                    trees.push(e.shaVal);
+                } else {
+                    markBlob(e.shaVal);
+                }
+            }
+        }
+    }
+
+    /** Mark each of the blobs SHAVALS. */
+    private void markBlobs(Collection<String> shaVals) throws IOException {
+        for (String shaVal : shaVals) {
+            markBlob(shaVal);
+        }
+    }
+
+    /** Mark the blob SHAVAL and, if it is stored in chunks, its
+     *  chunks. */
+    private void markBlob(String shaVal) throws IOException {
+        if (mark(shaVal)) {
+            List<String> chunks = _store.chunks(shaVal);
+            if (chunks != null) {
+                for (String chunk : chunks) {
+                    mark(chunk);
+                }
+            }
+        }
+    }
+
+    /** Mark object SHAVAL, returning true iff it is in the store and was
+     *  not marked before. */
+    private boolean mark(String shaVal) {
+        if (shaVal == null || shaVal.length() != Utils.UID_LENGTH) {
+            return false;
+        }
+        int slot = find(Utils.fromHex(shaVal));
+        if (slot < 0 || _marked.get(slot)) {
+            return false;
+        }
+        _marked.set(slot);
+        return true;
+    }
+
+    /** Give object SHAVAL a slot, if it has none. */
+    private void add(String shaVal) {
+        byte[] key = Utils.fromHex(shaVal);
+        int slot = probe(key);
+        if (!_used.get(slot)) {
+            _used.set(slot);
+            System.arraycopy(key, 0, _keys, slot * SHA_BYTES, SHA_BYTES);
+        }
+    }
+
+    /** Return the slot of the binary SHA-1 val KEY, or -1 if it has
+     *  none. */
+    private int find(byte[] key) {
+        int slot = probe(key);
+        return _used.get(slot) ? slot : -1;
+    }
+
+    /** Return the slot holding KEY or, if there is none, the free slot
+     *  where it would go.  SHA-1 vals are uniformly spread, so their
+     *  first bytes serve as the hash. */
+    private int probe(byte[] key) {
+        int mask = capacity() - 1;
+        int slot = ((key[0] & 0xff) << 24 | (key[1] & 0xff) << 16
+                    | (key[2] & 0xff) << 8 | (key[3] & 0xff)) & mask;
+        while (_used.get(slot)
+               && !Arrays.equals(_keys, slot * SHA_BYTES,
+                                 (slot + 1) * SHA_BYTES, key, 0, SHA_BYTES)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /** Return the number of slots. */
+    private int capacity() {
+        return _keys.length / SHA_BYTES;
+    }
+
+    /** Delete the temporary files in DIR. */
+    private static void deleteTemporary(File dir) throws IOException {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            if (f.getName().startsWith(ObjectStore.TEMP_PREFIX)) {
+                Files.deleteIfExists(f.toPath());
+            }
+        }
+    }
+
+    /** Bytes in a binary SHA-1 val. */
+    private static final int SHA_BYTES = ObjectStore.SHA_BYTES;
+
+    /** The store collected. */
+    private final ObjectStore _store;
+    /** Binary SHA-1 val of the object in each slot. */
+    private final byte[] _keys;
+    /** Slots holding an object. */
+    private final BitSet _used;
+    /** Slots holding a marked object. */
+    private final BitSet _marked;
+}
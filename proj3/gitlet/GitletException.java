@@ -17,4 +17,6 @@ class GitletException extends RuntimeException {
         super(msg);
     }
 
+    /** Serialization version. */
+    private static final long serialVersionUID = 1L;
 }
@@ -1,37 +1,153 @@
 package gitlet;
+import java.io.File;
 import java.io.IOException;
-import java.io.Serializable;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 
-/** Class History which is the history of commits.
+/** Class History which is the history of commits.  Commits stay as
+ *  individual objects under .gitlet/object; the history itself is only
+ *  an append-only index file of their SHA-1 vals, one per line, which is
+ *  read in lazily and only ever appended to.
  * @author Aayush Sutaria
  */
 
-public class History implements Serializable {
-    /** History constructor. */
+public class History {
+    /** History constructor for the local commit history. */
     public History() {
-        _commitHistory = new HashMap<>();
+        this(Utils.join(Main.HISTORY, "current"));
     }
-    /** add commit c to _commitHistory.
+
+    /** History constructor.
+     * @param index is the index file backing this history */
+    public History(File index) {
+        this(index, null, null);
+    }
+
+    /** A history backed by the index file INDEX of the repository whose
+     *  objects are in STORE and whose updates are made by JOURNAL, or
+     *  of the local repository if they are null. */
+    History(File index, ObjectStore store, Journal journal) {
+        _index = index;
+        _store = store;
+        _journal = journal;
+        _loaded = new HashMap<>();
+        _pending = new ArrayList<>();
+    }
+
+    /** add commit c to _commitHistory, unless it is there already, as
+     *  a commit reset to is.  Only a commit already in the commit graph
+     *  can be, so the index is read only for those.
      * @param c commit */
     public void addCommit(Commit c) throws IOException {
+        String shaVal = c.getCommitShaVal();
+        boolean known = store().contains(shaVal)
+            && graph().contains(shaVal);
         c.getTree().saveTree();
         c.saveCommit();
-        _commitHistory.put(c.getCommitShaVal(), c);
+        graph().add(c);
+        _loaded.put(shaVal, c);
+        if (known && hasCommit(shaVal)) {
+            return;
+        }
+        _pending.add(shaVal);
+        if (_ids != null) {
+            _ids.add(shaVal);
+        }
     }
+
+    /** Add the commit SHAVAL, which is already stored, to this history
+     *  unless it is there already.
+     * @param shaVal of commit */
+    public void addId(String shaVal) {
+        if (!hasCommit(shaVal)) {
+            _pending.add(shaVal);
+            ids().add(shaVal);
+        }
+    }
+
     /** Return if _commitHistory is empty. */
     public boolean isEmpty() {
-        return _commitHistory.isEmpty();
+        return _pending.isEmpty() && (!_index.exists() || _index.length() == 0);
     }
-    /** Return commit history. */
-    public HashMap<String, Commit> getCommitHistory() {
-        return _commitHistory;
+
+    /** Return true if the commit with SHA-1 val shaVal is in this history.
+     * @param shaVal of commit */
+    public boolean hasCommit(String shaVal) {
+        return ids().contains(shaVal);
     }
 
-    /** Return commit with shaVal from history.
+    /** Return the SHA-1 vals of every commit in this history, oldest
+     *  first. */
+    public LinkedHashSet<String> ids() {
+        if (_ids == null) {
+            _ids = new LinkedHashSet<>();
+            if (_index.exists()) {
+                _ids.addAll(readIndex());
+            }
+            _ids.addAll(_pending);
+        }
+        return _ids;
+    }
+
+    /** Return the commit graph of the repository, read in when first
+     *  needed. */
+    public CommitGraph graph() {
+        if (_graph == null) {
+            _graph = CommitGraph.fromFile();
+        }
+        return _graph;
+    }
+
+    /** Return commit history.  Commits are only read in from the object
+     *  store as the iteration reaches them. */
+    public Iterable<Commit> getCommitHistory() {
+        return new Iterable<Commit>() {
+            @Override
+            public Iterator<Commit> iterator() {
+                Iterator<String> shaVals = ids().iterator();
+                return new Iterator<Commit>() {
+                    @Override
+                    public boolean hasNext() {
+                        return shaVals.hasNext();
+                    }
+
+                    @Override
+                    public Commit next() {
+                        return getCommit(shaVals.next());
+                    }
+                };
+            }
+        };
+    }
+
+    /** Return commit with shaVal from history, or null if there is no
+     *  such commit object.
      * @param shaVal of commit */
     public Commit getCommit(String shaVal) {
-        return _commitHistory.get(shaVal);
+        Commit c = _loaded.get(shaVal);
+        if (c == null && shaVal != null && store().contains(shaVal)) {
+            c = _store == null ? Commit.fromFile(shaVal)
+                : Commit.fromStore(_store, shaVal);
+            _loaded.put(shaVal, c);
+        }
+        return c;
+    }
+
+    /** Return the object store holding the commits of this history. */
+    ObjectStore store() {
+        return _store == null ? ObjectStore.local() : _store;
+    }
+
+    /** Return the journal of the repository of this history. */
+    Journal journal() {
+        return _journal == null ? Journal.local() : _journal;
     }
 
     /** Takes in SHA-1 and outputs file content of deserialized history.
@@ -44,24 +160,50 @@ public class History implements Serializable {
                 throw new IllegalArgumentException(
                         "No history file found.");
             }
-            return Utils.readObject(Utils.join(Main.HISTORY, "current"),
-                    History.class);
+            return new History();
         } else {
             return remFromFile(b.substring(0, b.indexOf("-")));
         }
     }
 
-    /** Save History to a file. */
+    /** Append any newly added commits to the index file and commit
+     *  graph, through the journal of the repository.  Does nothing if no
+     *  commit was added. */
     public void saveHistory() throws IOException {
-        Utils.join(Main.HISTORY, "current").createNewFile();
-        Utils.writeObject(Utils.join(Main.HISTORY, "current"), this);
+        if (_graph != null) {
+            _graph.save();
+        }
+        if (_pending.isEmpty()) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        for (String shaVal : _pending) {
+            lines.append(shaVal).append('\n');
+        }
+        journal().append(_index,
+                lines.toString().getBytes(StandardCharsets.UTF_8));
+        _pending.clear();
     }
 
-    /** Save REMOTE r History to a file.
+    /** Return true iff this is the local history rather than that of a
+     *  remote. */
+    public boolean isLocal() {
+        return _index.equals(Utils.join(Main.HISTORY, "current"));
+    }
+
+    /** Save REMOTE r History to a file, appending only the commits not
+     *  already saved there.
      * @param r remote */
     public void saveHistory(String r) throws IOException {
-        Utils.join(Main.HISTORY, r).createNewFile();
-        Utils.writeObject(Utils.join(Main.HISTORY, r), this);
+        if (_pending.isEmpty()
+                && appendTail(_index, Utils.join(Main.HISTORY, r))) {
+            return;
+        }
+        History saved = remFromFile(r);
+        for (String shaVal : ids()) {
+            saved.addId(shaVal);
+        }
+        saved.saveHistory();
     }
 
     /** Takes in SHA-1 and outputs file content of deserialized commit.
@@ -73,10 +215,114 @@ public class History implements Serializable {
             throw new IllegalArgumentException(
                     "No history file found.");
         }
-        return Utils.readObject(Utils.join(Main.HISTORY, r), History.class);
+        return new History(Utils.join(Main.HISTORY, r));
+    }
+
+    /** If the index file COPY holds the start of the index file SOURCE,
+     *  append the rest of SOURCE to COPY, through the journal, and return
+     *  true.  Only the part of SOURCE past the end of COPY, and one line
+     *  before it, is read.  Returns false if COPY is not such a prefix or
+     *  SOURCE is in the old format. */
+    private static boolean appendTail(File source, File copy)
+            throws IOException {
+        long have = copy.exists() ? copy.length() : 0;
+        byte[] tail, last = new byte[0];
+        try (RandomAccessFile in = new RandomAccessFile(source, "r")) {
+            long from = Math.max(0, have - LINE);
+            if (in.length() < have || in.length() < 2) {
+                return false;
+            }
+            if (in.read() == LEGACY_MAGIC0 && in.read() == LEGACY_MAGIC1) {
+                return false;
+            }
+            tail = new byte[(int) (in.length() - from)];
+            in.seek(from);
+            in.readFully(tail);
+            if (have > 0) {
+                try (RandomAccessFile out = new RandomAccessFile(copy, "r")) {
+                    last = new byte[(int) (have - from)];
+                    out.seek(from);
+                    out.readFully(last);
+                }
+            }
+        }
+        int overlap = last.length;
+        if (!Arrays.equals(tail, 0, overlap, last, 0, overlap)) {
+            return false;
+        }
+        Journal.local().append(copy,
+                Arrays.copyOfRange(tail, overlap, tail.length));
+        return true;
     }
 
-    /** Hashmap of the history of commits with key:SHA-1 commit Id of commit
- *  and value:commit. */
-    private HashMap<String, Commit> _commitHistory;
+    /** Return true iff INDEX is an index file still in the old
+     *  serialized HashMap format. */
+    static boolean isLegacy(File index) throws IOException {
+        if (!index.exists() || index.length() < 2) {
+            return false;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(index, "r")) {
+            return in.read() == LEGACY_MAGIC0 && in.read() == LEGACY_MAGIC1;
+        }
+    }
+
+    /** Return the SHA-1 vals listed in the index file.  An index still
+     *  in the old serialized HashMap format is rebuilt from the object
+     *  store of its repository. */
+    private List<String> readIndex() {
+        byte[] contents = Utils.readContents(_index);
+        if (contents.length >= 2 && (contents[0] & 0xff) == LEGACY_MAGIC0
+                && (contents[1] & 0xff) == LEGACY_MAGIC1) {
+            return rebuildIndex();
+        }
+        List<String> shaVals = new ArrayList<>();
+        for (String line : new String(contents, StandardCharsets.UTF_8)
+                .split("\n")) {
+            if (!line.isEmpty()) {
+                shaVals.add(line);
+            }
+        }
+        return shaVals;
+    }
+
+    /** Rewrite the legacy index file, through the journal of its
+     *  repository, from the commits found in its object store and return
+     *  their SHA-1 vals.  The repository must be locked alone. */
+    private List<String> rebuildIndex() {
+        List<String> shaVals = new ArrayList<>();
+        StringBuilder lines = new StringBuilder();
+        try {
+            for (String name : store().names()) {
+                if (Commit.isCommit(store(), name)) {
+                    shaVals.add(name);
+                    lines.append(name).append('\n');
+                }
+            }
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+        journal().write(_index,
+                        lines.toString().getBytes(StandardCharsets.UTF_8));
+        return shaVals;
+    }
+
+    /** Bytes in a line of an index file. */
+    private static final int LINE = Utils.UID_LENGTH + 1;
+    /** First two bytes of a Java serialization stream. */
+    private static final int LEGACY_MAGIC0 = 0xac, LEGACY_MAGIC1 = 0xed;
+
+    /** Index file listing the SHA-1 vals of this history. */
+    private final File _index;
+    /** Object store of its repository, or null for the local one. */
+    private final ObjectStore _store;
+    /** Journal of the repository, or null for the local one. */
+    private final Journal _journal;
+    /** SHA-1 vals in the index, or null until first needed. */
+    private LinkedHashSet<String> _ids;
+    /** Commits already read in from the object store. */
+    private HashMap<String, Commit> _loaded;
+    /** Commit graph, or null until first needed. */
+    private CommitGraph _graph;
+    /** SHA-1 vals added but not yet appended to the index. */
+    private ArrayList<String> _pending;
 }
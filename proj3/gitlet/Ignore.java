@@ -0,0 +1,163 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/** The rules, from .gitletignore in the working directory, for which
+ *  working files gitlet leaves alone: status does not list them, and
+ *  their directories are not looked into.  Each line of the file is a
+ *  glob: "*" matches any characters but "/", "?" any one of them,
+ *  "[...]" one of a set, and "**" any characters at all.  A glob with a
+ *  "/" before its end is matched against the whole path from the working
+ *  directory, and any other against the last part of a path only.  A
+ *  glob ending in "/" matches only directories, and one starting with
+ *  "!" un-ignores what an earlier one ignored; of the globs that match a
+ *  path, the last decides.  Blank lines and lines starting with "#" are
+ *  skipped.  Hidden files (the repository among them), the Makefile and
+ *  IntelliJ module files are always ignored, as gitlet has always
+ *  done.  Each glob is compiled to a regular expression once, when the
+ *  rules are read.
+ *  @author Aayush Sutaria
+ */
+class Ignore {
+
+    /** The rules of LINES, after the default ones. */
+    Ignore(List<String> lines) {
+        _rules = new ArrayList<>();
+        for (String line : DEFAULTS) {
+            add(line);
+        }
+        for (String line : lines) {
+            add(line);
+        }
+    }
+
+    /** Return the rules of the working directory WORKDIR. */
+    static Ignore fromFile(File workDir) {
+        File file = Utils.join(workDir, FILE_NAME);
+        if (!file.isFile()) {
+            return new Ignore(new ArrayList<>());
+        }
+        return new Ignore(Arrays.asList(
+                Utils.readContentsAsString(file).split("\r?\n")));
+    }
+
+    /** Return true iff the file or directory (as ISDIR says) at PATH, a
+     *  path from the working directory with "/" between its parts, is
+     *  matched by the rules.  The directories holding it are not
+     *  checked. */
+    boolean matches(String path, boolean isDir) {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        for (int k = _rules.size() - 1; k >= 0; k -= 1) {
+            Rule r = _rules.get(k);
+            if ((isDir || !r.dirOnly)
+                && r.glob.matcher(r.anchored ? path : name).matches()) {
+                return !r.negated;
+            }
+        }
+        return false;
+    }
+
+    /** Return true iff the working file or directory (as ISDIR says)
+     *  PATH, or a directory holding it, is ignored. */
+    boolean ignores(String path, boolean isDir) {
+        for (int i = path.indexOf('/'); i >= 0;
+             i = path.indexOf('/', i + 1)) {
+            if (matches(path.substring(0, i), true)) {
+                return true;
+            }
+        }
+        return matches(path, isDir);
+    }
+
+    /** Add the rule on LINE, if it holds one. */
+    private void add(String line) {
+        String glob = line.trim();
+        if (glob.isEmpty() || glob.startsWith("#")) {
+            return;
+        }
+        Rule r = new Rule();
+        if (glob.startsWith("!")) {
+            r.negated = true;
+            glob = glob.substring(1);
+        }
+        if (glob.endsWith("/")) {
+            r.dirOnly = true;
+            glob = glob.substring(0, glob.length() - 1);
+        }
+        r.anchored = glob.indexOf('/') >= 0;
+        if (glob.startsWith("/")) {
+            glob = glob.substring(1);
+        }
+        if (!glob.isEmpty()) {
+            r.glob = Pattern.compile(toRegex(glob));
+            _rules.add(r);
+        }
+    }
+
+    /** Return the regular expression matching the same paths as
+     *  GLOB. */
+    private static String toRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int n = glob.length();
+        for (int i = 0; i < n; i += 1) {
+            char c = glob.charAt(i);
+            if (c == '*' && i + 1 < n && glob.charAt(i + 1) == '*') {
+                i += 1;
+                if (i + 1 < n && glob.charAt(i + 1) == '/') {
+                    i += 1;
+                    regex.append("(?:.*/)?");
+                } else {
+                    regex.append(".*");
+                }
+            } else if (c == '*') {
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else if (c == '[' && glob.indexOf(']', i + 2) > 0) {
+                int end = glob.indexOf(']', i + 2);
+                String set = glob.substring(i + 1, end);
+                if (set.startsWith("!")) {
+                    set = "^" + set.substring(1);
+                }
+                regex.append('[').append(set.replace("\\", "\\\\")
+                                         .replace("[", "\\["))
+                    .append(']');
+                i = end;
+            } else {
+                if (REGEX_SPECIALS.indexOf(c) >= 0) {
+                    regex.append('\\');
+                }
+                regex.append(c);
+            }
+        }
+        return regex.toString();
+    }
+
+    /** One glob of the rules. */
+    private static class Rule {
+        /** The glob, compiled. */
+        private Pattern glob;
+        /** True iff it matches whole paths rather than last parts. */
+        private boolean anchored;
+        /** True iff it matches only directories. */
+        private boolean dirOnly;
+        /** True iff it un-ignores what it matches. */
+        private boolean negated;
+    }
+
+    /** Name of the file of rules in the working directory. */
+    static final String FILE_NAME = ".gitletignore";
+
+    /** Rules that always apply. */
+    private static final String[] DEFAULTS = { ".*", "/Makefile", "*.iml" };
+
+    /** Characters to quote in a regular expression. */
+    private static final String REGEX_SPECIALS = "\\.[]{}()<>*+-=!?^$|";
+
+    /** The rules, in the order given. */
+    private final List<Rule> _rules;
+}
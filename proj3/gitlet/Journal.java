@@ -0,0 +1,254 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/** The updates a command makes to the branches, stages, histories and
+ *  other small files of a repository, made all together or not at all.
+ *  Updates are queued during the command and only made by commit():
+ *  the new contents of each file go to a temporary file in
+ *  .gitlet/journal-temp, then a journal listing every update is written
+ *  and renamed into place as .gitlet/journal, and only then are the
+ *  files replaced by rename, appended to or deleted.  Once the journal is
+ *  in place, the updates are certain to happen: if the command is killed
+ *  before they are all made, recover() replays the journal at the start
+ *  of the next command.  Without a journal, the temporary files of an
+ *  unfinished commit are simply deleted.
+ *
+ *  Replaying is safe to repeat.  A file is replaced only if its new
+ *  contents are still in their temporary file, and an append records the
+ *  length of the file before it, to which the file is cut back before
+ *  appending again.
+ *  @author Aayush Sutaria
+ */
+class Journal {
+
+    /** A journal for the repository in directory REPO. */
+    Journal(File repo) {
+        _repo = repo.toPath().toAbsolutePath().normalize();
+        _file = Utils.join(repo, "journal");
+        _temp = Utils.join(repo, "journal-temp");
+    }
+
+    /** Return the journal of the current repository. */
+    static Journal local() {
+        return LOCAL;
+    }
+
+    /** Queue replacing the contents of TARGET by CONTENTS. */
+    void write(File target, byte[] contents) {
+        _updates.add(new Update(WRITE, target, contents, 0));
+        _lengths.put(target.getPath(), (long) contents.length);
+    }
+
+    /** Queue appending CONTENTS to TARGET, which is created if need be. */
+    void append(File target, byte[] contents) {
+        Long length = _lengths.get(target.getPath());
+        if (length == null) {
+            length = target.exists() ? target.length() : 0;
+        }
+        _updates.add(new Update(APPEND, target, contents, length));
+        _lengths.put(target.getPath(), length + contents.length);
+    }
+
+    /** Queue deleting TARGET, if it exists. */
+    void delete(File target) {
+        _updates.add(new Update(DELETE, target, null, 0));
+        _lengths.put(target.getPath(), 0L);
+    }
+
+    /** Make all the queued updates. */
+    void commit() throws IOException {
+        if (_updates.isEmpty()) {
+            return;
+        }
+        _temp.mkdirs();
+        StringBuilder journal = new StringBuilder();
+        int n = 0;
+        for (Update u : _updates) {
+            String temp = NONE;
+            if (u.contents != null) {
+                File file = Utils.join(_temp, Integer.toString(n));
+                writeDurably(file.toPath(), u.contents);
+                temp = relative(file);
+                n += 1;
+            }
+            journal.append(u.kind).append('\t').append(temp).append('\t')
+                .append(relative(u.target)).append('\t').append(u.length)
+                .append('\n');
+        }
+        discard();
+        Path pending = Utils.join(_temp, "journal").toPath();
+        writeDurably(pending, journal.toString()
+                     .getBytes(StandardCharsets.UTF_8));
+        Files.move(pending, _file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        replay();
+    }
+
+    /** Drop the queued updates. */
+    void discard() {
+        _updates.clear();
+        _lengths.clear();
+    }
+
+    /** Return true iff a journal of updates not yet all made is left by
+     *  a command that was killed. */
+    boolean pending() {
+        return _file.exists();
+    }
+
+    /** Finish the updates of a command that was killed after writing its
+     *  journal, or clean up after one killed before. */
+    void recover() throws IOException {
+        if (_file.exists()) {
+            replay();
+        } else {
+            clean();
+        }
+    }
+
+    /** Make the updates listed in the journal, then delete it and the
+     *  temporary files. */
+    private void replay() throws IOException {
+        for (String line : Utils.readContentsAsString(_file).split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\t");
+            Path temp = _repo.resolve(fields[1]),
+                target = _repo.resolve(fields[2]);
+            switch (fields[0]) {
+            case WRITE:
+                if (Files.exists(temp)) {
+                    install(temp, target);
+                }
+                break;
+            case APPEND:
+                appendAt(target, Long.parseLong(fields[3]),
+                         Files.readAllBytes(temp));
+                break;
+            default:
+                Files.deleteIfExists(target);
+            }
+        }
+        Files.delete(_file.toPath());
+        clean();
+    }
+
+    /** Return the path of FILE relative to the repository directory, as
+     *  it is kept in the journal, so that the journal is replayed the same
+     *  from whatever directory the next command runs in. */
+    private String relative(File file) {
+        return _repo.relativize(file.toPath().toAbsolutePath().normalize())
+            .toString();
+    }
+
+    /** Delete the temporary files. */
+    private void clean() throws IOException {
+        File[] files = _temp.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                Files.deleteIfExists(f.toPath());
+            }
+        }
+    }
+
+    /** Write CONTENTS to TARGET, cut back to LENGTH bytes first. */
+    private static void appendAt(Path target, long length, byte[] contents)
+            throws IOException {
+        try (FileChannel out = FileChannel.open(target,
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (out.size() > length) {
+                out.truncate(length);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(contents);
+            long at = out.size();
+            while (buffer.hasRemaining()) {
+                at += out.write(buffer, at);
+            }
+        }
+    }
+
+    /** Rename TEMP to TARGET, replacing it.  If TARGET is on another file
+     *  system, TEMP is first copied next to it. */
+    private static void install(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException excp) {
+            Path copy = target.resolveSibling(ObjectStore.TEMP_PREFIX
+                                              + target.getFileName());
+            Files.copy(temp, copy, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(copy, target, StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+            Files.delete(temp);
+        }
+    }
+
+    /** Write CONTENTS to the new file PATH and force them to disk. */
+    private static void writeDurably(Path path, byte[] contents)
+            throws IOException {
+        try (FileChannel out = FileChannel.open(path,
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(contents);
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(false);
+        }
+    }
+
+    /** A queued update. */
+    private static class Update {
+        /** An update of kind KIND to TARGET, with CONTENTS, appended at
+         *  LENGTH for an append. */
+        Update(String kind, File target, byte[] contents, long length) {
+            this.kind = kind;
+            this.target = target;
+            this.contents = contents;
+            this.length = length;
+        }
+
+        /** WRITE, APPEND or DELETE. */
+        final String kind;
+        /** The file updated. */
+        final File target;
+        /** Its new or added contents, or null. */
+        final byte[] contents;
+        /** Its length before an append. */
+        final long length;
+    }
+
+    /** Kinds of update. */
+    private static final String WRITE = "write", APPEND = "append",
+        DELETE = "delete";
+    /** Stands in the journal for a missing temporary file. */
+    private static final String NONE = "-";
+
+    /** The journal of the current repository. */
+    private static final Journal LOCAL = new Journal(Main.REPO);
+
+    /** The repository directory, absolute. */
+    private final Path _repo;
+    /** The journal file. */
+    private final File _file;
+    /** Directory of temporary files. */
+    private final File _temp;
+    /** Queued updates, in order. */
+    private final List<Update> _updates = new ArrayList<>();
+    /** Length of each file written, appended to or deleted, by path,
+     *  after the queued updates. */
+    private final HashMap<String, Long> _lengths = new HashMap<>();
+}
@@ -0,0 +1,301 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/** A line diff of two files with Myers' algorithm, in its linear-space
+ *  form: the longest common subsequence of lines is found by splitting
+ *  at the middle snake of a shortest edit path, after trimming the lines
+ *  common to both ends.  Files are worked on as buffers of bytes and an
+ *  array of line offsets, never as Strings.  A LineDiff keeps its working
+ *  arrays from one diff to the next, so diffing many files allocates
+ *  little beyond the result.
+ *  @author Aayush Sutaria
+ */
+class LineDiff {
+
+    /** Return the changes from A to B, four ints to a change: the
+     *  lines from the first to before the second of A are replaced by
+     *  those from the third to before the fourth of B. */
+    int[] diff(Lines a, Lines b) {
+        int n = a.size(), m = b.size();
+        if (_changedA.length < n) {
+            _changedA = new boolean[n];
+        }
+        if (_changedB.length < m) {
+            _changedB = new boolean[m];
+        }
+        Arrays.fill(_changedA, 0, n, false);
+        Arrays.fill(_changedB, 0, m, false);
+        _offset = n + m + 2;
+        if (_forward.length < 2 * _offset + 1) {
+            _forward = new int[2 * _offset + 1];
+            _backward = new int[2 * _offset + 1];
+        }
+        _a = a;
+        _b = b;
+        compare(0, n, 0, m);
+        _a = _b = null;
+        int[] hunks = new int[HUNK];
+        int count = 0;
+        for (int i = 0, j = 0; i < n || j < m;) {
+            if (i < n && j < m && !_changedA[i] && !_changedB[j]) {
+                i += 1;
+                j += 1;
+                continue;
+            }
+            if (count == hunks.length) {
+                hunks = Arrays.copyOf(hunks, 2 * count);
+            }
+            hunks[count] = i;
+            hunks[count + 2] = j;
+            while (i < n && _changedA[i]) {
+                i += 1;
+            }
+            while (j < m && _changedB[j]) {
+                j += 1;
+            }
+            hunks[count + 1] = i;
+            hunks[count + 3] = j;
+            count += HUNK;
+        }
+        return Arrays.copyOf(hunks, count);
+    }
+
+    /** Mark the changed lines between lines LEFT and RIGHT of _a and TOP
+     *  and BOTTOM of _b. */
+    private void compare(int left, int right, int top, int bottom) {
+        while (left < right && top < bottom && _a.same(left, _b, top)) {
+            left += 1;
+            top += 1;
+        }
+        while (left < right && top < bottom
+               && _a.same(right - 1, _b, bottom - 1)) {
+            right -= 1;
+            bottom -= 1;
+        }
+        if (left == right) {
+            Arrays.fill(_changedB, top, bottom, true);
+        } else if (top == bottom) {
+            Arrays.fill(_changedA, left, right, true);
+        } else {
+            middleSnake(left, right, top, bottom);
+            int x0 = _snake[0], y0 = _snake[1], x1 = _snake[2],
+                y1 = _snake[3];
+            compare(left, x0, top, y0);
+            compare(x0, x1, y0, y1);
+            compare(x1, right, y1, bottom);
+        }
+    }
+
+    /** Set _snake to the start and end, as x, y, x, y, of the middle
+     *  snake of a shortest edit path between lines LEFT and RIGHT of _a
+     *  and TOP and BOTTOM of _b.  Both ranges are non-empty. */
+    private void middleSnake(int left, int right, int top, int bottom) {
+        int width = right - left, height = bottom - top,
+            delta = width - height;
+        boolean odd = (delta & 1) != 0;
+        int[] vf = _forward, vb = _backward;
+        int o = _offset;
+        vf[o + 1] = left;
+        vb[o + 1] = bottom;
+        for (int d = 0; d <= (width + height + 1) / 2; d += 1) {
+            for (int k = d; k >= -d; k -= 2) {
+                int c = k - delta, px, x;
+                if (k == -d || k != d && vf[o + k - 1] < vf[o + k + 1]) {
+                    px = x = vf[o + k + 1];
+                } else {
+                    px = vf[o + k - 1];
+                    x = px + 1;
+                }
+                int y = top + (x - left) - k;
+                int py = d == 0 || x != px ? y : y - 1;
+                while (x < right && y < bottom && _a.same(x, _b, y)) {
+                    x += 1;
+                    y += 1;
+                }
+                vf[o + k] = x;
+                if (odd && c >= -(d - 1) && c <= d - 1 && y >= vb[o + c]) {
+                    setSnake(px, py, x, y);
+                    return;
+                }
+            }
+            for (int c = d; c >= -d; c -= 2) {
+                int k = c + delta, py, y;
+                if (c == -d || c != d && vb[o + c - 1] > vb[o + c + 1]) {
+                    py = y = vb[o + c + 1];
+                } else {
+                    py = vb[o + c - 1];
+                    y = py - 1;
+                }
+                int x = left + (y - top) + k;
+                int px = d == 0 || y != py ? x : x + 1;
+                while (x > left && y > top && _a.same(x - 1, _b, y - 1)) {
+                    x -= 1;
+                    y -= 1;
+                }
+                vb[o + c] = y;
+                if (!odd && k >= -d && k <= d && x <= vf[o + k]) {
+                    setSnake(x, y, px, py);
+                    return;
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /** Set _snake to X0, Y0, X1, Y1. */
+    private void setSnake(int x0, int y0, int x1, int y1) {
+        _snake[0] = x0;
+        _snake[1] = y0;
+        _snake[2] = x1;
+        _snake[3] = y1;
+    }
+
+    /** The contents of a file and the offsets of its lines, each line
+     *  ending after its newline, if it has one. */
+    static class Lines {
+        /** The lines of CONTENTS. */
+        Lines(byte[] contents) {
+            this(ByteBuffer.wrap(contents));
+        }
+
+        /** The lines of CONTENTS, from index 0 to its limit. */
+        Lines(ByteBuffer contents) {
+            _bytes = contents;
+            int length = contents.limit(), n = 0;
+            for (int i = 0; i < length; i += 1) {
+                if (contents.get(i) == '\n') {
+                    n += 1;
+                }
+            }
+            if (length > 0 && contents.get(length - 1) != '\n') {
+                n += 1;
+            }
+            _starts = new int[n + 1];
+            _hashes = new int[n];
+            int line = 0, hash = 0;
+            for (int i = 0; i < length; i += 1) {
+                byte b = contents.get(i);
+                hash = HASH * hash + b;
+                if (b == '\n' || i == length - 1) {
+                    _hashes[line] = hash;
+                    line += 1;
+                    _starts[line] = i + 1;
+                    hash = 0;
+                }
+            }
+        }
+
+        /** Return the lines of FILE, which is mapped rather than read. */
+        static Lines map(File file) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                 FileChannel channel = raf.getChannel()) {
+                return new Lines(channel.map(FileChannel.MapMode.READ_ONLY,
+                                             0, channel.size()));
+            }
+        }
+
+        /** Return the number of lines. */
+        int size() {
+            return _hashes.length;
+        }
+
+        /** Return true iff line I is the same as line J of OTHER. */
+        boolean same(int i, Lines other, int j) {
+            return _hashes[i] == other._hashes[j]
+                && same(i, i + 1, other, j, j + 1);
+        }
+
+        /** Return true iff lines FROM to before TO are the same as lines
+         *  OTHERFROM to before OTHERTO of OTHER. */
+        boolean same(int from, int to, Lines other, int otherFrom,
+                     int otherTo) {
+            int start = _starts[from], length = _starts[to] - start,
+                otherStart = other._starts[otherFrom];
+            if (length != other._starts[otherTo] - otherStart) {
+                return false;
+            }
+            if (_bytes.hasArray() && other._bytes.hasArray()) {
+                int at = _bytes.arrayOffset() + start,
+                    otherAt = other._bytes.arrayOffset() + otherStart;
+                return Arrays.equals(_bytes.array(), at, at + length,
+                                     other._bytes.array(), otherAt,
+                                     otherAt + length);
+            }
+            for (int i = 0; i < length; i += 1) {
+                if (_bytes.get(start + i)
+                    != other._bytes.get(otherStart + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Return true iff the contents have a null byte near the start,
+         *  which marks a binary file. */
+        boolean isBinary() {
+            for (int i = 0; i < Math.min(_bytes.limit(), BINARY_PROBE);
+                 i += 1) {
+                if (_bytes.get(i) == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** Write lines FROM to before TO to OUT. */
+        void write(int from, int to, OutputStream out) throws IOException {
+            int start = _starts[from], end = _starts[to];
+            if (_bytes.hasArray()) {
+                out.write(_bytes.array(), _bytes.arrayOffset() + start,
+                          end - start);
+                return;
+            }
+            byte[] chunk = new byte[Math.min(end - start, CHUNK)];
+            for (int i = start; i < end; i += chunk.length) {
+                int n = Math.min(chunk.length, end - i);
+                _bytes.get(i, chunk, 0, n);
+                out.write(chunk, 0, n);
+            }
+        }
+
+        /** Return true iff the lines before TO, if any, end in a newline. */
+        boolean endsLine(int to) {
+            return to == 0 || _bytes.get(_starts[to] - 1) == '\n';
+        }
+
+        /** The contents. */
+        private final ByteBuffer _bytes;
+        /** Offset of the start of each line, and of the end. */
+        private final int[] _starts;
+        /** Hash of each line. */
+        private final int[] _hashes;
+    }
+
+    /** Ints describing each change. */
+    static final int HUNK = 4;
+    /** Multiplier of the line hash. */
+    private static final int HASH = 31;
+    /** Bytes looked at to tell a binary file. */
+    private static final int BINARY_PROBE = 8000;
+    /** Bytes copied at a time from a mapped file. */
+    private static final int CHUNK = 1 << 16;
+
+    /** The files being compared. */
+    private Lines _a, _b;
+    /** Marks of the lines not common to both. */
+    private boolean[] _changedA = new boolean[0], _changedB = new boolean[0];
+    /** Furthest x reached going forward and furthest y going backward,
+     *  by diagonal. */
+    private int[] _forward = new int[0], _backward = new int[0];
+    /** Index in _forward and _backward of diagonal 0. */
+    private int _offset;
+    /** The last middle snake found. */
+    private final int[] _snake = new int[HUNK];
+}
@@ -0,0 +1,143 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import gitlet.LineDiff.Lines;
+
+/** A three-way merge of files, line by line.  Each of the two new
+ *  versions is diffed against the common ancestor with LineDiff, and the
+ *  changes are combined: a change made on one side only is taken, the
+ *  same change made on both is taken once, and changes that overlap or
+ *  touch are written between conflict markers.  Files are worked on as
+ *  their bytes and an array of line offsets; no line is ever copied into
+ *  a String, so memory is linear in the size of the files.
+ *  @author Aayush Sutaria
+ */
+class LineMerge {
+
+    /** Merge the blobs THEIRS and OURS, both descended from the blob BASE,
+     *  into the file DEST.  Returns true iff there was a conflict. */
+    static boolean merge(String base, String ours, String theirs, File dest)
+            throws IOException {
+        ObjectStore store = ObjectStore.local();
+        try (OutputStream out = new BufferedOutputStream(
+                 Files.newOutputStream(dest.toPath()))) {
+            return new LineMerge(out).merge(new Lines(store.read(base)),
+                                            new Lines(store.read(ours)),
+                                            new Lines(store.read(theirs)));
+        }
+    }
+
+    /** A merge writing its result to OUT. */
+    LineMerge(OutputStream out) {
+        _out = out;
+    }
+
+    /** Write the merge of OURS and THEIRS, both changed from BASE.
+     *  Returns true iff there was a conflict. */
+    boolean merge(Lines base, Lines ours, Lines theirs) throws IOException {
+        LineDiff engine = new LineDiff();
+        int[] a = engine.diff(base, ours), b = engine.diff(base, theirs);
+        boolean conflict = false;
+        int i = 0, j = 0, done = 0, shiftA = 0, shiftB = 0;
+        while (i < a.length || j < b.length) {
+            boolean first = j >= b.length
+                || i < a.length && a[i] <= b[j];
+            int lo = first ? a[i] : b[j], hi = first ? a[i + 1] : b[j + 1];
+            int fromA = i, fromB = j;
+            while (true) {
+                if (i < a.length && a[i] <= hi) {
+                    hi = Math.max(hi, a[i + 1]);
+                    i += HUNK;
+                } else if (j < b.length && b[j] <= hi) {
+                    hi = Math.max(hi, b[j + 1]);
+                    j += HUNK;
+                } else {
+                    break;
+                }
+            }
+            copy(base, done, lo);
+            int oursLo = side(a, fromA, i, lo, shiftA, true),
+                oursHi = side(a, fromA, i, hi, shiftA, false),
+                theirsLo = side(b, fromB, j, lo, shiftB, true),
+                theirsHi = side(b, fromB, j, hi, shiftB, false);
+            if (fromB == j) {
+                copy(ours, oursLo, oursHi);
+            } else if (fromA == i) {
+                copy(theirs, theirsLo, theirsHi);
+            } else if (ours.same(oursLo, oursHi, theirs, theirsLo, theirsHi)) {
+                copy(ours, oursLo, oursHi);
+            } else {
+                conflict = true;
+                marker(START);
+                copy(ours, oursLo, oursHi);
+                marker(MIDDLE);
+                copy(theirs, theirsLo, theirsHi);
+                marker(END);
+            }
+            shiftA += oursHi - oursLo - (hi - lo);
+            shiftB += theirsHi - theirsLo - (hi - lo);
+            done = hi;
+        }
+        copy(base, done, base.size());
+        return conflict;
+    }
+
+    /** Return the line of one side matching line LINE of the base, which
+     *  is the start of a group of changes if START and its end
+     *  otherwise.  The changes in the group are those from index FROM to
+     *  index TO of HUNKS; SHIFT is how many more lines that side has than
+     *  the base before the group. */
+    private static int side(int[] hunks, int from, int to, int line,
+                            int shift, boolean start) {
+        if (from == to) {
+            return line + shift;
+        } else if (start) {
+            return hunks[from + 2] - (hunks[from] - line);
+        } else {
+            return hunks[to - HUNK + 3] + (line - hunks[to - HUNK + 1]);
+        }
+    }
+
+    /** Write lines FROM to before TO of LINES. */
+    private void copy(Lines lines, int from, int to) throws IOException {
+        if (from == to) {
+            return;
+        }
+        if (_pending) {
+            _out.write(NEWLINE);
+            _pending = false;
+        }
+        lines.write(from, to, _out);
+        _pending = !lines.endsLine(to);
+    }
+
+    /** Write the conflict marker MARKER on a line of its own. */
+    private void marker(String marker) throws IOException {
+        if (_pending) {
+            _out.write(NEWLINE);
+        }
+        _out.write(marker.getBytes(StandardCharsets.UTF_8));
+        _pending = true;
+    }
+
+    /** Ints describing each change. */
+    private static final int HUNK = LineDiff.HUNK;
+    /** Conflict markers. */
+    private static final String START = "<<<<<<< HEAD", MIDDLE = "=======",
+        END = ">>>>>>>";
+    /** Line separator written after markers. */
+    private static final byte[] NEWLINE =
+        System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    /** Where the merge is written. */
+    private final OutputStream _out;
+    /** True iff a line separator is owed before anything more is
+     *  written. */
+    private boolean _pending;
+}
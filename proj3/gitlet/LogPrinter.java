@@ -0,0 +1,157 @@
+package gitlet;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/** Writes the entries of log and global-log to the standard output as
+ *  they are found, through one buffer rather than a println per line.
+ *  It takes the options that limit the output: --max-count N (or -n N)
+ *  prints at most N commits, and --since DATE only those made at or
+ *  after DATE, given as yyyy-MM-dd, yyyy-MM-dd HH:mm[:ss] or in the
+ *  format of commit dates.  For log, "-- FILE" last prints only the
+ *  commits that changed FILE from their first parent.  Printing also stops once the standard
+ *  output is closed, as when a pager quits, so that the rest of the
+ *  history is not read for nothing.
+ *  @author Aayush Sutaria
+ */
+class LogPrinter {
+
+    /** A printer for the command ARGS, which must be valid().  If
+     *  NEWESTFIRST is true, commits are printed newest first, so the
+     *  first commit older than --since ends the output. */
+    LogPrinter(String[] args, boolean newestFirst) {
+        _newestFirst = newestFirst;
+        for (int i = 1; i < args.length; i += 2) {
+            if (args[i].equals(SINCE)) {
+                _since = parseDate(args[i + 1]);
+            } else if (!args[i].equals(PATH)) {
+                _remaining = Integer.parseInt(args[i + 1]);
+            }
+        }
+        _out = new BufferedWriter(new OutputStreamWriter(System.out));
+    }
+
+    /** Return true iff ARGS are a valid log or global-log command. */
+    static boolean valid(String[] args) {
+        if (args.length % 2 == 0) {
+            return false;
+        }
+        for (int i = 1; i < args.length; i += 2) {
+            try {
+                if (args[i].equals(SINCE)) {
+                    parseDate(args[i + 1]);
+                } else if (args[i].equals(PATH)) {
+                    if (i != args.length - 2 || args[i + 1].isEmpty()) {
+                        return false;
+                    }
+                } else if (!args[i].equals(MAX_COUNT)
+                           && !args[i].equals(SHORT_MAX_COUNT)
+                           || Integer.parseInt(args[i + 1]) < 0) {
+                    return false;
+                }
+            } catch (DateTimeParseException | NumberFormatException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the file given after "--" in the valid() ARGS, or null. */
+    static String path(String[] args) {
+        int n = args.length;
+        return n >= 3 && args[n - 2].equals(PATH) ? args[n - 1] : null;
+    }
+
+    /** Print the commit SHAVAL, with parents PARENT and SECOND (null or
+     *  "" if none), time stamp TIMESTAMP and message MSG, unless it is
+     *  older than --since.  Returns false if no more commits are to be
+     *  printed. */
+    boolean print(String shaVal, String parent, String second,
+                  String timeStamp, String msg) throws IOException {
+        if (_remaining == 0) {
+            return false;
+        }
+        if (_since != null && ZonedDateTime.parse(timeStamp, DATE)
+                .isBefore(_since)) {
+            return !_newestFirst;
+        }
+        _out.write("===\ncommit ");
+        _out.write(shaVal);
+        _out.write('\n');
+        if (second != null && !second.isEmpty()) {
+            _out.write("Merge: ");
+            _out.write(parent, 0, ID_LENGTH);
+            _out.write(' ');
+            _out.write(second, 0, ID_LENGTH);
+            _out.write('\n');
+        }
+        _out.write("Date: ");
+        _out.write(timeStamp);
+        _out.write('\n');
+        _out.write(msg);
+        _out.write("\n\n");
+        _remaining -= 1;
+        return !System.out.checkError();
+    }
+
+    /** Print the commit C, as by the other print. */
+    boolean print(Commit c) throws IOException {
+        return print(c.getCommitShaVal(), c.getParentShaVal(),
+                     c.getSecondParentShaVal(), c.getTimeStamp(),
+                     c.getMsg());
+    }
+
+    /** Write out what is still buffered. */
+    void flush() throws IOException {
+        _out.flush();
+    }
+
+    /** Return the time DATE given to --since. */
+    private static ZonedDateTime parseDate(String date) {
+        try {
+            return ZonedDateTime.parse(date, DATE);
+        } catch (DateTimeParseException excp) {
+            if (date.length() == DAY_LENGTH) {
+                return LocalDate.parse(date)
+                    .atStartOfDay(ZoneId.systemDefault());
+            }
+            return LocalDateTime.parse(date, date.length() == MINUTE_LENGTH
+                                       ? MINUTE : SECOND)
+                .atZone(ZoneId.systemDefault());
+        }
+    }
+
+    /** Options of log and global-log. */
+    static final String MAX_COUNT = "--max-count", SHORT_MAX_COUNT = "-n",
+        SINCE = "--since", PATH = "--";
+
+    /** Format of commit dates. */
+    private static final DateTimeFormatter DATE =
+        DateTimeFormatter.ofPattern("EEE LLL d HH:mm:ss y Z");
+    /** Formats of --since dates with a time of day. */
+    private static final DateTimeFormatter
+        MINUTE = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"),
+        SECOND = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    /** Lengths of a --since date that is only a day or a day and time
+     *  to the minute. */
+    private static final int DAY_LENGTH = 10, MINUTE_LENGTH = 16;
+    /** Length of the abbreviated ids of merged parents. */
+    private static final int ID_LENGTH = 7;
+
+    /** True iff commits come newest first. */
+    private final boolean _newestFirst;
+    /** Commits still to print, or -1 for no bound. */
+    private int _remaining = -1;
+    /** Earliest time of the commits to print, or null. */
+    private ZonedDateTime _since;
+    /** Buffer over the standard output. */
+    private final Writer _out;
+}
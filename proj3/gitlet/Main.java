@@ -1,11 +1,25 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.Stack;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Aayush Sutaria
@@ -27,33 +41,216 @@ public class Main {
     static final File HISTORY = new File(".gitlet/history");
     /**  remote directory. */
     static final File REMOTE = new File(".gitlet/remote");
-    /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND> .... */
+    /** Usage: java gitlet.Main [--stats] ARGS, where ARGS contains
+     *  <COMMAND> <OPERAND> ....  With --stats, the use of the object
+     *  cache is reported on the standard error when the command ends.
+     *  If a daemon is serving this repository, the command is run by
+     *  it instead. */
     public static void main(String... args) throws IOException {
+        if (args.length == 1 && args[0].equals("daemon")) {
+            if (!REPO.exists()) {
+                System.out.println("Not in an initialized Gitlet directory.");
+            } else {
+                Daemon.serve();
+            }
+            return;
+        }
+        if (Daemon.forward(args)) {
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--stats")) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() ->
+                    System.err.println(ObjectCache.shared().stats())));
+        }
+        try {
+            run(args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+            System.exit(0);
+        }
+    }
+
+    /** Run the command ARGS, as given to main, leaving the state read in
+     *  for it loaded for the next command if the current branch is
+     *  unchanged.  Throws a GitletException, holding the message to
+     *  print, if the command fails; the state in memory may then differ
+     *  from that on disk, and must be dropped with forget().  The
+     *  branches, stages, histories and caches the command changes are
+     *  written together by the journal when it ends, or when it fails
+     *  with a GitletException, after any updates it left unfinished
+     *  when last killed have been made.  The command holds the lock of
+     *  the repository, from lock(), while it runs; if it holds it alone,
+     *  it first moves any loose objects not yet in fan-out directories
+     *  into them. */
+    static void run(String... args) throws IOException {
+        if (args.length > 0 && args[0].equals("--stats")) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
         if (args.length == 0) {
             error("Please enter a command.");
         }
         formatArg(args[0], args);
-        if (!args[0].equals("init")) {
-            if (!REPO.exists()) {
-                error("Not in an initialized Gitlet directory.");
+        _statIndex = null;
+        _ignore = null;
+        if (args[0].equals("init")) {
+            init();
+            save();
+            return;
+        }
+        if (!REPO.exists()) {
+            error("Not in an initialized Gitlet directory.");
+        }
+        try (RepoLock lock = lock(args)) {
+            _lock = lock;
+            if (!lock.shared()) {
+                Journal.local().recover();
+                ObjectStore.local().upgrade();
+            }
+            if (_branch == null || !_branch.getName().equals(_loadedFor)) {
+                _branch = Branch.fromFile();
+                _stagingArea = Stage.fromFile(_branch.getName());
+                _history = History.fromFile(_branch.getName());
+                _loadedFor = _branch.getName();
             }
-            _branch = Branch.fromFile();
-            _stagingArea = Stage.fromFile(_branch.getName());
-            _history = History.fromFile(_branch.getName());
-            switchHelper(args);
+            try {
+                switchHelper(args);
+            } catch (GitletException excp) {
+                if (lock.shared()) {
+                    Journal.local().discard();
+                } else {
+                    Journal.local().commit();
+                }
+                throw excp;
+            }
+            if (lock.shared()) {
+                Journal.local().discard();
+                saveStatIndex(lock);
+            } else {
+                save();
+            }
+        } finally {
+            _lock = null;
+        }
+    }
 
-        } else {
-            init();
+    /** Write the stat cache refreshed by a command that ran under the
+     *  shared LOCK, if the lock can then be had alone at once, after
+     *  making any updates a command killed meanwhile left.  Files left
+     *  racy by checkout, reset or merge are otherwise hashed again by
+     *  every status until a command changes the repository. */
+    private static void saveStatIndex(RepoLock lock) throws IOException {
+        if (_statIndex == null || !_statIndex.changed()
+            || !lock.tryAlone()) {
+            return;
         }
+        Journal.local().recover();
+        _statIndex.save();
+        Journal.local().commit();
+    }
+
+    /** Write the branch, stage, history and caches the command changed,
+     *  through the journal, then bring the message index up to date. */
+    private static void save() throws IOException {
         _history.saveHistory();
         saveCurBranch();
         _stagingArea.saveStage();
+        if (_statIndex != null) {
+            _statIndex.save();
+        }
+        Journal.local().commit();
+        if (_history.isLocal()) {
+            MessageIndex.local().update();
+        }
+    }
+
+    /** Return the lock of the local repository for the command ARGS, as
+     *  given to main, or null if there is no repository.  Commands that
+     *  only read share it, unless updates left by a killed command or
+     *  missing from the message index must be made first, or a history
+     *  index in the old format must be rewritten; the others take it
+     *  alone.  A command run under a shared lock writes nothing but the
+     *  stat cache, and that only if it can have the lock alone when it
+     *  ends; the other caches it would have refreshed are left to the
+     *  next command that changes the repository. */
+    static RepoLock lock(String... args) throws IOException {
+        if (args.length > 0 && args[0].equals("--stats")) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        if (args.length == 0 || args[0].equals("init") || !REPO.exists()) {
+            return null;
+        }
+        if (READ_ONLY.contains(args[0])) {
+            RepoLock lock = RepoLock.acquire(REPO, true);
+            if (!Journal.local().pending() && !hasLegacyHistory()
+                && MessageIndex.local().isCurrent()) {
+                return lock;
+            }
+            lock.close();
+        }
+        return RepoLock.acquire(REPO, false);
+    }
+
+    /** Return true iff a history index of this repository is still in
+     *  the old format, which is rewritten when it is read. */
+    private static boolean hasLegacyHistory() throws IOException {
+        File[] files = HISTORY.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (History.isLegacy(file)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Drop all repository state held in memory, so that the next
+     *  command reads it in again. */
+    static void forget() {
+        _branch = null;
+        _stagingArea = null;
+        _history = new History();
+        _statIndex = null;
+        _ignore = null;
+        _loadedFor = null;
+        Journal.local().discard();
+        ObjectCache.shared().clear();
+        ObjectStore.forget();
+    }
+
+    /** Return the stat cache of the working directory, read in when first
+     *  needed. */
+    private static StatIndex statIndex() {
+        if (_statIndex == null) {
+            _statIndex = StatIndex.fromFile();
+        }
+        return _statIndex;
+    }
+
+    /** Return the ignore rules of the working directory, read in when
+     *  first needed. */
+    private static Ignore ignore() {
+        if (_ignore == null) {
+            _ignore = Ignore.fromFile(CWD);
+        }
+        return _ignore;
+    }
+
+    /** Write the blob with SHA-1 val SHAVAL to the working file NAME,
+     *  making the directories it is in if need be.
+     * @param shaVal SHA-1 val of a blob
+     * @param name working file name */
+    private static void checkoutFile(String shaVal, String name)
+            throws IOException {
+        File file = Utils.join(CWD, name);
+        Files.createDirectories(file.getParentFile().toPath());
+        Blob.checkout(shaVal, file);
+        statIndex().written(name, shaVal);
     }
     /** Save cur branch name into a file. */
     private static void saveCurBranch() throws IOException {
-        CURRENT_BRANCH.createNewFile();
-        Utils.writeContents(CURRENT_BRANCH, _branch.getName());
+        Journal.local().write(CURRENT_BRANCH,
+                _branch.getName().getBytes(StandardCharsets.UTF_8));
         _branch.saveBranch();
     }
 
@@ -71,13 +268,13 @@ public class Main {
             checkout(args);
             break;
         case "log":
-            log();
+            log(args);
             break;
         case "rm":
             rm(args);
             break;
         case "global-log":
-            gLog();
+            gLog(args);
             break;
         case "find":
             find(args);
@@ -85,6 +282,9 @@ public class Main {
         case "status":
             status();
             break;
+        case "diff":
+            diff(args);
+            break;
         case "branch":
             branch(args);
             break;
@@ -112,6 +312,18 @@ public class Main {
         case "pull":
             pull(args);
             break;
+        case "migrate":
+            migrate();
+            break;
+        case "repack":
+            repack();
+            break;
+        case "gc":
+            gc(true);
+            break;
+        case "prune":
+            gc(false);
+            break;
 
         default:
             error("No command with that name exists.");
@@ -119,12 +331,12 @@ public class Main {
     }
 
 
-    /** Prints error message and exits system.
+    /** Ends the command with error message M, which is printed when
+     *  the GitletException thrown reaches main or the daemon.
      *@param m is the error message to output
      */
     public static void error(String m) {
-        System.out.println(m);
-        System.exit(0);
+        throw new GitletException(m);
     }
 
     /** Validates formatting of inputted args based on command.
@@ -135,11 +347,22 @@ public class Main {
         boolean valid;
         switch (command) {
         case "init":
-        case "log":
-        case "global-log":
+        case "migrate":
+        case "repack":
+        case "gc":
+        case "prune":
         case "status":
             valid = args.length == 1;
             break;
+        case "diff":
+            valid = args.length <= 3;
+            break;
+        case "log":
+            valid = LogPrinter.valid(args);
+            break;
+        case "global-log":
+            valid = LogPrinter.valid(args) && LogPrinter.path(args) == null;
+            break;
         case "commit":
             valid = args.length == 1 || args.length == 2;
             break;
@@ -156,6 +379,13 @@ public class Main {
         case "add-remote":
             valid = args.length == 3 && args[2].matches(".+/\\.gitlet");
             break;
+        case "add":
+            valid = args.length >= 2;
+            break;
+        case "find":
+            valid = args.length == 2 || (args.length == 3
+                    && Arrays.asList(FIND_MODES).contains(args[1]));
+            break;
         default:
             valid = args.length == 2;
         }
@@ -176,53 +406,78 @@ public class Main {
         }
         REPO.mkdir();
         OBJECT.mkdir();
+        ObjectStore.local().upgrade();
         BRANCH.mkdir();
         STAGE.mkdir();
         HISTORY.mkdir();
         REMOTE.mkdir();
         _stagingArea = new Stage("master");
-        new Branch("master").saveBranch();
-        _branch = Branch.fromFile("master");
-        Commit c = new Commit(null, "initial commit");
+        _branch = new Branch("master");
+        Commit c = new Commit(null, "initial commit", null, null);
         _history.addCommit(c);
         _branch.addCommit(c.getCommitShaVal());
     }
 
-    /** Adds a copy of the file as it currently exists to the staging area.
+    /** Adds a copy of each file named in ARGS as it currently exists to
+     *  the staging area; a directory stands for every file under it
+     *  whose path has no part starting with ".".  The files not already
+     *  known to be unchanged are hashed and stored on the worker threads.
      * @param args args of user */
     private static void add(String[] args) throws IOException {
-        if (!Utils.join(CWD, args[1]).exists()) {
-            error("File does not exist.");
+        List<String> names = addedFiles(args);
+        HashMap<String, String> head = _history.isEmpty() ? null
+            : _history.getCommit(_branch.getHead()).getBlobFiles();
+        ArrayList<String> toStore = new ArrayList<>();
+        for (String name : names) {
+            if (_stagingArea.hasStagingTree()
+                    && _stagingArea.getRemove().remove(name)) {
+                continue;
+            }
+            toStore.add(name);
         }
-        boolean remove = false;
-        boolean check = true;
-        if (_stagingArea.hasStagingTree()) {
-            if (_stagingArea.getRemove().contains(args[1])) {
-                _stagingArea.getRemove().remove(args[1]);
-                remove = true;
+        ArrayList<Blob> changed = new ArrayList<>();
+        ArrayList<String> unchanged = new ArrayList<>();
+        for (Blob blob : statIndex().storeAll(toStore)) {
+            if (head != null
+                    && blob.getShaVal().equals(head.get(blob.getName()))) {
+                unchanged.add(blob.getName());
+            } else {
+                changed.add(blob);
             }
         }
-        if (!remove) {
-            Blob blob = new Blob(args[1]);
-            if (!_history.isEmpty()) {
-                if (_history.getCommit(_branch.getHead()).getBlobFiles()
-                        != null) {
-                    if (_history.getCommit(_branch.getHead()).
-                            getBlobFiles().containsKey(args[1])) {
-                        if (_history.getCommit(_branch.getHead()).
-                                getBlobFiles().get(args[1]).equals
-                                (blob.getShaVal())) {
-                            _stagingArea.unStage(args[1]);
-                            check = false;
-                        }
-                    }
-                }
+        _stagingArea.unStage(unchanged);
+        _stagingArea.addBlobs(changed);
+    }
+
+    /** Return the paths, relative to the working directory and without
+     *  repeats, of the files named in ARGS, expanding directories into
+     *  the files in them that are not ignored. */
+    private static List<String> addedFiles(String[] args) throws IOException {
+        Path root = CWD.toPath().toAbsolutePath().normalize();
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        for (int i = 1; i < args.length; i += 1) {
+            if (!Utils.join(CWD, args[i]).exists()) {
+                error("File does not exist.");
             }
-            if (check) {
-                _stagingArea.addBlob(blob);
+        }
+        for (int i = 1; i < args.length; i += 1) {
+            Path path = root.resolve(args[i]).normalize();
+            if (!Files.isDirectory(path)) {
+                result.add(relativePath(root, path));
+                continue;
             }
+            result.addAll(WorkTree.files(root, path, ignore()));
         }
+        return new ArrayList<>(result);
     }
+
+    /** Return the name of the file PATH relative to ROOT, with "/"
+     *  between its parts. */
+    private static String relativePath(Path root, Path path) {
+        return root.relativize(path).toString()
+            .replace(File.separatorChar, '/');
+    }
+
     /** Saves a snapshot of certain files in the current commit and staging area
      *  so they can be restored at a later time, creating a new commit.
      *  @param args args of user */
@@ -235,35 +490,76 @@ public class Main {
             error("Please enter a commit message.");
         }
         _stagingArea.commit();
-        Commit c = new Commit(_stagingArea.getTree(), args[1]);
+        Commit c = new Commit(_stagingArea.getTree(), args[1],
+                _branch.getHead(), null);
         _stagingArea.clear();
-        c.addAncestors(_branch.getCommits());
-        if (!_history.isEmpty()) {
-            c.setParent(_history.getCommit(_branch.getHead()));
-        }
         _history.addCommit(c);
         _branch.addCommit(c.getCommitShaVal());
     }
     /** Starting at the current head commit, display information
      *  about each commit backwards along the commit tree until
      *  the initial commit, following the first parent commit links,
-     *  ignoring any second parents found in merge commits.
+     *  ignoring any second parents found in merge commits.  Each commit
+     *  is read and printed in turn, so the walk stops as soon as the
+     *  options in ARGS or a closed output allow.  With a file after "--",
+     *  only the commits that changed it from their first parent are
+     *  printed; the walk is made over the commit graph, and the trees of
+     *  a commit are only compared when its changed-path filter says it
+     *  may have changed the file.
      *  */
-    private static void log() {
-        Commit c = _history.getCommit(_branch.getHead());
-        while (c != null) {
-            System.out.println("===\ncommit " + c.getCommitShaVal());
-            if (c.isMerged()) {
-                System.out.println("Merge: " + c.getParent().getId()
-                        + " " + c.getParentsParent().getId());
+    private static void log(String[] args) throws IOException {
+        LogPrinter out = new LogPrinter(args, true);
+        String path = LogPrinter.path(args);
+        if (path != null) {
+            logPath(out, path);
+            out.flush();
+            return;
+        }
+        String shaVal = _branch.getHead();
+        while (shaVal != null) {
+            Commit c = _history.getCommit(shaVal);
+            if (!out.print(c)) {
+                break;
             }
-            System.out.println("Date: "
-                    + c.getTimeStamp()
-                    + "\n" + c.getMsg());
-            System.out.println();
-            c = c.getParent();
+            shaVal = c.getParentShaVal();
         }
+        out.flush();
+    }
+    /** Print to OUT the commits from the current head, following first
+     *  parents, that changed the file PATH from their first parent. */
+    private static void logPath(LogPrinter out, String path)
+        throws IOException {
+        CommitGraph graph = _history.graph();
+        long hash = PathFilter.hash(path);
+        int k = graph.indexOf(_branch.getHead());
+        Commit c = null;
+        while (k != CommitGraph.NONE) {
+            int parent = graph.firstParent(k);
+            if (graph.mayHaveChanged(k, hash)) {
+                if (c == null) {
+                    c = _history.getCommit(graph.shaVal(k));
+                }
+                Commit p = parent == CommitGraph.NONE ? null
+                    : _history.getCommit(graph.shaVal(parent));
+                String blob = blobOf(c, path);
+                if (!Objects.equals(blob, p == null ? null : blobOf(p, path))
+                    && !out.print(c)) {
+                    return;
+                }
+                c = p;
+            } else {
+                c = null;
+            }
+            k = parent;
+        }
+    }
+
+    /** Return the SHA-1 val of the blob of file PATH in commit C, or null
+     *  if C does not track it. */
+    private static String blobOf(Commit c, String path) {
+        return Tree.lookup(c, Collections.singleton(path)).get(path);
     }
+
     /** General command with different functions depending on args.
      * @param args args of user */
     public static void checkout(String[] args) throws IOException {
@@ -272,27 +568,14 @@ public class Main {
                     getBlobFiles().containsKey(args[2])) {
                 error("File does not exist in that commit.");
             }
-            Utils.join(CWD, args[2]).createNewFile();
-            Utils.writeContents(Utils.join(CWD, args[2]),
-                    Blob.fromFile(_history.getCommit(_branch.getHead()).
-                            getBlobFiles().get(args[2])));
+            checkoutFile(_history.getCommit(_branch.getHead()).
+                    getBlobFiles().get(args[2]), args[2]);
         } else if (args.length == 4) {
-            Commit c = null;
-            for (String id : OBJECT.list()) {
-                if (id.startsWith(args[1])) {
-                    c = Commit.fromFile(id);
-                    break;
-                }
-            }
-            if (c == null) {
-                error("No commit with that id exists.");
-            }
+            Commit c = Commit.fromFile(commitId(args[1]));
             if (!c.getBlobFiles().containsKey(args[3])) {
                 error("File does not exist in that commit.");
             }
-            Utils.join(CWD, args[3]).createNewFile();
-            Utils.writeContents(Utils.join(CWD, args[3]),
-                    Blob.fromFile(c.getBlobFiles().get(args[3])));
+            checkoutFile(c.getBlobFiles().get(args[3]), args[3]);
         } else {
             helperCheckout(args);
         }
@@ -309,52 +592,37 @@ public class Main {
         } else {
             if (CURRENT_BRANCH.list() != null) {
                 for (String f : CWD.list()) {
-                    if (!f.startsWith(".")) {
-                        if (unTracked(f)) {
-                            error("There is an untracked file in the w"
-                                    + "ay; delete it or add it first.");
-                        }
+                    if (unTracked(f)) {
+                        error("There is an untracked file in the w"
+                                + "ay; delete it or add it first.");
                     }
                 }
             }
             HashMap<String, String> files =
                     Commit.fromFile(Branch.fromFile(name)
                             .getHead()).getBlobFiles();
-            if (files != null) {
-                for (String str : files.keySet()) {
-                    Utils.join(CWD, str).createNewFile();
-                    Utils.writeContents(Utils.join(CWD,
-                            str), Blob.fromFile(files.get(str)));
-                }
-            }
-            for (File f : CWD.listFiles()) {
-                if (!f.isHidden()) {
-                    if (!f.isDirectory()) {
-                        if (!f.getName().equals("Makefile")) {
-                            if (!f.getName().endsWith(".iml")) {
-                                if (!files.containsKey(f.getName())) {
-                                    if (_stagingArea.getTrackedFiles()
-                                            != null) {
-                                        if (_stagingArea.getTrackedFiles().
-                                                containsKey(f.getName())) {
-                                            f.delete();
-                                        }
-                                    }
-                                }
-                            }
-                        }
+            ArrayList<String> tracked = new ArrayList<>();
+            if (_stagingArea.getTrackedFiles() != null) {
+                for (String f : workingFiles()) {
+                    if (_stagingArea.getTrackedFiles().containsKey(f)) {
+                        tracked.add(f);
                     }
                 }
+                tracked.addAll(
+                        trackedInDirs(_stagingArea.getTrackedFiles()));
             }
+            checkoutFiles(files, tracked);
             _branch = Branch.fromFile(name);
         }
         _stagingArea.clear();
     }
 
-    /** Unstage the file if it is currently staged for addition.
+    /** Unstage the file if it is currently staged for addition.  If it
+     *  is tracked, it is marked for removal and deleted, with any
+     *  directories it leaves empty.
      * @param args args inputted
      */
-    public static void rm(String[] args) {
+    public static void rm(String[] args) throws IOException {
         int removed = 0;
         if (_stagingArea.hasStagingTree()
                 && _stagingArea.getTree().
@@ -366,7 +634,9 @@ public class Main {
                 containsKey(args[1])) {
             removed++;
             _stagingArea.remove(args[1]);
-            Utils.restrictedDelete(Utils.join(CWD, args[1]));
+            Checkout checkout = new Checkout(CWD, REPO, statIndex());
+            checkout.delete(args[1]);
+            checkout.run();
         }
         if (removed == 0) {
             error("No reason to remove the file.");
@@ -374,42 +644,75 @@ public class Main {
     }
         /** Global log is Like log, except displays information about
          * all commits ever made. The order of the commits does not matter.
+         * ARGS may limit the output as for log.
          * */
-    public static void gLog() {
-        for (Commit c : _history.getCommitHistory().values()) {
-            System.out.println("===\ncommit "
-                    + c.getCommitShaVal());
-            if (c.isMerged()) {
-                System.out.println("Merge: " + c.getParent().getId() + " "
-                        + c.getParentsParent().getId());
+    public static void gLog(String[] args) throws IOException {
+        LogPrinter out = new LogPrinter(args, false);
+        if (_history.isLocal()) {
+            MessageIndex index = MessageIndex.local();
+            index.update();
+            index.forEach(r -> out.print(r.shaVal, r.parent, r.second,
+                                         r.timeStamp, r.msg));
+        } else {
+            for (Commit c : _history.getCommitHistory()) {
+                if (!out.print(c)) {
+                    break;
+                }
             }
-            System.out.println("Date: "
-                    + c.getTimeStamp() + "\n" + c.getMsg());
-            System.out.println();
         }
+        out.flush();
     }
     /** Prints out the ids of all commits that
-     * have the given commit message, one per line.
+     * have the given commit message, one per line.  With --exact, the
+     * message must be the given one; with --word, it must have the given
+     * word, and with --prefix, a word starting with the given prefix,
+     * both in any case.  The local history is searched through its
+     * message index.
      *@param args args */
-    public static void find(String[] args) {
+    public static void find(String[] args) throws IOException {
         int count = 0;
-        for (Commit c : _history.getCommitHistory().values()) {
-            if (c.getMsg().contains(args[1])) {
-                System.out.println(c.getCommitShaVal());
+        if (_history.isLocal()) {
+            MessageIndex index = MessageIndex.local();
+            index.update();
+            String query = args[args.length - 1];
+            List<MessageIndex.Record> found;
+            switch (args.length == 2 ? "" : args[1]) {
+            case MessageIndex.EXACT:
+                found = index.exact(query);
+                break;
+            case MessageIndex.WORD:
+                found = index.word(query);
+                break;
+            case MessageIndex.PREFIX:
+                found = index.prefix(query);
+                break;
+            default:
+                found = index.containing(query);
+            }
+            for (MessageIndex.Record r : found) {
+                System.out.println(r.shaVal);
                 count++;
             }
+        } else {
+            for (Commit c : _history.getCommitHistory()) {
+                if (args.length == 2 ? c.getMsg().contains(args[1])
+                        : MessageIndex.matches(args[1], args[2], c.getMsg())) {
+                    System.out.println(c.getCommitShaVal());
+                    count++;
+                }
+            }
         }
         if (count == 0) {
             error("Found no commit with that message.");
         }
     }
+
     /**  Creates a new branch with the given name,
      *  and points it at the current head node.
      * @param args args inputted */
     public static void branch(String[] args) throws IOException {
         if (!Arrays.asList(BRANCH.list()).contains(args[1])) {
             new Branch(args[1], _branch.getHead()).saveBranch();
-            Branch.fromFile(args[1]).addCommits(_branch.getCommits());
             _stagingArea.saveStage(args[1]);
         } else {
             error("A branch with that name already exists.");
@@ -423,67 +726,135 @@ public class Main {
         } else if (_branch.getName().equals(args[1])) {
             error("Cannot remove the current branch.");
         } else {
-            Utils.join(BRANCH, args[1]).delete();
-            Utils.join(STAGE, args[1]).delete();
+            Journal.local().delete(Utils.join(BRANCH, args[1]));
+            Journal.local().delete(Utils.join(STAGE, args[1]));
         }
     }
     /**Checks out all the files tracked by the given commit.
      * @param args input */
     public static void reset(String[] args) throws IOException {
-        Commit c = null;
-        int find = 0;
-        for (String shaVal : OBJECT.list()) {
-            if (shaVal.startsWith(args[1])) {
-                find++;
-                c = Commit.fromFile(shaVal);
-                break;
-            }
-        }
-        if (find != 0) {
-            if (CWD.list() != null) {
-                for (String f : CWD.list()) {
-                    if (!f.startsWith(".")) {
-                        if (!_stagingArea.getTrackedFiles().containsKey(f)) {
-                            if (c.hasFiles()) {
-                                if (c.getBlobFiles().containsKey(f)) {
-                                    if (!Blob.fromFile(c.getBlobFiles().get(f))
-                                            .equals(Utils.readContentsAsString
-                                                    (Utils.join(CWD, f)))) {
-                                        error("There is an untracked file "
-                                                + "in the way; delete"
-                                                + " it or add it first.");
-                                    }
+        Commit c = Commit.fromFile(commitId(args[1]));
+        if (CWD.list() != null) {
+            for (String f : CWD.list()) {
+                if (!ignore().ignores(f, false)) {
+                    if (!_stagingArea.getTrackedFiles().containsKey(f)) {
+                        if (c.hasFiles()) {
+                            if (c.getBlobFiles().containsKey(f)) {
+                                if (!c.getBlobFiles().get(f).equals(
+                                        statIndex().shaOf(f))) {
+                                    error("There is an untracked file "
+                                            + "in the way; delete"
+                                            + " it or add it first.");
                                 }
                             }
                         }
                     }
                 }
-                for (File file : CWD.listFiles()) {
-                    if (!file.isHidden()) {
-                        if (!file.getName().equals("Makefile")) {
-                            if (!file.getName().endsWith(".iml")) {
-                                file.delete();
-                            }
-                        }
-                    }
-                }
-            }
-            HashMap<String, String> files = c.getBlobFiles();
-            for (String fileName : files.keySet()) {
-                Utils.writeContents(Utils.join(CWD, fileName),
-                        Blob.fromFile(files.get(fileName)));
             }
-        } else {
-            error("No commit with that id exists.");
         }
+        reFile(c);
         _stagingArea.clear();
         _history.addCommit(c);
         _branch.addCommit(c.getCommitShaVal());
     }
+    /** Prints the changes between two versions of the tracked files in
+     *  the unified diff format.  With no commit in ARGS, the working files
+     *  are compared with the stage; with one, with that commit; with two,
+     *  the first commit is compared with the second.  Only files whose
+     *  SHA-1 vals differ are read, and working files are mapped rather
+     *  than read in.
+     *  @param args args */
+    public static void diff(String[] args) throws IOException {
+        BufferedOutputStream stdout = new BufferedOutputStream(System.out);
+        UnifiedDiff out = new UnifiedDiff(stdout);
+        TreeMap<String, String> old = new TreeMap<>();
+        if (args.length == 3) {
+            Commit from = findCommit(args[1]), to = findCommit(args[2]);
+            Set<String> changed = Tree.changedPaths(from, to);
+            HashMap<String, String> now = Tree.lookup(to, changed);
+            old.putAll(Tree.lookup(from, changed));
+            for (String name : changed) {
+                old.putIfAbsent(name, null);
+            }
+            for (Map.Entry<String, String> e : old.entrySet()) {
+                out.write(e.getKey(), blobLines(e.getValue()),
+                          blobLines(now.get(e.getKey())));
+            }
+        } else {
+            if (args.length == 2) {
+                old.putAll(findCommit(args[1]).getBlobFiles());
+            }
+            HashMap<String, String> staged =
+                new HashMap<>(_stagingArea.getTrackedFiles());
+            if (_stagingArea.hasStagingTree()) {
+                staged.putAll(_stagingArea.getStaged());
+            }
+            for (Map.Entry<String, String> e : staged.entrySet()) {
+                if (args.length == 1) {
+                    old.put(e.getKey(), e.getValue());
+                } else {
+                    old.putIfAbsent(e.getKey(), null);
+                }
+            }
+            for (Map.Entry<String, String> e : old.entrySet()) {
+                File file = Utils.join(CWD, e.getKey());
+                String shaVal = statIndex().shaOf(e.getKey());
+                if (shaVal == null ? e.getValue() != null
+                        : !shaVal.equals(e.getValue())) {
+                    out.write(e.getKey(), blobLines(e.getValue()),
+                              shaVal == null ? null
+                              : LineDiff.Lines.map(file));
+                }
+            }
+        }
+        stdout.flush();
+    }
+
+    /** Return the lines of the blob SHAVAL, or null if SHAVAL is null. */
+    private static LineDiff.Lines blobLines(String shaVal) {
+        return shaVal == null ? null
+            : new LineDiff.Lines(ObjectStore.local().read(shaVal));
+    }
+
+    /** Return the commit in this history whose SHA-1 val starts with ID,
+     *  failing if there is none. */
+    private static Commit findCommit(String id) throws IOException {
+        String shaVal = commitId(id);
+        if (!_history.hasCommit(shaVal)) {
+            error("No commit with that id exists.");
+        }
+        return _history.getCommit(shaVal);
+    }
+
+    /** Return the SHA-1 val of the one commit whose SHA-1 val starts with
+     *  ID, failing if there is none or more than one.  Only the fan-out
+     *  directory and the parts of the pack indices that could hold such
+     *  commits are searched. */
+    private static String commitId(String id) throws IOException {
+        String result = null;
+        for (String shaVal : ObjectStore.local().withPrefix(id)) {
+            if (Commit.isCommit(shaVal)) {
+                if (result != null) {
+                    error("Commit id " + id + " is ambiguous.");
+                }
+                result = shaVal;
+            }
+        }
+        if (result == null) {
+            error("No commit with that id exists.");
+        }
+        return result;
+    }
+
     /**  Displays what branches currently exist,
      *  and marks the current branch with a *.
-     *  Also displays what files have been staged for addition or removal. */
-    public static void status() {
+     *  Also displays what files have been staged for addition or removal,
+     *  the tracked files changed since, and the untracked files, looking
+     *  through the whole working directory but for ignored files.  The
+     *  directories are listed, and the files that may have changed
+     *  hashed, on the worker threads, and the last two sections are
+     *  sorted. */
+    public static void status() throws IOException {
         System.out.println("=== Branches ===");
         Stack<String> otherBranches = new Stack<>();
         for (String b : BRANCH.list()) {
@@ -515,51 +886,70 @@ public class Main {
             }
         }
         System.out.println("\n=== Modifications Not Staged For Commit ===");
-        HashSet<String> fileName = new HashSet<>();
-        if (CWD.list() != null) {
-            fileName.addAll(Arrays.asList(CWD.list()));
+        HashMap<String, String> head =
+            _history.getCommit(_branch.getHead()).getBlobFiles();
+        HashMap<String, String> staged = _stagingArea.allStaged()
+            ? new HashMap<>() : _stagingArea.getStaged();
+        List<String> working = WorkTree.files(CWD.toPath(), ignore());
+        ArrayList<String> compared = new ArrayList<>();
+        for (String name : working) {
+            if (head.containsKey(name) || staged.containsKey(name)) {
+                compared.add(name);
+            }
         }
-        fileName.addAll(_stagingArea.getTrackedFiles().keySet());
-        if (_stagingArea.hasStagingTree()) {
-            fileName.addAll(_stagingArea.getStagedName());
+        String[] shaVals = statIndex().shaOfAll(compared);
+        HashMap<String, String> contents = new HashMap<>();
+        for (int k = 0; k < shaVals.length; k += 1) {
+            contents.put(compared.get(k), shaVals[k]);
+        }
+        TreeSet<String> names = new TreeSet<>(compared);
+        names.addAll(_stagingArea.getTrackedFiles().keySet());
+        names.addAll(staged.keySet());
+        for (String name : names) {
+            String change = null;
+            if (contents.containsKey(name)) {
+                change = change(name, contents.get(name), head, staged);
+            } else if (!Utils.join(CWD, name).exists()
+                       && !ignore().ignores(name, false)) {
+                change = change(name, null, head, staged);
+            }
+            if (change != null) {
+                System.out.println(name + " (" + change + ")");
+            }
         }
-        stausHelper(fileName);
         System.out.println("\n=== Untracked Files ===");
-        if (CWD.list() != null) {
-            for (String name : CWD.list()) {
-                if (unTracked(name)) {
-                    System.out.println(name);
-                }
+        for (String name : working) {
+            if (!head.containsKey(name) && !staged.containsKey(name)) {
+                System.out.println(name);
             }
         }
     }
 
-    /** Helper function to pass style check.
-     * @param file file */
-    private static void stausHelper(HashSet<String> file) {
-        for (String f : file) {
-            if (!Utils.join(CWD, f).exists()
-                    || (Utils.join(CWD, f).exists()
-                    && Utils.join(CWD, f).isFile())) {
-                if (!Utils.join(CWD, f).getName().startsWith(".")) {
-                    if (!Utils.join(CWD, f).getName().equals("Makefile")) {
-                        if (!Utils.join(CWD, f).getName().
-                                endsWith(".iml")) {
-                            if (situation(Utils.join(CWD, f)) != null) {
-                                if (situation(Utils.join(CWD, f))
-                                        .equals("deleted")) {
-                                    System.out.println(f + " (deleted)");
-                                } else if (situation((Utils.join(CWD, f)))
-                                        .equals("modified")) {
-                                    System.out.println(f + " (modified)");
-                                }
-
-                            }
-                        }
-                    }
-                }
-            }
+    /** Return "modified" or "deleted" if the working file NAME, whose
+     *  contents have SHA-1 val SHAVAL or which is missing if SHAVAL is
+     *  null, differs from its contents in STAGED, the staged files, or,
+     *  if it is neither staged nor being removed, in HEAD, the files of
+     *  the current commit.  Returns null if it does not.
+     * @param name file name
+     * @param shaVal SHA-1 val of its contents
+     * @param head files of the current commit
+     * @param staged staged files
+     * @return change, or null */
+    private static String change(String name, String shaVal,
+                                 Map<String, String> head,
+                                 Map<String, String> staged) {
+        boolean removed = _stagingArea.hasStagingTree()
+            && _stagingArea.getRemove().contains(name);
+        if (shaVal == null) {
+            return staged.containsKey(name)
+                || head.containsKey(name) && !removed ? "deleted" : null;
+        } else if (staged.containsKey(name)) {
+            return staged.get(name).equals(shaVal) ? null : "modified";
+        } else if (!removed && head.containsKey(name)
+                   && !head.get(name).equals(shaVal)) {
+            return "modified";
         }
+        return null;
     }
 
     /** Helper function for status to return if file is untracked.
@@ -571,14 +961,9 @@ public class Main {
             if (_stagingArea.allStaged()
                     || (!_stagingArea.allStaged()
                     && !_stagingArea.getStagedName().contains(fileName))) {
-                if (!fileName.startsWith(".")) {
-                    if (!fileName.endsWith(".iml")) {
-                        if (!fileName.equals("Makefile")) {
-                            if (!Utils.join(CWD, fileName).isDirectory()) {
-                                unTrack = true;
-                            }
-                        }
-                    }
+                if (!ignore().ignores(fileName, false)
+                        && !Utils.join(CWD, fileName).isDirectory()) {
+                    unTrack = true;
                 }
             }
         }
@@ -586,53 +971,6 @@ public class Main {
     }
 
 
-    /** Helper method for status, return file situation.
-     * @param f file*/
-    public static String situation(File f) {
-        if (!f.exists()) {
-            if (!_stagingArea.allStaged()) {
-                if (_stagingArea.getStaged().containsKey(f.getName())) {
-                    return "deleted";
-                }
-            }
-        }
-        if (_history.getCommit(_branch.getHead()).getBlobFiles().
-                containsKey(f.getName())) {
-            if (!f.exists()) {
-                if (!_stagingArea.hasStagingTree()
-                        || !_stagingArea.getRemove().contains(f.getName())) {
-                    return "deleted";
-                }
-            }
-        }
-        if (f.exists()) {
-            Blob blob = new Blob(f.getName());
-            if ((_stagingArea.allStaged()
-                    || (!_stagingArea.allStaged()
-                    && !_stagingArea.getStagedName().contains(f.getName())
-                    && !_stagingArea.getRemove().contains(f.getName())))) {
-                if (_history.getCommit(_branch.getHead()).
-                        getBlobFiles().containsKey(f.getName())) {
-                    if (!_history.getCommit(_branch.getHead()).
-                            getBlobFiles().get(f.getName()).
-                            equals(blob.getShaVal())) {
-                        return "modified";
-                    }
-                }
-            }
-
-            if (!_stagingArea.allStaged()) {
-                if (_stagingArea.getStaged().containsKey(f.getName())) {
-                    if (!_stagingArea.getStaged().
-                            get(f.getName()).equals(blob.getShaVal())) {
-                        return "modified";
-                    }
-                }
-            }
-        }
-        return null;
-    }
-
     /**
      * Merges files from the given branch into the current branch.
      * @param args args
@@ -647,13 +985,14 @@ public class Main {
             error("Cannot merge a branch with itself");
         } else {
             Branch branchToMerge = Branch.fromFile(name);
-            String splitPoint = determineSp(branchToMerge);
+            String splitPoint = _history.graph().lowestCommonAncestor(
+                    _branch.getHead(), branchToMerge.getHead());
             if (_branch.getHead().equals(splitPoint)) {
+                reFile(Commit.fromFile(branchToMerge.getHead()));
                 _branch.copyBranch(branchToMerge);
                 saveCurBranch();
                 _stagingArea.copyStage(Stage.fromFile(branchToMerge.getName()));
                 _stagingArea.saveStage();
-                reFile(Commit.fromFile(branchToMerge.getHead()));
                 error("Current branch fast-forwarded.");
             } else if (branchToMerge.getHead().equals(splitPoint)) {
                 error("Given branch is an "
@@ -668,129 +1007,84 @@ public class Main {
      * directory according to the COMMIT.
      */
     public static void reFile(Commit commit) throws IOException {
-        for (File file : CWD.listFiles()) {
-            if (!file.isHidden()
-                    && !file.getName().equals("Makefile")
-                    && !file.getName().endsWith(".iml")) {
-                file.delete();
+        List<String> removable = workingFiles();
+        removable.addAll(trackedInDirs(_stagingArea.getTrackedFiles()));
+        checkoutFiles(commit.getBlobFiles(), removable);
+    }
+
+    /** Update the working directory to hold FILES, a map from file name to
+     *  SHA-1 val, deleting the working files in REMOVABLE that are not in
+     *  FILES.  Files the stat cache shows to hold the right contents
+     *  already are left alone; the rest are written on a pool of worker
+     *  threads.  If any write fails, no file is changed.
+     * @param files file names and SHA-1 vals to check out
+     * @param removable working files that may be deleted */
+    private static void checkoutFiles(HashMap<String, String> files,
+                                      List<String> removable)
+            throws IOException {
+        Checkout checkout = new Checkout(CWD, REPO, statIndex());
+        for (String name : removable) {
+            if (!files.containsKey(name)) {
+                checkout.delete(name);
             }
         }
-        for (String fileName : commit.getBlobFiles().keySet()) {
-            Utils.join(CWD, fileName).createNewFile();
-            Utils.writeContents(Utils.join(CWD, fileName),
-                    Blob.fromFile(commit.getBlobFiles().get(fileName)));
+        for (Map.Entry<String, String> e : files.entrySet()) {
+            if (!e.getValue().equals(statIndex().cleanShaOf(e.getKey()))) {
+                checkout.write(e.getKey(), e.getValue());
+            }
         }
+        checkout.run();
     }
 
-    /** Help method for merge. Find the split point with
-     * this branch and the branch to be merged
-     * @param branchToMerge branch
-     * @return  The sha1 code of split point commit.
-     */
-    public static String determineSp(Branch branchToMerge) {
-        String splitPoint = _branch.getCommits().getFirst();
-        int minDistance = Integer.MAX_VALUE;
-        int index = 1;
-        while (index < Math.min(_branch.getCommitSize(),
-                branchToMerge.getCommitSize())) {
-            if (branchToMerge.getCommit(index).
-                    equals(_branch.getCommit(index))) {
-                splitPoint =  _branch.getCommit(index);
-            } else {
-                int currentCommitDistance, mergeCommitDistance;
-                if (Commit.fromFile(branchToMerge.getHead()).isAncestor(
-                        _branch.getCommit(index))) {
-                    currentCommitDistance = distance(_branch.
-                            getCommit(index), _branch.getHead(), branchToMerge);
-                    if (currentCommitDistance < minDistance) {
-                        splitPoint = _branch.getCommit(index);
-                        minDistance = currentCommitDistance;
-                    }
-                }
-                if (Commit.fromFile(_branch.getHead()).isAncestor(
-                        branchToMerge.getCommit(index))) {
-                    mergeCommitDistance = distance(branchToMerge.
-                            getCommit(index), _branch.getHead(), branchToMerge);
-                    if (mergeCommitDistance < minDistance) {
-                        splitPoint = branchToMerge
-                                .getCommit(index);
-                        minDistance = mergeCommitDistance;
-                    }
-                }
+    /** Return the names of the plain files in the working directory,
+     *  leaving out those that are ignored.
+     * @return working file names */
+    private static List<String> workingFiles() {
+        ArrayList<String> result = new ArrayList<>();
+        for (File file : CWD.listFiles()) {
+            if (file.isFile() && !ignore().matches(file.getName(), false)) {
+                result.add(file.getName());
             }
-            index++;
         }
-        return splitPoint;
+        return result;
     }
 
-    /** Help method for merge to find distance from file to file.
-     * @param branchToMerge b
-     * @param from from
-     * @param to to
-     * @return  int */
-    public static int distance(String from, String to, Branch branchToMerge) {
-        if (_branch.hasCommit(to)) {
-            if (_branch.hasCommit(from)) {
-                if (_branch.getCommits().indexOf(to)
-                        < _branch.getCommits().
-                        indexOf(from)) {
-                    return _branch.getCommitSize()
-                            + branchToMerge.getCommitSize();
-                } else {
-                    return _branch.getCommits().indexOf(to)
-                            - _branch.getCommits().indexOf(from);
-                }
-            } else  {
-                if (Commit.fromFile(to).getParentsParent() != null) {
-                    return 1 + distance(from,
-                            Commit.fromFile(to).getParentsParent().
-                                    getCommitShaVal(), branchToMerge);
-                } else {
-                    return 1 + distance(from,
-                            Commit.fromFile(to).getParent().
-                                    getCommitShaVal(), branchToMerge);
-                }
-            }
-        } else  {
-            if (branchToMerge.hasCommit(from)) {
-                if (branchToMerge.getCommits().
-                        indexOf(to) < branchToMerge.
-                        getCommits().indexOf(from)) {
-                    return _branch.getCommitSize()
-                            + branchToMerge.getCommitSize();
-                } else {
-                    return branchToMerge.getCommits().indexOf(to)
-                            - branchToMerge.getCommits().indexOf(from);
-                }
-            } else  {
-                if (Commit.fromFile(to).getParentsParent() != null) {
-                    return 1 + distance(from,
-                            Commit.fromFile(to).getParentsParent().
-                                    getCommitShaVal(), branchToMerge);
-                } else {
-                    return 1 + distance(from,
-                            Commit.fromFile(to).getParent().
-                                    getCommitShaVal(), branchToMerge);
+    /** Return the paths of the working files in subdirectories that are
+     *  among the TRACKED files.
+     * @param tracked file names and SHA-1 vals of tracked files
+     * @return tracked working file paths in subdirectories */
+    private static List<String> trackedInDirs(Map<String, String> tracked) {
+        ArrayList<String> result = new ArrayList<>();
+        if (tracked != null) {
+            for (String name : tracked.keySet()) {
+                if (name.indexOf('/') >= 0 && Utils.join(CWD, name).isFile()) {
+                    result.add(name);
                 }
             }
         }
+        return result;
     }
-    /** Help method for merge.
+
+    /** Help method for merge.  Only files whose blobs differ between
+     *  the split point and the given branch can need merging, so only
+     *  those are looked at; directories that are the same in both are
+     *  skipped whole.
      * @param gb given branch
      * @param sp splitting point
      * @return Conflict situation.*/
     public static boolean completeMerge(String gb,
                                         String sp) throws IOException {
         Branch branchToMerge = Branch.fromFile(gb);
+        Commit mergeCommit = Commit.fromFile(branchToMerge.getHead());
+        Commit splitPoint = Commit.fromFile(sp);
+        Set<String> allFileName
+                = Tree.changedPaths(splitPoint, mergeCommit);
         HashMap<String, String> mergeFileMap
-                = Commit.fromFile(branchToMerge.getHead()).getBlobFiles();
+                = Tree.lookup(mergeCommit, allFileName);
         HashMap<String, String> splitPointFileMap
-                = Commit.fromFile(sp).getBlobFiles();
-        HashMap<String, String> currentFileMap
-                = Commit.fromFile(_branch.getHead()).getBlobFiles();
-        HashSet<String> allFileName = new HashSet<>(mergeFileMap.keySet());
-        allFileName.addAll(splitPointFileMap.keySet());
-        allFileName.addAll(currentFileMap.keySet());
+                = Tree.lookup(splitPoint, allFileName);
+        HashMap<String, String> currentFileMap = Tree.lookup(
+                Commit.fromFile(_branch.getHead()), allFileName);
         boolean conflict = false;
         for (String fileName : allFileName) {
             if (!splitPointFileMap.containsKey(fileName)) {
@@ -798,7 +1092,7 @@ public class Main {
                         && mergeFileMap.containsKey(fileName)) {
                     checkout(new String[]{"checkout",
                             branchToMerge.getHead(), "--", fileName});
-                    _stagingArea.addBlob(new Blob(fileName));
+                    _stagingArea.addBlob(statIndex().store(fileName));
                 }
                 if (currentFileMap.containsKey(fileName)
                         && mergeFileMap.containsKey(fileName)
@@ -821,15 +1115,8 @@ public class Main {
         _stagingArea.commit();
         Commit tracked = new Commit(_stagingArea.
                 getTree(), "Merged " + gb.replace("-", "/")
-                + " into " + _branch.getName().replace("-", "/") + ".");
-        tracked.merge();
-        tracked.setParent(Commit.fromFile(_branch.getHead()));
-        tracked.setParentsParent(Commit.fromFile(branchToMerge.getHead()));
-        tracked.addAncestors(_branch.getCommits());
-        tracked.addAncestor(Commit.fromFile
-                (branchToMerge.getHead()).getCommitShaVal());
-        tracked.addAncestors(Commit.fromFile
-                (branchToMerge.getHead()).getAncestors());
+                + " into " + _branch.getName().replace("-", "/") + ".",
+                _branch.getHead(), branchToMerge.getHead());
         _history.addCommit(tracked);
         _branch.addCommit(tracked.getCommitShaVal()); _stagingArea.clear();
         helper(tracked);
@@ -841,14 +1128,14 @@ public class Main {
         for (File file : CWD.listFiles()) {
             if (tracked.getBlobFiles() != null && !tracked.
                     getBlobFiles().containsKey(file.getName())
-                    && !file.isHidden() && !file.isDirectory()
-                    && !file.getName().equals("Makefile")
-                    && !file.getName().endsWith(".iml")) {
+                    && !file.isDirectory()
+                    && !ignore().matches(file.getName(), false)) {
                 file.delete();
             }
         }
     }
-    /** Help method for merge.
+    /** Help method for merge.  A file changed on both sides is merged
+     * line by line, and only the lines changed on both are in conflict.
      * @param currentFileMap c
      * @param mergeFileMap m
      * @param fileName f
@@ -868,10 +1155,8 @@ public class Main {
                 equals(mergeFileMap.get(fileName))
                 && splitPointFileMap.get(fileName).
                 equals(currentFileMap.get(fileName))) {
-            Utils.writeContents(Utils.join(CWD,
-                    fileName), Blob.fromFile(
-                    mergeFileMap.get(fileName)));
-            _stagingArea.addBlob(new Blob(fileName));
+            checkoutFile(mergeFileMap.get(fileName), fileName);
+            _stagingArea.addBlob(statIndex().store(fileName));
         } else if (!mergeFileMap.containsKey(fileName)
                 && currentFileMap.containsKey(fileName)
                 && splitPointFileMap.get(fileName).
@@ -893,6 +1178,15 @@ public class Main {
                 && !mergeFileMap.containsKey(fileName)
                 && !currentFileMap.get(fileName).
                 equals(splitPointFileMap.get(fileName)))) {
+            if (currentFileMap.containsKey(fileName)
+                    && mergeFileMap.containsKey(fileName)) {
+                boolean clash = LineMerge.merge(
+                        splitPointFileMap.get(fileName),
+                        currentFileMap.get(fileName),
+                        mergeFileMap.get(fileName), Utils.join(CWD, fileName));
+                _stagingArea.addBlob(statIndex().store(fileName));
+                return clash || conflict;
+            }
             String current = currentFileMap.containsKey(fileName)
                     ? System.lineSeparator()
                     + Blob.fromFile(currentFileMap.get(fileName))
@@ -906,7 +1200,7 @@ public class Main {
                     + merge + ">>>>>>>";
             Utils.join(CWD, fileName).createNewFile();
             Utils.writeContents(Utils.join(CWD, fileName), content);
-            _stagingArea.addBlob(new Blob(fileName));
+            _stagingArea.addBlob(statIndex().store(fileName));
             return true;
         }
         return conflict;
@@ -935,18 +1229,21 @@ public class Main {
         if (!Arrays.asList(REMOTE.list()).contains(args[1])) {
             error("A remote with that name does not exist.");
         } else {
-            Utils.join(REMOTE, args[1]).delete();
-            Utils.join(HISTORY, args[1]).delete();
+            Journal.local().delete(Utils.join(REMOTE, args[1]));
+            Journal.local().delete(Utils.join(HISTORY, args[1]));
             for (File file : STAGE.listFiles()) {
                 if (file.getName().contains(args[1] + "-")) {
-                    file.delete();
+                    Journal.local().delete(file);
                 }
             }
         }
     }
 
     /**
-     * push for remote.
+     * push for remote.  The remote repository is locked alone until the
+     * command ends, and its branch and history are written by its own
+     * journal before its message index is brought up to date from its
+     * own objects.
      * @param args args
      */
 
@@ -955,97 +1252,194 @@ public class Main {
         if (!remote.getRepo().exists()) {
             error("Remote directory not found.");
         } else {
-            HashMap<String, String> fileMap = new HashMap<>();
+            lockRemote(remote, false);
+            remote.store().upgrade();
             Commit pushCommit = Commit.fromFile(_branch.getHead());
             History history = remote.historyFromFile();
             Branch branch;
-            for (String name : pushCommit.
-                    getBlobFiles().keySet()) {
-                fileMap.put(name, Blob.fromFile(pushCommit.
-                        getBlobFiles().get(name)));
-            }
+            HashMap<String, String> previous = new HashMap<>();
             if (!Utils.join(remote.getBranch(), args[2]).exists()) {
                 branch = new Branch(args[2], _branch.getHead());
-                Utils.join(remote.getBranch(), args[2]).createNewFile();
             } else {
                 branch = remote.branchFromFile(args[2]);
-                if (_history.getCommit(branch.getHead()) == null) {
+                if (!ObjectStore.local().contains(branch.getHead())
+                        || !_history.graph().isAncestor(branch.getHead(),
+                                _branch.getHead())) {
                     error("Please pull "
                             + "down remote changes before pushing.");
                 }
+                previous = Commit.fromFile(branch.getHead()).getBlobFiles();
             }
             branch.addCommit(pushCommit.getCommitShaVal());
-            Utils.join(remote.getObject(), pushCommit.
-                    getCommitShaVal()).createNewFile();
-            Utils.writeObject(Utils.join(remote.getObject(),
-                    pushCommit.getCommitShaVal()), pushCommit);
-            remote.reset(fileMap);
-            history.addCommit(pushCommit);
-            Utils.writeObject(Utils.join(remote.
-                    getBranch(), args[2]), branch);
-            Utils.writeObject(Utils.join(remote.getHistory(),
-                    "current"), history);
+            Transfer transfer = new Transfer(ObjectStore.local(),
+                    remote.store());
+            transfer.want(pushCommit.getCommitShaVal());
+            transfer.send();
+            remote.reset(pushCommit.getBlobFiles(), previous);
+            for (String id : transfer.commits()) {
+                history.addId(id);
+            }
+            branch.saveBranch(Utils.join(remote.getBranch(), args[2]),
+                              remote.journal());
+            history.saveHistory();
+            remote.journal().commit();
+            MessageIndex.of(remote).update();
         }
     }
 
     /**
-     * fetch repo.
+     * fetch repo.  The remote repository is locked, shared, until the
+     * command ends, as by lockRemote; it is locked alone if its history
+     * index is in the old format, which its journal then rewrites.
      * @param args args
      */
     public static void fetch(String[] args) throws IOException {
         Remote remote = Remote.fromFile(args[1]);
         if (!remote.getRepo().exists()) {
             error("Remote directory not found.");
-        } else if (!Utils.join(remote.getBranch(), args[2]).exists()) {
+        }
+        lockRemote(remote, !History.isLegacy(
+                Utils.join(remote.getHistory(), "current")));
+        if (!Utils.join(remote.getBranch(), args[2]).exists()) {
             error("That remote does not have that branch.");
         } else {
             Branch branch = remote.branchFromFile(args[2]);
             branch.changeName(args[1] + "-" + args[2]);
             branch.saveBranch();
-            Commit commit = remote.commitFromFile(branch.getHead());
-            fetchHelper(commit, remote);
+            Transfer transfer = new Transfer(remote.store(),
+                    ObjectStore.local());
+            transfer.want(branch.getHead());
+            transfer.send();
+            _history.graph().add(Commit.fromFile(branch.getHead()));
             Stage stage = remote.stageFromFile(args[2]);
-            Utils.join(STAGE, args[1]
-                    + "-" + args[2]).createNewFile();
-            Utils.writeObject(Utils.join(STAGE,
-                    args[1] + "-" + args[2]), stage);
+            Journal.local().write(Utils.join(STAGE,
+                    args[1] + "-" + args[2]), stage.encode());
             History history = remote.historyFromFile();
             history.saveHistory(args[1]);
+            remote.journal().commit();
         }
     }
 
-    /** Help method for fetch. Save COMMIT in cwd.
-     * @param commit commit
-     * @param remote remote*/
-    public static void fetchHelper(Commit commit, Remote remote)
+    /** Lock the repository of REMOTE until the command ends, shared if
+     *  SHARED, unless updates left in its journal by a command killed
+     *  while changing it must be made first.  Those are made once it is
+     *  locked alone. */
+    private static void lockRemote(Remote remote, boolean shared)
             throws IOException {
-        Utils.writeObject(Utils.join(OBJECT,
-                commit.getCommitShaVal()), commit);
-        Utils.writeObject(Utils.join(OBJECT,
-                commit.getTree().getTreeShaVal()), commit.getTree());
-        for (String fileName : commit.getTree().getTracked().keySet()) {
-            String sha1 = commit.getTree().getTracked().get(fileName);
-            String content = remote.blobFromFile(sha1);
-            Utils.join(OBJECT, sha1).createNewFile();
-            Utils.writeContents(Utils.join(OBJECT, sha1), content);
+        shared = shared && !remote.journal().pending();
+        _lock.include(remote.getRepo(), shared);
+        if (!shared) {
+            remote.journal().recover();
         }
     }
 
     /**
-     * pull repo.
+     * pull repo.  What was fetched is written before merging, which reads
+     * it back.
      * @param args input
      */
     public static void pull(String[] args) throws IOException {
         fetch(new String[]{"fetch", args[1], args[2]});
+        Journal.local().commit();
         merge(new String[]{"merge", args[1] + "/" + args[2]});
     }
 
+    /** Rewrite every commit still in the old format, which embedded its
+     *  whole ancestry, as a compact commit referring to its parents and
+     *  tree by SHA-1 val, and every other commit still serialized in the
+     *  binary format of Codec, and rebuild old-format history indices.
+     *  Remotes are rewritten in that format too. */
+    public static void migrate() throws IOException {
+        int count = 0;
+        for (String name : ObjectStore.local().names()) {
+            if (!Commit.isCommit(name)) {
+                continue;
+            }
+            Commit c = Commit.fromFile(name);
+            if (c.isLegacy()) {
+                c.getTree().saveTree();
+            }
+            if (c.isLegacy() || c.isSerialized()) {
+                c.saveCommit();
+                count++;
+            }
+        }
+        for (String name : Utils.plainFilenamesIn(HISTORY)) {
+            new History(Utils.join(HISTORY, name)).ids();
+        }
+        for (String name : Utils.plainFilenamesIn(REMOTE)) {
+            Remote.fromFile(name).saveRemote();
+        }
+        System.out.println("Migrated " + count + " commits.");
+    }
+
+    /** Move all objects into a single packfile, storing each blob as a
+     *  delta against a similar one where that saves space. */
+    public static void repack() throws IOException {
+        LinkedHashMap<String, String> nameHints = new LinkedHashMap<>();
+        for (String name : Utils.plainFilenamesIn(HISTORY)) {
+            History history = new History(Utils.join(HISTORY, name));
+            ArrayList<String> ids = new ArrayList<>(history.ids());
+            Collections.reverse(ids);
+            for (String id : ids) {
+                Commit c = history.getCommit(id);
+                if (c == null
+                    || nameHints.putIfAbsent(c.getTreeShaVal(), "") != null) {
+                    continue;
+                }
+                for (Map.Entry<String, String> e
+                         : c.getBlobFiles().entrySet()) {
+                    nameHints.putIfAbsent(e.getValue(), e.getKey());
+                }
+            }
+        }
+        PackWriter writer = new PackWriter(ObjectStore.local(), nameHints);
+        int count = writer.repack();
+        System.out.println("Packed " + count + " objects ("
+                + writer.deltas() + " as deltas).");
+    }
+
+    /** Delete the objects no branch or staging area can reach, and drop
+     *  the commits among them from the history indices and commit graph.
+     *  These are rewritten first, so that a command killed part way never
+     *  leaves them listing a deleted commit.  With PACKS, packs holding such
+     *  objects are rewritten without them (gc); otherwise only loose
+     *  objects are deleted (prune). */
+    public static void gc(boolean packs) throws IOException {
+        GarbageCollector collector =
+            new GarbageCollector(ObjectStore.local());
+        collector.mark();
+        collector.pruneHistories();
+        Journal.local().commit();
+        _history = History.fromFile(_branch.getName());
+        int count = collector.pruneLoose();
+        if (packs) {
+            count += collector.prunePacks();
+        }
+        ObjectCache.shared().clear();
+        System.out.println("Removed " + count + " unreachable objects.");
+    }
+
     /** The stage area of CWD. */
     private static Stage _stagingArea;
     /** The commit history of CWD. */
     private static History _history = new History();
+    /** Options of find choosing how the message is matched. */
+    private static final String[] FIND_MODES =
+        { MessageIndex.EXACT, MessageIndex.WORD, MessageIndex.PREFIX };
     /** Current branch. */
     private static Branch _branch;
+    /** Stat cache of CWD, or null until first needed. */
+    private static StatIndex _statIndex;
+    /** Ignore rules of CWD, or null until first needed. */
+    private static Ignore _ignore;
+    /** Name of the branch whose stage and history are loaded, or null. */
+    private static String _loadedFor;
+    /** Lock on the repository held by the running command, or null. */
+    private static RepoLock _lock;
+    /** Commands that only read the repository. */
+    private static final Set<String> READ_ONLY = new HashSet<>(
+        Arrays.asList("log", "global-log", "find", "status", "diff"));
 }
 
 
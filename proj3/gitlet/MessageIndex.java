@@ -0,0 +1,650 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/** An index of the commits in the local history, for find and global-log.
+ *  Each commit has a one-line record, in the order of the history, in an
+ *  append-only records file; records are added by update() from the part
+ *  of the history file not yet indexed, so the index never has to be
+ *  told about a commit.  The records file starts with a fixed-size header
+ *  giving the number of bytes of the history file and of the records
+ *  file that are complete.
+ *
+ *  A second file maps each word of the commit messages, in lower case,
+ *  to the offsets of the records of the commits using it.  It is sorted
+ *  and read with binary search, so a query touches only the words it
+ *  asks about.  It covers the records file up to some offset; the
+ *  records after that are scanned, and once they are more than an
+ *  eighth of the rest, the word file is rebuilt.  The word file also
+ *  maps the key "#SHA" to the record of commit SHA, which keeps each
+ *  commit recorded once even when the history repeats it.
+ *  @author Aayush Sutaria
+ */
+class MessageIndex {
+
+    /** An index of HISTORY kept in the files RECORDS and WORDS, whose
+     *  commits are in STORE and whose updates are made by JOURNAL, or
+     *  those of the local repository if they are null. */
+    MessageIndex(File history, File records, File words, ObjectStore store,
+                 Journal journal) {
+        _history = history;
+        _records = records;
+        _words = words;
+        _store = store;
+        _journal = journal;
+    }
+
+    /** Return the index of the local history. */
+    static MessageIndex local() {
+        return new MessageIndex(Utils.join(Main.HISTORY, "current"),
+                                Utils.join(Main.REPO, "messages"),
+                                Utils.join(Main.REPO, "message-words"),
+                                null, null);
+    }
+
+    /** Return the index of the history of REMOTE, built from its own
+     *  objects. */
+    static MessageIndex of(Remote remote) {
+        return new MessageIndex(Utils.join(remote.getHistory(), "current"),
+                                Utils.join(remote.getRepo(), "messages"),
+                                Utils.join(remote.getRepo(), "message-words"),
+                                remote.store(), remote.journal());
+    }
+
+    /** A commit as recorded in the index. */
+    static class Record {
+        /** A record of commit SHAVAL, with parents PARENT and SECOND ("" if
+         *  none), time stamp TIMESTAMP and message MSG. */
+        Record(String shaVal, String parent, String second,
+               String timeStamp, String msg) {
+            this.shaVal = shaVal;
+            this.parent = parent;
+            this.second = second;
+            this.timeStamp = timeStamp;
+            this.msg = msg;
+        }
+
+        /** SHA-1 val of the commit. */
+        final String shaVal;
+        /** SHA-1 vals of its parents, or "". */
+        final String parent, second;
+        /** Its time stamp. */
+        final String timeStamp;
+        /** Its message. */
+        final String msg;
+    }
+
+    /** Add records for the commits in the history file not yet indexed,
+     *  rebuilding the word file if enough were added since it was last
+     *  built. */
+    void update() throws IOException {
+        long[] head = readHeader();
+        if (head == null || !_history.exists()
+            || _history.length() < head[0] || History.isLegacy(_history)) {
+            head = new long[] { 0, HEADER_BYTES };
+            Files.deleteIfExists(_words.toPath());
+            writeHeader(head);
+        }
+        if (_records.length() > head[1]) {
+            try (RandomAccessFile f = new RandomAccessFile(_records, "rw")) {
+                f.setLength(head[1]);
+            }
+        }
+        if (head[0] == 0 && History.isLegacy(_history)) {
+            History history = new History(_history, _store, _journal);
+            history.ids();
+            history.journal().commit();
+        }
+        long length = _history.exists() ? _history.length() : 0;
+        open(head[1]);
+        if (length > head[0]) {
+            append(head, length);
+        }
+        if (staleWords(head)) {
+            rebuild(head[1]);
+        }
+    }
+
+    /** Return true iff the index covers the whole history and update()
+     *  would write nothing. */
+    boolean isCurrent() throws IOException {
+        long[] head = readHeader();
+        if (head == null || !_history.exists()
+            || _history.length() != head[0] || _records.length() != head[1]) {
+            return false;
+        }
+        open(head[1]);
+        return !staleWords(head);
+    }
+
+    /** Return true iff so many records after HEAD, the header of the
+     *  records file, are not in the word file that it should be
+     *  rebuilt. */
+    private boolean staleWords(long[] head) {
+        return head[1] - _covered
+            > Math.max(MIN_REBUILD, (_covered - HEADER_BYTES) / REBUILD);
+    }
+
+    /** Return the store of the commits indexed. */
+    private ObjectStore store() {
+        return _store == null ? ObjectStore.local() : _store;
+    }
+
+    /** Add records for the commits in the history file from offset
+     *  HEAD[0] to the last newline before offset LENGTH, advancing HEAD,
+     *  the header of the records file. */
+    private void append(long[] head, long length) throws IOException {
+        byte[] tail = new byte[(int) (length - head[0])];
+        try (RandomAccessFile in = new RandomAccessFile(_history, "r")) {
+            in.seek(head[0]);
+            in.readFully(tail);
+        }
+        int end = 0;
+        for (int i = tail.length - 1; i >= 0; i -= 1) {
+            if (tail[i] == '\n') {
+                end = i + 1;
+                break;
+            }
+        }
+        HashSet<String> added = new HashSet<>();
+        for (Record r : scan(_covered, head[1])) {
+            added.add(r.shaVal);
+        }
+        ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        for (String shaVal : new String(tail, 0, end, StandardCharsets.UTF_8)
+                 .split("\n")) {
+            if (shaVal.isEmpty() || !added.add(shaVal)
+                || postings(KEY + shaVal).length > 0
+                || !store().contains(shaVal)) {
+                continue;
+            }
+            Commit c = _store == null ? Commit.fromFile(shaVal)
+                : Commit.fromStore(_store, shaVal);
+            lines.write(format(c).getBytes(StandardCharsets.UTF_8));
+        }
+        Files.write(_records.toPath(), lines.toByteArray(),
+                    StandardOpenOption.APPEND);
+        head[0] += end;
+        head[1] += lines.size();
+        writeHeader(head);
+    }
+
+    /** Call VISITOR on the record of each commit, in history order,
+     *  until it returns false. */
+    void forEach(Visitor visitor) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(
+                 _records.toPath(), StandardCharsets.UTF_8)) {
+            in.readLine();
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                if (!visitor.visit(parse(line))) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /** Something done with each record in turn. */
+    interface Visitor {
+        /** Handle R, returning false if no more records are wanted. */
+        boolean visit(Record r) throws IOException;
+    }
+
+    /** Return the commits whose message is MSG. */
+    List<Record> exact(String msg) throws IOException {
+        Set<String> words = words(msg);
+        return select(words.isEmpty() ? null : all(words),
+                      r -> matches(EXACT, msg, r.msg));
+    }
+
+    /** Return the commits whose message has the word WORD, in any case,
+     *  or every word of WORD if it has several. */
+    List<Record> word(String word) throws IOException {
+        Set<String> words = words(word);
+        if (words.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return select(all(words), r -> matches(WORD, word, r.msg));
+    }
+
+    /** Return the commits whose message has a word starting with PREFIX,
+     *  in any case. */
+    List<Record> prefix(String prefix) throws IOException {
+        String p = prefix.toLowerCase(Locale.ROOT);
+        if (p.isEmpty() || !isWord(p)) {
+            return new ArrayList<>();
+        }
+        open(readHeader()[1]);
+        ArrayList<Long> offsets = new ArrayList<>();
+        for (int k = lowerBound(p); k < _count && word(k).startsWith(p);
+             k += 1) {
+            for (long offset : postings(k)) {
+                offsets.add(offset);
+            }
+        }
+        long[] candidates = new long[offsets.size()];
+        for (int i = 0; i < candidates.length; i += 1) {
+            candidates[i] = offsets.get(i);
+        }
+        Arrays.sort(candidates);
+        return select(candidates, r -> matches(PREFIX, prefix, r.msg));
+    }
+
+    /** Return the commits whose message contains TEXT.  Any word of TEXT
+     *  with a non-word character on both sides must be a whole word of
+     *  such a message, so only the commits using all those words are
+     *  looked at. */
+    List<Record> containing(String text) throws IOException {
+        Set<String> inner = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i < text.length(); i += 1) {
+            boolean letter = Character.isLetterOrDigit(text.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                if (start > 0) {
+                    inner.add(text.substring(start, i)
+                              .toLowerCase(Locale.ROOT));
+                }
+                start = -1;
+            }
+        }
+        return select(inner.isEmpty() ? null : all(inner),
+                      r -> r.msg.contains(text));
+    }
+
+    /** Return the records that pass TEST among those at the sorted
+     *  offsets CANDIDATES in the word file, or among all it covers if
+     *  CANDIDATES is null, followed by those after it that pass. */
+    private List<Record> select(long[] candidates, Predicate<Record> test)
+            throws IOException {
+        long end = readHeader()[1];
+        open(end);
+        List<Record> result = new ArrayList<>();
+        if (candidates == null) {
+            _covered = HEADER_BYTES;
+        } else {
+            MappedByteBuffer records = map(_records, end);
+            for (long offset : candidates) {
+                Record r = parse(line(records, offset));
+                if (test.test(r)) {
+                    result.add(r);
+                }
+            }
+        }
+        for (Record r : scan(_covered, end)) {
+            if (test.test(r)) {
+                result.add(r);
+            }
+        }
+        return result;
+    }
+
+    /** Return the sorted offsets of the records using every word in
+     *  WORDS. */
+    private long[] all(Set<String> words) throws IOException {
+        open(readHeader()[1]);
+        long[] result = null;
+        for (String w : words) {
+            long[] next = postings(w);
+            if (result == null) {
+                result = next;
+            } else {
+                int n = 0;
+                for (int i = 0, j = 0; i < result.length && j < next.length;) {
+                    if (result[i] < next[j]) {
+                        i += 1;
+                    } else if (result[i] > next[j]) {
+                        j += 1;
+                    } else {
+                        result[n] = result[i];
+                        n += 1;
+                        i += 1;
+                        j += 1;
+                    }
+                }
+                result = Arrays.copyOf(result, n);
+            }
+        }
+        return result;
+    }
+
+    /** Return the records from offset FROM to offset TO of the records
+     *  file. */
+    private List<Record> scan(long from, long to) throws IOException {
+        List<Record> result = new ArrayList<>();
+        if (to <= from) {
+            return result;
+        }
+        byte[] bytes = new byte[(int) (to - from)];
+        try (RandomAccessFile in = new RandomAccessFile(_records, "r")) {
+            in.seek(from);
+            in.readFully(bytes);
+        }
+        for (String line : new String(bytes, StandardCharsets.UTF_8)
+                 .split("\n")) {
+            result.add(parse(line));
+        }
+        return result;
+    }
+
+    /** Rewrite the word file to cover the records file up to offset
+     *  END. */
+    private void rebuild(long end) throws IOException {
+        TreeMap<String, List<Long>> postings = new TreeMap<>();
+        long offset = HEADER_BYTES;
+        for (Record r : scan(HEADER_BYTES, end)) {
+            Set<String> words = words(r.msg);
+            words.add(KEY + r.shaVal);
+            for (String w : words) {
+                postings.computeIfAbsent(w, k -> new ArrayList<>())
+                    .add(offset);
+            }
+            offset += format(r).getBytes(StandardCharsets.UTF_8).length;
+        }
+        ByteArrayOutputStream names = new ByteArrayOutputStream();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeLong(end);
+        out.writeInt(postings.size());
+        int post = 0;
+        for (String w : postings.keySet()) {
+            out.writeInt(names.size());
+            out.writeInt(post);
+            names.write(w.getBytes(StandardCharsets.UTF_8));
+            post += postings.get(w).size();
+        }
+        out.writeInt(names.size());
+        out.writeInt(post);
+        names.writeTo(out);
+        for (List<Long> list : postings.values()) {
+            for (long o : list) {
+                out.writeLong(o);
+            }
+        }
+        out.close();
+        File temp = new File(_words.getPath() + ".tmp");
+        Files.write(temp.toPath(), bytes.toByteArray());
+        Files.move(temp.toPath(), _words.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        _map = null;
+    }
+
+    /** Map the word file, if it is valid for a records file whose
+     *  complete records end at offset END, setting _covered to the end of
+     *  the records it covers. */
+    private void open(long end) {
+        if (_map != null) {
+            return;
+        }
+        _covered = HEADER_BYTES;
+        _count = 0;
+        if (!_words.exists() || _words.length() < WORDS_HEADER) {
+            return;
+        }
+        MappedByteBuffer map = map(_words, _words.length());
+        if (map.getInt(0) != MAGIC || map.getLong(4) > end) {
+            return;
+        }
+        _map = map;
+        _covered = map.getLong(4);
+        _count = map.getInt(12);
+        _names = WORDS_HEADER + (_count + 1) * ENTRY_BYTES;
+        _postings = _names + map.getInt(WORDS_HEADER + _count * ENTRY_BYTES);
+    }
+
+    /** Return the K-th word of the word file. */
+    private String word(int k) {
+        int from = _map.getInt(WORDS_HEADER + k * ENTRY_BYTES),
+            to = _map.getInt(WORDS_HEADER + (k + 1) * ENTRY_BYTES);
+        byte[] name = new byte[to - from];
+        _map.get(_names + from, name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /** Return the index of the first word of the word file not less than
+     *  W. */
+    private int lowerBound(String w) {
+        int lo = 0, hi = _count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (word(mid).compareTo(w) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Return the offsets of the records using the word W, from the word
+     *  file. */
+    private long[] postings(String w) {
+        int k = lowerBound(w);
+        if (k < _count && word(k).equals(w)) {
+            return postings(k);
+        }
+        return new long[0];
+    }
+
+    /** Return the offsets of the records using the K-th word. */
+    private long[] postings(int k) {
+        int from = _map.getInt(WORDS_HEADER + k * ENTRY_BYTES + 4),
+            to = _map.getInt(WORDS_HEADER + (k + 1) * ENTRY_BYTES + 4);
+        long[] result = new long[to - from];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = _map.getLong(_postings + (from + i) * 8);
+        }
+        return result;
+    }
+
+    /** Return the header of the records file, or null if it has none. */
+    private long[] readHeader() throws IOException {
+        if (!_records.exists() || _records.length() < HEADER_BYTES) {
+            return null;
+        }
+        byte[] header = new byte[HEADER_BYTES];
+        try (RandomAccessFile in = new RandomAccessFile(_records, "r")) {
+            in.readFully(header);
+        }
+        String[] fields = new String(header, StandardCharsets.UTF_8)
+            .trim().split(" ");
+        try {
+            return new long[] { Long.parseLong(fields[0]),
+                                Long.parseLong(fields[1]) };
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /** Write HEAD, the bytes of the history and records files indexed,
+     *  as the header of the records file. */
+    private void writeHeader(long[] head) throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(_records, "rw")) {
+            out.write(String.format("%020d %020d\n", head[0], head[1])
+                      .getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /** Return the record line of commit C. */
+    private static String format(Commit c) {
+        return format(new Record(c.getCommitShaVal(),
+                                 nonNull(c.getParentShaVal()),
+                                 nonNull(c.getSecondParentShaVal()),
+                                 c.getTimeStamp(), c.getMsg()));
+    }
+
+    /** Return the line recording R. */
+    private static String format(Record r) {
+        return r.shaVal + "\t" + r.parent + "\t" + r.second + "\t"
+            + r.timeStamp + "\t" + escape(r.msg) + "\n";
+    }
+
+    /** Return the record in LINE. */
+    private static Record parse(String line) {
+        String[] f = line.split("\t", FIELDS);
+        return new Record(f[0], f[1], f[2], f[3], unescape(f[4]));
+    }
+
+    /** Return the line starting at OFFSET in RECORDS, without its
+     *  newline. */
+    private static String line(ByteBuffer records, long offset) {
+        int start = (int) offset, end = start;
+        while (records.get(end) != '\n') {
+            end += 1;
+        }
+        byte[] line = new byte[end - start];
+        records.get(start, line);
+        return new String(line, StandardCharsets.UTF_8);
+    }
+
+    /** Return true iff the message MSG matches QUERY in the find mode
+     *  MODE: EXACT, WORD or PREFIX. */
+    static boolean matches(String mode, String query, String msg) {
+        switch (mode) {
+        case EXACT:
+            return msg.equals(query);
+        case WORD:
+            Set<String> words = words(query);
+            return !words.isEmpty() && words(msg).containsAll(words);
+        default:
+            String p = query.toLowerCase(Locale.ROOT);
+            if (p.isEmpty() || !isWord(p)) {
+                return false;
+            }
+            for (String w : words(msg)) {
+                if (w.startsWith(p)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /** Return the distinct words of TEXT, in lower case. */
+    static Set<String> words(String text) {
+        Set<String> result = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i += 1) {
+            boolean letter = i < text.length()
+                && Character.isLetterOrDigit(text.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                result.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return result;
+    }
+
+    /** Return true iff TEXT is all letters and digits. */
+    private static boolean isWord(String text) {
+        for (int i = 0; i < text.length(); i += 1) {
+            if (!Character.isLetterOrDigit(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return MSG with backslashes, tabs and line breaks escaped. */
+    private static String escape(String msg) {
+        return msg.replace("\\", "\\\\").replace("\t", "\\t")
+            .replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    /** Return the message escaped as MSG. */
+    private static String unescape(String msg) {
+        if (msg.indexOf('\\') < 0) {
+            return msg;
+        }
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < msg.length(); i += 1) {
+            char c = msg.charAt(i);
+            if (c == '\\' && i + 1 < msg.length()) {
+                i += 1;
+                c = msg.charAt(i);
+                c = c == 't' ? '\t' : c == 'n' ? '\n' : c == 'r' ? '\r' : c;
+            }
+            result.append(c);
+        }
+        return result.toString();
+    }
+
+    /** Return S, or "" if S is null. */
+    private static String nonNull(String s) {
+        return s == null ? "" : s;
+    }
+
+    /** Return the first LENGTH bytes of FILE, mapped read-only. */
+    private static MappedByteBuffer map(File file, long length) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Options of find for the queries exact, word and prefix. */
+    static final String EXACT = "--exact", WORD = "--word",
+        PREFIX = "--prefix";
+
+    /** Bytes in the header of the records file. */
+    private static final int HEADER_BYTES = 42;
+    /** Fields of a record. */
+    private static final int FIELDS = 5;
+    /** Marks the start of a word file. */
+    private static final int MAGIC = 0x676c6d77;
+    /** Bytes in the header of the word file, and in each of its
+     *  entries. */
+    private static final int WORDS_HEADER = 16, ENTRY_BYTES = 8;
+    /** The word file is rebuilt once the records after it are more than
+     *  1/REBUILD of those it covers, and at least MIN_REBUILD bytes. */
+    private static final int REBUILD = 8, MIN_REBUILD = 1 << 16;
+    /** Prefix of the keys mapping SHA-1 vals to records; not a word. */
+    private static final String KEY = "#";
+
+    /** The history file indexed. */
+    private final File _history;
+    /** The records file. */
+    private final File _records;
+    /** The word file. */
+    private final File _words;
+    /** The store of the commits indexed, or null for the local one. */
+    private final ObjectStore _store;
+    /** The journal of their repository, or null for the local one. */
+    private final Journal _journal;
+    /** The word file, mapped, or null if not open or not valid. */
+    private MappedByteBuffer _map;
+    /** Offset in the records file up to which the word file covers. */
+    private long _covered = HEADER_BYTES;
+    /** Number of words in the word file. */
+    private int _count;
+    /** Offsets in the word file of the words and the postings. */
+    private int _names, _postings;
+}
@@ -0,0 +1,123 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/** Objects read in during one command, shared by commits, blobs and
+ *  branches so that each is read from disk and deserialized only once.
+ *  The cache is bounded by the total size in bytes of the files the
+ *  objects were read from; when it is full, the least recently used
+ *  objects are dropped.  The bound is the system property
+ *  gitlet.cache.bytes, by default 64 MB.
+ *  @author Aayush Sutaria
+ */
+class ObjectCache {
+
+    /** A cache holding objects of at most LIMIT bytes in all. */
+    ObjectCache(long limit) {
+        _limit = limit;
+    }
+
+    /** Return the cache shared by this command. */
+    static ObjectCache shared() {
+        return SHARED;
+    }
+
+    /** Return the object cached under KEY if it is of class TYPE, or
+     *  null, counting a hit or a miss. */
+    synchronized <T> T get(String key, Class<T> type) {
+        Entry e = _entries.get(key);
+        if (e == null || !type.isInstance(e.value)) {
+            _misses += 1;
+            return null;
+        }
+        _hits += 1;
+        return type.cast(e.value);
+    }
+
+    /** Return true iff an object is cached under KEY.  This does not
+     *  count as a use. */
+    synchronized boolean contains(String key) {
+        return _entries.containsKey(key);
+    }
+
+    /** Cache VALUE, read from SIZE bytes, under KEY, dropping the least
+     *  recently used objects if the cache is then over its limit.  An
+     *  object larger than the whole cache is not kept. */
+    synchronized void put(String key, Object value, long size) {
+        remove(key);
+        if (size > _limit) {
+            return;
+        }
+        _entries.put(key, new Entry(value, size));
+        _bytes += size;
+        Iterator<Entry> eldest = _entries.values().iterator();
+        while (_bytes > _limit) {
+            _bytes -= eldest.next().size;
+            eldest.remove();
+            _evictions += 1;
+        }
+    }
+
+    /** Drop the object cached under KEY, if any. */
+    synchronized void remove(String key) {
+        Entry e = _entries.remove(key);
+        if (e != null) {
+            _bytes -= e.size;
+        }
+    }
+
+    /** Drop every cached object. */
+    synchronized void clear() {
+        _entries.clear();
+        _bytes = 0;
+    }
+
+    /** Reset the counts of hits, misses and evictions. */
+    synchronized void clearCounts() {
+        _hits = _misses = _evictions = 0;
+    }
+
+    /** Return a one-line summary of the use of this cache. */
+    synchronized String stats() {
+        return String.format("cache: %d hits, %d misses, %d evictions, "
+                             + "%d objects, %d bytes",
+                             _hits, _misses, _evictions,
+                             _entries.size(), _bytes);
+    }
+
+    /** A cached object and its size. */
+    private static class Entry {
+        /** VALUE read from SIZE bytes. */
+        Entry(Object value, long size) {
+            this.value = value;
+            this.size = size;
+        }
+
+        /** The object. */
+        final Object value;
+        /** Size of its file in bytes. */
+        final long size;
+    }
+
+    /** Default bound on the bytes cached. */
+    private static final long DEFAULT_LIMIT = 64L << 20;
+
+    /** The cache shared by this command. */
+    private static final ObjectCache SHARED = new ObjectCache(
+            Long.getLong("gitlet.cache.bytes", DEFAULT_LIMIT));
+
+    /** Bound on the bytes cached. */
+    private final long _limit;
+    /** Cached objects, least recently used first. */
+    private final LinkedHashMap<String, Entry> _entries =
+        new LinkedHashMap<>(16, 0.75f, true);
+    /** Bytes cached. */
+    private long _bytes;
+    /** Lookups that found their object. */
+    private long _hits;
+    /** Lookups that did not. */
+    private long _misses;
+    /** Objects dropped to stay within the bound. */
+    private long _evictions;
+}
@@ -0,0 +1,761 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** An object directory: loose objects, each in a file named by its SHA-1
+ *  val, plus any packfiles in its "pack" subdirectory.  Loose objects are
+ *  spread over 256 fan-out subdirectories named by the first two hex
+ *  digits of their SHA-1 vals, in files named by the other 38, so that
+ *  no directory grows too large to search or list quickly.  Callers see the
+ *  logical contents of an object (a blob's file contents, a commit's or
+ *  tree's serialized form) however it is stored.
+ *
+ *  A packfile pack-X.pack holds many objects, each deflated either whole
+ *  or as a Delta against another object.  Its index pack-X.idx lists the
+ *  SHA-1 vals of those objects in sorted order with their offsets in the
+ *  pack.  Both are read through memory-mapped buffers.
+ *
+ *  A large blob may be stored loose as a list of chunks, each a blob of
+ *  its own, behind a "chunks SIZE\0" header; its contents are those of
+ *  the chunks in order.  Such lists are never packed, but their chunks
+ *  may be.
+ *  @author Aayush Sutaria
+ */
+class ObjectStore {
+
+    /** The object store in directory DIR. */
+    ObjectStore(File dir) {
+        _dir = dir;
+    }
+
+    /** Return the object store of the current repository. */
+    static ObjectStore local() {
+        if (_local == null) {
+            _local = new ObjectStore(Main.OBJECT);
+        }
+        return _local;
+    }
+
+    /** Drop the object store of the current repository, so that its
+     *  packs are found again when it is next used. */
+    static void forget() {
+        _local = null;
+    }
+
+    /** Return the directory of this store. */
+    File getDir() {
+        return _dir;
+    }
+
+    /** Return the loose object file for SHAVAL, which need not exist.
+     *  Until the store is upgraded, an object not yet in its fan-out
+     *  directory may still be directly in the store's directory. */
+    File looseFile(String shaVal) {
+        if (shaVal.length() <= FAN_OUT) {
+            return Utils.join(_dir, shaVal);
+        }
+        File result = Utils.join(_dir, shaVal.substring(0, FAN_OUT),
+                                 shaVal.substring(FAN_OUT));
+        if (!isFannedOut() && !result.isFile()) {
+            File flat = Utils.join(_dir, shaVal);
+            if (flat.isFile()) {
+                return flat;
+            }
+        }
+        return result;
+    }
+
+    /** Return the file to which a new loose object SHAVAL is moved,
+     *  creating its fan-out directory if need be. */
+    File newLooseFile(String shaVal) throws IOException {
+        int shard = shard(shaVal);
+        File dir = Utils.join(_dir, shaVal.substring(0, FAN_OUT));
+        Files.createDirectories(dir.toPath());
+        synchronized (this) {
+            _listings[shard] = null;
+        }
+        return new File(dir, shaVal.substring(FAN_OUT));
+    }
+
+    /** Return true iff every loose object is in its fan-out directory, as
+     *  in stores made or upgraded since they were introduced. */
+    boolean isFannedOut() {
+        if (!_fannedOut) {
+            _fannedOut = Utils.join(_dir, FAN_OUT_FILE).isFile();
+        }
+        return _fannedOut;
+    }
+
+    /** Move any loose objects left directly in the store's directory, as
+     *  in repositories made before fan-out directories, into their
+     *  fan-out directories.  Each move is a rename, so a command killed
+     *  part way leaves every object readable, and the next upgrade
+     *  finishes the job.  Needs the repository locked alone. */
+    void upgrade() throws IOException {
+        if (isFannedOut()) {
+            return;
+        }
+        try (DirectoryStream<Path> files =
+                 Files.newDirectoryStream(_dir.toPath())) {
+            for (Path f : files) {
+                String name = f.getFileName().toString();
+                if (name.matches(SHA_PATTERN) && Files.isRegularFile(f)) {
+                    Files.move(f, newLooseFile(name).toPath(),
+                               StandardCopyOption.ATOMIC_MOVE,
+                               StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+        Files.createFile(Utils.join(_dir, FAN_OUT_FILE).toPath());
+        _fannedOut = true;
+    }
+
+    /** Store CONTENTS as the loose object SHAVAL.  They are written to a
+     *  temporary file that is then renamed, so a command killed part way
+     *  never leaves a truncated object. */
+    void writeLoose(String shaVal, byte[] contents) throws IOException {
+        Path temp = Files.createTempFile(_dir.toPath(), TEMP_PREFIX, "");
+        try {
+            Files.write(temp, contents);
+            Files.move(temp, newLooseFile(shaVal).toPath(),
+                       StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /** Return true iff this store has object SHAVAL. */
+    boolean contains(String shaVal) {
+        if (looseFile(shaVal).isFile()) {
+            return true;
+        }
+        for (Pack pack : packs()) {
+            if (pack.offset(shaVal) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the SHA-1 vals of all objects in this store, sorted.  Other
+     *  files in the directory, such as temporary files, are skipped. */
+    List<String> names() {
+        TreeSet<String> result = new TreeSet<>();
+        try {
+            forEachLoose(result::add);
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+        for (Pack pack : packs()) {
+            result.addAll(pack.names());
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Call VISITOR with the SHA-1 val of each loose object, one fan-out
+     *  directory at a time. */
+    void forEachLoose(Consumer<String> visitor) throws IOException {
+        if (!isFannedOut()) {
+            try (DirectoryStream<Path> files =
+                     Files.newDirectoryStream(_dir.toPath())) {
+                for (Path f : files) {
+                    String name = f.getFileName().toString();
+                    if (name.matches(SHA_PATTERN)
+                        && Files.isRegularFile(f)) {
+                        visitor.accept(name);
+                    }
+                }
+            }
+        }
+        for (int shard = 0; shard < SHARDS; shard += 1) {
+            for (String name : listing(shard)) {
+                visitor.accept(name);
+            }
+        }
+    }
+
+    /** Return the SHA-1 vals of the objects in this store that start
+     *  with PREFIX, sorted.  Only the fan-out directories and the parts
+     *  of pack indices that could hold them are searched. */
+    List<String> withPrefix(String prefix) throws IOException {
+        TreeSet<String> result = new TreeSet<>();
+        if (!prefix.matches(SHA_PREFIX_PATTERN)) {
+            return new ArrayList<>();
+        }
+        if (!isFannedOut()) {
+            for (String name : Utils.plainFilenamesIn(_dir)) {
+                if (name.matches(SHA_PATTERN) && name.startsWith(prefix)) {
+                    result.add(name);
+                }
+            }
+        }
+        int first = 0, last = SHARDS - 1;
+        if (prefix.length() >= FAN_OUT) {
+            first = last = shard(prefix);
+        } else if (prefix.length() == 1) {
+            first = Character.digit(prefix.charAt(0), 16) << 4;
+            last = first + 15;
+        }
+        for (int shard = first; shard <= last; shard += 1) {
+            String[] names = listing(shard);
+            int k = Arrays.binarySearch(names, prefix);
+            for (k = k < 0 ? -k - 1 : k;
+                 k < names.length && names[k].startsWith(prefix); k += 1) {
+                result.add(names[k]);
+            }
+        }
+        for (Pack pack : packs()) {
+            pack.withPrefix(prefix, result);
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Return the SHA-1 vals of the loose objects in fan-out directory
+     *  SHARD, sorted.  Listings are kept while the directory's
+     *  modification time is unchanged. */
+    private String[] listing(int shard) throws IOException {
+        String digits = String.format("%02x", shard);
+        Path dir = Utils.join(_dir, digits).toPath();
+        long stamp;
+        try {
+            stamp = Files.getLastModifiedTime(dir).to(TimeUnit.NANOSECONDS);
+        } catch (NoSuchFileException excp) {
+            return new String[0];
+        }
+        synchronized (this) {
+            if (_listings[shard] != null && _stamps[shard] == stamp) {
+                return _listings[shard];
+            }
+        }
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path f : files) {
+                String name = digits + f.getFileName().toString();
+                if (name.matches(SHA_PATTERN)) {
+                    names.add(name);
+                }
+            }
+        }
+        String[] result = names.toArray(new String[0]);
+        Arrays.sort(result);
+        synchronized (this) {
+            _listings[shard] = result;
+            _stamps[shard] = stamp;
+        }
+        return result;
+    }
+
+    /** Return the number of the fan-out directory of SHAVAL, or of the
+     *  SHA-1 vals starting with SHAVAL, from its first two digits. */
+    private static int shard(String shaVal) {
+        return Integer.parseInt(shaVal.substring(0, FAN_OUT), 16);
+    }
+
+    /** Return the logical contents of object SHAVAL. */
+    byte[] read(String shaVal) {
+        try {
+            File loose = looseFile(shaVal);
+            if (loose.isFile()) {
+                try (InputStream in = openLoose(loose)) {
+                    return in.readAllBytes();
+                }
+            }
+            for (Pack pack : packs()) {
+                long offset = pack.offset(shaVal);
+                if (offset >= 0) {
+                    return pack.read(offset);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        throw new IllegalArgumentException(
+                "No object file with that name found.");
+    }
+
+    /** Return a stream of the logical contents of object SHAVAL.  A loose
+     *  object is streamed from its file; a packed one is read whole. */
+    InputStream open(String shaVal) throws IOException {
+        File loose = looseFile(shaVal);
+        if (loose.isFile()) {
+            return openLoose(loose);
+        }
+        return new ByteArrayInputStream(read(shaVal));
+    }
+
+    /** Copy object SHAVAL from OTHER into this store as a loose object,
+     *  unless this store already has it.  A blob stored as a list of
+     *  chunks is copied as such, after the chunks this store lacks. */
+    void copyFrom(ObjectStore other, String shaVal) throws IOException {
+        if (contains(shaVal)) {
+            return;
+        }
+        List<String> chunks = other.chunks(shaVal);
+        if (chunks != null) {
+            for (String chunk : chunks) {
+                copyFrom(other, chunk);
+            }
+        }
+        File src = other.looseFile(shaVal);
+        if (src.isFile()) {
+            writeLoose(shaVal, Files.readAllBytes(src.toPath()));
+        } else {
+            writeLoose(shaVal, other.read(shaVal));
+        }
+    }
+
+    /** Return the SHA-1 vals of the chunks of object SHAVAL, in order, if
+     *  it is a blob stored as a list of chunks, else null. */
+    List<String> chunks(String shaVal) throws IOException {
+        File loose = looseFile(shaVal);
+        if (!loose.isFile() || !startsWithZlibHeader(loose)) {
+            return null;
+        }
+        try (InputStream in = new InflaterInputStream(new BufferedInputStream(
+                 Files.newInputStream(loose.toPath())))) {
+            return readHeader(in) == CHUNKS_TAG ? readChunks(in) : null;
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Return a stream of the logical contents of LOOSE: a compressed
+     *  blob is inflated past its header, a list of chunks is read as the
+     *  chunks one after another, and anything else, including a file
+     *  that does not inflate to a valid header, is read verbatim. */
+    private InputStream openLoose(File loose) throws IOException {
+        if (startsWithZlibHeader(loose)) {
+            InputStream in = new InflaterInputStream(new BufferedInputStream(
+                    Files.newInputStream(loose.toPath())));
+            try {
+                byte[] tag = readHeader(in);
+                if (tag == BLOB_TAG) {
+                    return in;
+                } else if (tag == CHUNKS_TAG) {
+                    List<String> chunks = readChunks(in);
+                    in.close();
+                    return openChunks(chunks);
+                }
+            } catch (IOException excp) {
+                /* Not a compressed object after all, but a verbatim blob
+                 * whose first bytes look like a zlib header. */
+            }
+            in.close();
+        }
+        return new BufferedInputStream(Files.newInputStream(loose.toPath()));
+    }
+
+    /** Return a stream of the contents of the blobs CHUNKS, one after
+     *  another, each opened only when the one before is used up. */
+    private InputStream openChunks(List<String> chunks) {
+        Iterator<String> next = chunks.iterator();
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            @Override
+            public boolean hasMoreElements() {
+                return next.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                try {
+                    return open(next.next());
+                } catch (IOException excp) {
+                    throw new UncheckedIOException(excp);
+                }
+            }
+        });
+    }
+
+    /** Read the header of a blob or list of chunks from IN, returning
+     *  BLOB_TAG or CHUNKS_TAG, or null if IN does not start with one.
+     *  Throws an IOException if IN is not a valid zlib stream as far as
+     *  the header. */
+    private static byte[] readHeader(InputStream in) throws IOException {
+        byte[] tag = new byte[CHUNKS_TAG.length];
+        int n = 0;
+        for (int c = in.read(); c > 0 && n < tag.length; c = in.read()) {
+            tag[n] = (byte) c;
+            n += 1;
+            if (c == ' ') {
+                break;
+            }
+        }
+        byte[] result;
+        if (Arrays.equals(tag, 0, n, BLOB_TAG, 0, BLOB_TAG.length)) {
+            result = BLOB_TAG;
+        } else if (Arrays.equals(tag, 0, n, CHUNKS_TAG, 0,
+                                 CHUNKS_TAG.length)) {
+            result = CHUNKS_TAG;
+        } else {
+            return null;
+        }
+        for (int i = 0; i < MAX_HEADER; i += 1) {
+            int c = in.read();
+            if (c == 0) {
+                return result;
+            } else if (c < '0' || c > '9') {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /** Return the SHA-1 vals in the rest of the list of chunks IN. */
+    private static List<String> readChunks(InputStream in)
+            throws IOException {
+        List<String> result = new ArrayList<>();
+        String list = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        for (String line : list.split("\n")) {
+            if (!line.isEmpty()) {
+                result.add(line.substring(0, line.indexOf(' ')));
+            }
+        }
+        return result;
+    }
+
+    /** Return the header stored before a list of the chunks of a blob of
+     *  SIZE bytes. */
+    static byte[] chunksHeader(long size) {
+        return ("chunks " + size + "\0").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Return true if FILE starts with a zlib stream header. */
+    private static boolean startsWithZlibHeader(File file)
+            throws IOException {
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int cmf = in.read(), flg = in.read();
+            return cmf == ZLIB_DEFLATE && flg >= 0
+                && (cmf * 256 + flg) % ZLIB_CHECK == 0;
+        }
+    }
+
+    /** Return the packs of this store, opening them on first use. */
+    synchronized List<Pack> packs() {
+        if (_packs == null) {
+            _packs = new ArrayList<>();
+            File packDir = Utils.join(_dir, PACK_DIR);
+            List<String> names = Utils.plainFilenamesIn(packDir);
+            if (names != null) {
+                for (String name : names) {
+                    if (name.endsWith(".idx")) {
+                        String base = name.substring(0, name.length() - 4);
+                        _packs.add(new Pack(Utils.join(packDir, name),
+                                Utils.join(packDir, base + ".pack")));
+                    }
+                }
+            }
+        }
+        return _packs;
+    }
+
+    /** Forget any packs opened so far, so that they are looked up again
+     *  on next use. */
+    synchronized void reopenPacks() {
+        _packs = null;
+    }
+
+    /** One packfile and its index.  The pack is mapped in windows of at
+     *  most PACK_WINDOW bytes, as one mapping cannot exceed 2 GiB, so
+     *  offsets in it are longs. */
+    class Pack {
+        /** The pack in PACKFILE, indexed by INDEXFILE. */
+        Pack(File indexFile, File packFile) {
+            this(indexFile, packFile, PACK_WINDOW);
+        }
+
+        /** The pack in PACKFILE, indexed by INDEXFILE, mapped in windows
+         *  of WINDOW bytes. */
+        Pack(File indexFile, File packFile, int window) {
+            _indexFile = indexFile;
+            _packFile = packFile;
+            _idx = map(indexFile);
+            _window = window;
+            _pack = mapWindows(packFile, window);
+            if (_idx.getInt(0) != IDX_MAGIC || intAt(0) != PACK_MAGIC) {
+                throw new IllegalArgumentException("corrupt pack "
+                                                   + packFile.getName());
+            }
+            _count = _idx.getInt(HEADER_BYTES - 4);
+        }
+
+        /** Return the index file. */
+        File indexFile() {
+            return _indexFile;
+        }
+
+        /** Return the pack file. */
+        File packFile() {
+            return _packFile;
+        }
+
+        /** Return the offset in this pack of object SHAVAL, or -1. */
+        long offset(String shaVal) {
+            if (shaVal.length() != Utils.UID_LENGTH) {
+                return -1;
+            }
+            byte[] key = Utils.fromHex(shaVal);
+            byte[] probe = new byte[SHA_BYTES];
+            int lo = 0, hi = _count - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                _idx.get(HEADER_BYTES + mid * IDX_ENTRY, probe);
+                int c = Arrays.compareUnsigned(probe, key);
+                if (c == 0) {
+                    return _idx.getLong(HEADER_BYTES + mid * IDX_ENTRY
+                                        + SHA_BYTES);
+                } else if (c < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return -1;
+        }
+
+        /** Return the number of objects in this pack. */
+        int count() {
+            return _count;
+        }
+
+        /** Return the SHA-1 val of the K-th object in this pack, in
+         *  sorted order. */
+        String name(int k) {
+            byte[] probe = new byte[SHA_BYTES];
+            _idx.get(HEADER_BYTES + k * IDX_ENTRY, probe);
+            return Utils.toHex(probe);
+        }
+
+        /** Add the SHA-1 vals of the objects in this pack starting with
+         *  PREFIX, an even or odd number of hex digits, to RESULT. */
+        void withPrefix(String prefix, Collection<String> result) {
+            byte[] key = Utils.fromHex(prefix.length() % 2 == 0 ? prefix
+                                       : prefix + "0");
+            byte[] probe = new byte[SHA_BYTES];
+            int lo = 0, hi = _count;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                _idx.get(HEADER_BYTES + mid * IDX_ENTRY, probe);
+                if (Arrays.compareUnsigned(probe, 0, key.length,
+                                           key, 0, key.length) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            for (int k = lo; k < _count; k += 1) {
+                String name = name(k);
+                if (!name.startsWith(prefix)) {
+                    break;
+                }
+                result.add(name);
+            }
+        }
+
+        /** Return the SHA-1 vals of the objects in this pack. */
+        List<String> names() {
+            List<String> result = new ArrayList<>();
+            byte[] probe = new byte[SHA_BYTES];
+            for (int k = 0; k < _count; k += 1) {
+                _idx.get(HEADER_BYTES + k * IDX_ENTRY, probe);
+                result.add(Utils.toHex(probe));
+            }
+            return result;
+        }
+
+        /** Return the logical contents of the object at OFFSET.  The base
+         *  of a delta is always in the same pack, and is read from there
+         *  even if a loose copy of it has since been written. */
+        byte[] read(long offset) {
+            long pos = offset;
+            byte[] kind = new byte[1];
+            get(pos, kind);
+            pos += 1;
+            String base = null;
+            if (kind[0] == DELTA) {
+                byte[] baseSha = new byte[SHA_BYTES];
+                get(pos, baseSha);
+                base = Utils.toHex(baseSha);
+                pos += SHA_BYTES;
+            }
+            int size = intAt(pos), stored = intAt(pos + 4);
+            pos += 8;
+            byte[] deflated = new byte[stored];
+            get(pos, deflated);
+            byte[] data = new byte[size];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(deflated);
+                int n = 0;
+                while (n < size && !inflater.finished()) {
+                    n += inflater.inflate(data, n, size - n);
+                }
+            } catch (DataFormatException excp) {
+                throw new IllegalArgumentException("corrupt pack entry");
+            } finally {
+                inflater.end();
+            }
+            if (base == null) {
+                return data;
+            }
+            long baseOffset = offset(base);
+            if (baseOffset < 0) {
+                throw new IllegalArgumentException("corrupt pack entry");
+            }
+            return Delta.apply(read(baseOffset), data);
+        }
+
+        /** Copy the bytes of the pack from offset POS into DST, across
+         *  windows if need be. */
+        private void get(long pos, byte[] dst) {
+            int n = 0;
+            while (n < dst.length) {
+                MappedByteBuffer w = _pack[(int) (pos / _window)];
+                int at = (int) (pos % _window);
+                int k = Math.min(dst.length - n, w.limit() - at);
+                if (k <= 0) {
+                    throw new IllegalArgumentException("corrupt pack entry");
+                }
+                w.get(at, dst, n, k);
+                n += k;
+                pos += k;
+            }
+        }
+
+        /** Return the int at offset POS of the pack. */
+        private int intAt(long pos) {
+            byte[] b = new byte[4];
+            get(pos, b);
+            return ByteBuffer.wrap(b).getInt();
+        }
+
+        /** Index file. */
+        private final File _indexFile;
+        /** Pack file. */
+        private final File _packFile;
+        /** Mapped index. */
+        private final MappedByteBuffer _idx;
+        /** Mapped pack, one buffer per window. */
+        private final MappedByteBuffer[] _pack;
+        /** Bytes in each window of _pack but the last. */
+        private final int _window;
+        /** Number of objects. */
+        private final int _count;
+    }
+
+    /** Return the contents of FILE, mapped read-only. */
+    private static MappedByteBuffer map(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                               channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the contents of FILE, mapped read-only in windows of
+     *  WINDOW bytes. */
+    private static MappedByteBuffer[] mapWindows(File file, int window) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            MappedByteBuffer[] result =
+                new MappedByteBuffer[(int) Math.max(1, (size + window - 1)
+                                                    / window)];
+            for (int k = 0; k < result.length; k += 1) {
+                long start = (long) k * window;
+                result[k] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                                        Math.min(window, size - start));
+            }
+            return result;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Subdirectory holding packs. */
+    static final String PACK_DIR = "pack";
+    /** Prefix of temporary files in an object directory. */
+    static final String TEMP_PREFIX = "tmp-";
+    /** Magic numbers starting index and pack files ("GIDX", "GPAK"). */
+    static final int IDX_MAGIC = 0x47494458, PACK_MAGIC = 0x4750414b;
+    /** Bytes in the header of index and pack files: magic, version,
+     *  object count. */
+    static final int HEADER_BYTES = 12;
+    /** Pattern matched by the name of an object, and by the start of
+     *  one. */
+    private static final String SHA_PATTERN = "[0-9a-f]{40}",
+        SHA_PREFIX_PATTERN = "[0-9a-f]{0,40}";
+    /** Hex digits of a SHA-1 val naming its fan-out directory, and the
+     *  number of such directories. */
+    private static final int FAN_OUT = 2, SHARDS = 256;
+    /** File present in an object directory once all its loose objects
+     *  are in fan-out directories. */
+    static final String FAN_OUT_FILE = "fanout";
+    /** Bytes in a binary SHA-1 val. */
+    static final int SHA_BYTES = 20;
+    /** Most bytes of a pack mapped at once. */
+    static final int PACK_WINDOW = 1 << 30;
+    /** Bytes in an index entry: SHA-1 val and offset. */
+    static final int IDX_ENTRY = SHA_BYTES + 8;
+    /** Pack entry kinds. */
+    static final int WHOLE = 1, DELTA = 2;
+
+    /** Tags starting the header of a compressed blob and of a list of
+     *  chunks. */
+    private static final byte[] BLOB_TAG =
+        "blob ".getBytes(StandardCharsets.UTF_8),
+        CHUNKS_TAG = "chunks ".getBytes(StandardCharsets.UTF_8);
+    /** Most digits allowed in the size in a blob header. */
+    private static final int MAX_HEADER = 20;
+    /** First byte of a zlib stream using deflate with a 32K window. */
+    private static final int ZLIB_DEFLATE = 0x78;
+    /** The first two bytes of a zlib stream are a multiple of this. */
+    private static final int ZLIB_CHECK = 31;
+
+    /** Store of the current repository, once asked for. */
+    private static ObjectStore _local;
+
+    /** Object directory. */
+    private final File _dir;
+    /** Packs in _dir, or null until first needed. */
+    private List<Pack> _packs;
+    /** True once all loose objects are known to be in fan-out
+     *  directories. */
+    private boolean _fannedOut;
+    /** Sorted listing of each fan-out directory, or null until read or
+     *  after an object is added to it. */
+    private final String[][] _listings = new String[SHARDS][];
+    /** Modification time, in nanoseconds, of each fan-out directory when
+     *  its listing was read. */
+    private final long[] _stamps = new long[SHARDS];
+}
@@ -0,0 +1,277 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/** Writes objects of an ObjectStore into a single new packfile: either
+ *  all of them, replacing its loose objects and older packs, or a chosen
+ *  set, into another store.
+ *
+ *  Objects are ordered by the name of a file they were stored under (when
+ *  known) and then from newest to oldest, so that successive revisions of
+ *  a file are neighbors and the newest revision, the one most often read,
+ *  is stored whole.  Each object is then delta-encoded against whichever
+ *  of the previous WINDOW objects of similar size gives the smallest
+ *  delta, if that delta is less than half the object's size.  Only the
+ *  window is held in memory.
+ *  @author Aayush Sutaria
+ */
+class PackWriter {
+
+    /** A writer for STORE.  NAMEHINTS maps the SHA-1 vals of blobs to the
+     *  name of a file they were stored under, and of trees to "", in order
+     *  from newest to oldest.  Objects not in NAMEHINTS are packed last,
+     *  largest first. */
+    PackWriter(ObjectStore store, Map<String, String> nameHints) {
+        _store = store;
+        _nameHints = nameHints;
+    }
+
+    /** Pack every object of the store that is not too large to hold in
+     *  memory or a list of chunks, then delete the loose objects and packs it replaces.
+     *  Returns the number of objects packed. */
+    int repack() throws IOException {
+        List<ObjectStore.Pack> oldPacks = new ArrayList<>(_store.packs());
+        List<String> shaVals = new ArrayList<>();
+        boolean anyLoose = false;
+        for (String shaVal : _store.names()) {
+            File loose = _store.looseFile(shaVal);
+            if (loose.isFile() && (loose.length() > MAX_PACKED
+                                   || _store.chunks(shaVal) != null)) {
+                continue;
+            }
+            anyLoose |= loose.isFile();
+            shaVals.add(shaVal);
+        }
+        if (shaVals.isEmpty() || oldPacks.size() == 1 && !anyLoose) {
+            return 0;
+        }
+        String name = write(_store, shaVals);
+        for (ObjectStore.Pack old : oldPacks) {
+            if (!old.indexFile().getName().equals(name + ".idx")) {
+                Files.deleteIfExists(old.indexFile().toPath());
+                Files.deleteIfExists(old.packFile().toPath());
+            }
+        }
+        for (String shaVal : shaVals) {
+            Files.deleteIfExists(_store.looseFile(shaVal).toPath());
+        }
+        _store.reopenPacks();
+        return shaVals.size();
+    }
+
+    /** Write the objects SHAVALS of the store into a new pack in DEST and
+     *  return the name of the pack, without extension. */
+    String send(ObjectStore dest, Collection<String> shaVals)
+            throws IOException {
+        return write(dest, shaVals);
+    }
+
+    /** Write the objects SHAVALS of the store into a new pack in DEST and
+     *  return the name of the pack, without extension. */
+    private String write(ObjectStore dest, Collection<String> shaVals)
+            throws IOException {
+        HashMap<String, Integer> ages = new HashMap<>();
+        for (String shaVal : _nameHints.keySet()) {
+            ages.put(shaVal, ages.size());
+        }
+        List<Entry> entries = new ArrayList<>();
+        for (String shaVal : shaVals) {
+            File loose = _store.looseFile(shaVal);
+            String hint = _nameHints.get(shaVal);
+            Integer age = ages.get(shaVal);
+            entries.add(new Entry(shaVal, hint == null ? "" : hint,
+                                  age == null ? Integer.MAX_VALUE : age,
+                                  loose.isFile() ? loose.length() : 0));
+        }
+        entries.sort(Comparator.comparing((Entry e) -> e.hint)
+                     .thenComparingInt(e -> e.age)
+                     .thenComparingLong(e -> -e.size));
+
+        File packDir = Utils.join(dest.getDir(), ObjectStore.PACK_DIR);
+        packDir.mkdir();
+        Path packTemp = Files.createTempFile(packDir.toPath(),
+                                             ObjectStore.TEMP_PREFIX, "");
+        Path idxTemp = Files.createTempFile(packDir.toPath(),
+                                            ObjectStore.TEMP_PREFIX, "");
+        try {
+            HashMap<String, Long> offsets = new HashMap<>();
+            writePack(packTemp, entries, offsets);
+            List<String> sorted = new ArrayList<>(offsets.keySet());
+            sorted.sort(null);
+            writeIndex(idxTemp, sorted, offsets);
+            String name = "pack-" + Utils.sha1(new ArrayList<>(sorted));
+            Files.move(packTemp, Utils.join(packDir, name + ".pack").toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+            Files.move(idxTemp, Utils.join(packDir, name + ".idx").toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+            return name;
+        } finally {
+            Files.deleteIfExists(packTemp);
+            Files.deleteIfExists(idxTemp);
+            dest.reopenPacks();
+        }
+    }
+
+    /** Return the number of objects stored as deltas so far. */
+    int deltas() {
+        return _deltas;
+    }
+
+    /** Write ENTRIES to the pack file PACK, recording the offset of each
+     *  in OFFSETS. */
+    private void writePack(Path pack, List<Entry> entries,
+                           HashMap<String, Long> offsets) throws IOException {
+        ArrayDeque<Entry> window = new ArrayDeque<>();
+        HashMap<String, Integer> depths = new HashMap<>();
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(pack)))) {
+            out.writeInt(ObjectStore.PACK_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            long offset = ObjectStore.HEADER_BYTES;
+            for (Entry e : entries) {
+                e.data = _store.read(e.shaVal);
+                byte[] stored = e.data;
+                Entry base = null;
+                for (Entry candidate : window) {
+                    if (depths.get(candidate.shaVal) >= MAX_DEPTH
+                        || candidate.data.length < e.data.length / 2
+                        || candidate.data.length > 2 * e.data.length) {
+                        continue;
+                    }
+                    if (candidate.index == null) {
+                        candidate.index = new Delta.Index(candidate.data);
+                    }
+                    byte[] delta = candidate.index.create(e.data);
+                    if (delta.length < stored.length
+                        && delta.length < e.data.length / 2) {
+                        stored = delta;
+                        base = candidate;
+                        if (delta.length < e.data.length / GOOD_ENOUGH) {
+                            break;
+                        }
+                    }
+                }
+                byte[] deflated = deflate(deflater, stored);
+                offsets.put(e.shaVal, offset);
+                if (base == null) {
+                    out.writeByte(ObjectStore.WHOLE);
+                    depths.put(e.shaVal, 0);
+                    offset += 1;
+                } else {
+                    out.writeByte(ObjectStore.DELTA);
+                    out.write(Utils.fromHex(base.shaVal));
+                    depths.put(e.shaVal, depths.get(base.shaVal) + 1);
+                    offset += 1 + ObjectStore.SHA_BYTES;
+                    _deltas += 1;
+                }
+                out.writeInt(stored.length);
+                out.writeInt(deflated.length);
+                out.write(deflated);
+                offset += 8 + deflated.length;
+                window.addFirst(e);
+                if (window.size() > WINDOW) {
+                    Entry old = window.removeLast();
+                    old.data = null;
+                    old.index = null;
+                }
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /** Write an index of the objects SORTED, at OFFSETS, to IDX. */
+    private static void writeIndex(Path idx, List<String> sorted,
+                                   HashMap<String, Long> offsets)
+            throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(idx)))) {
+            out.writeInt(ObjectStore.IDX_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sorted.size());
+            for (String shaVal : sorted) {
+                out.write(Utils.fromHex(shaVal));
+                out.writeLong(offsets.get(shaVal));
+            }
+        }
+    }
+
+    /** Return DATA compressed by DEFLATER. */
+    private static byte[] deflate(Deflater deflater, byte[] data) {
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] buffer = new byte[data.length + DEFLATE_SLACK];
+        int n = 0;
+        while (!deflater.finished()) {
+            if (n == buffer.length) {
+                buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+            }
+            n += deflater.deflate(buffer, n, buffer.length - n);
+        }
+        return Arrays.copyOf(buffer, n);
+    }
+
+    /** An object to be packed. */
+    private static class Entry {
+        /** Object SHAVAL, with name HINT, position AGE in the order from
+         *  newest to oldest, and approximate SIZE. */
+        Entry(String shaVal, String hint, int age, long size) {
+            this.shaVal = shaVal;
+            this.hint = hint;
+            this.age = age;
+            this.size = size;
+        }
+
+        /** SHA-1 val. */
+        private final String shaVal;
+        /** File name the object was stored under, or "". */
+        private final String hint;
+        /** Position from newest to oldest, for ordering. */
+        private final int age;
+        /** Approximate size, for ordering. */
+        private final long size;
+        /** Contents, while in the delta window. */
+        private byte[] data;
+        /** Index of data as a delta base, once needed. */
+        private Delta.Index index;
+    }
+
+    /** Pack format version. */
+    private static final int VERSION = 1;
+    /** Number of preceding objects tried as delta bases. */
+    private static final int WINDOW = 10;
+    /** A delta this many times smaller than its object ends the search
+     *  for a better base. */
+    private static final int GOOD_ENOUGH = 16;
+    /** Longest allowed chain of deltas. */
+    private static final int MAX_DEPTH = 16;
+    /** Loose objects larger than this are left unpacked. */
+    private static final long MAX_PACKED = 64L << 20;
+    /** Extra room given to deflate output over its input. */
+    private static final int DEFLATE_SLACK = 64;
+
+    /** Store being packed. */
+    private final ObjectStore _store;
+    /** File name of each blob and tree, newest first. */
+    private final Map<String, String> _nameHints;
+    /** Objects written as deltas. */
+    private int _deltas;
+}
@@ -0,0 +1,78 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/** Bloom filters of the paths of the files a commit changed from its
+ *  first parent, so that a search for the commits that changed one file
+ *  can pass over most commits without reading their trees.  A filter
+ *  has about BITS_PER_PATH bits for each path, at least MIN_BYTES bytes
+ *  in all, and each path sets NUM_HASHES of them, chosen by double
+ *  hashing from a 64-bit hash of its UTF-8 bytes.  With these numbers
+ *  about one test in a hundred of a path a commit did not change says
+ *  that it might have.
+ *  @author Aayush Sutaria
+ */
+class PathFilter {
+
+    /** Return the filter of PATHS, or null if there are more than
+     *  MAX_PATHS of them, when a commit is better checked directly. */
+    static byte[] of(Collection<String> paths) {
+        if (paths.size() > MAX_PATHS) {
+            return null;
+        }
+        byte[] bits = new byte[Math.max(MIN_BYTES,
+                (paths.size() * BITS_PER_PATH + Byte.SIZE - 1) / Byte.SIZE)];
+        for (String path : paths) {
+            long hash = hash(path);
+            for (int i = 0; i < NUM_HASHES; i += 1) {
+                int bit = bit(hash, i, bits.length);
+                bits[bit >>> 3] |= 1 << (bit & 7);
+            }
+        }
+        return bits;
+    }
+
+    /** Return false if the path whose hash() is HASH is certainly not
+     *  among those of the filter BITS, and true if it may be. */
+    static boolean mayContain(byte[] bits, long hash) {
+        for (int i = 0; i < NUM_HASHES; i += 1) {
+            int bit = bit(hash, i, bits.length);
+            if ((bits[bit >>> 3] & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the 64-bit hash of PATH: FNV-1a over its UTF-8 bytes,
+     *  with the bits mixed as in SplitMix64. */
+    static long hash(String path) {
+        long h = FNV_OFFSET;
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xff)) * FNV_PRIME;
+        }
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+
+    /** Return the I-th bit set for a path with hash HASH in a filter of
+     *  NBYTES bytes: the low half of HASH plus I times the high half. */
+    private static int bit(long hash, int i, int nBytes) {
+        long h1 = hash & 0xffffffffL, h2 = (hash >>> 32) | 1;
+        return (int) ((h1 + i * h2) % ((long) nBytes * Byte.SIZE));
+    }
+
+    /** Most paths a filter is made for. */
+    static final int MAX_PATHS = 512;
+    /** Bits of filter per path. */
+    private static final int BITS_PER_PATH = 10;
+    /** Bits set for each path. */
+    private static final int NUM_HASHES = 7;
+    /** Smallest filter, in bytes. */
+    private static final int MIN_BYTES = 8;
+    /** FNV-1a offset basis and prime. */
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L,
+        FNV_PRIME = 0x100000001b3L;
+}
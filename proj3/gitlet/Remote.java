@@ -5,7 +5,9 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.util.HashMap;
 
-/** The remote class for remote commands.
+/** The remote class for remote commands.  It is stored in the binary
+ *  format of Codec; remotes stored serialized, as they once were, are
+ *  still read.
  * @author Aayush Sutaria
  */
 
@@ -25,14 +27,19 @@ public class Remote implements Serializable {
 
     /** Constructor of remote with NAME and DIRECTORY. */
     public Remote(String name, String directory) throws IOException {
+        this(name, new File(directory));
+        saveRemote();
+    }
+
+    /** A remote named NAME whose repository is REPODIR, not yet saved. */
+    private Remote(String name, File repoDir) {
         _name = name;
-        repo = new File(directory);
+        repo = repoDir;
         cwd = Utils.join(repo, "..");
         object = Utils.join(repo, "object");
         branch = Utils.join(repo, "branch");
         stage = Utils.join(repo, "stage");
         history = Utils.join(repo, "history");
-        saveRemote();
     }
 
     /** takes in SHA-1 and outputs file content of deserialized blob.
@@ -40,12 +47,7 @@ public class Remote implements Serializable {
      * @return content of file which the indicated blob points to
      */
     public String blobFromFile(String shaVal) {
-        File blobFile = Utils.join(object, shaVal);
-        if (!blobFile.exists()) {
-            throw new IllegalArgumentException(
-                    "No blob file with that name found.");
-        }
-        return Utils.readContentsAsString(blobFile);
+        return Blob.fromFile(store(), shaVal);
     }
 
     /** Takes in SHA-1 and outputs file content of deserialized commit.
@@ -53,12 +55,34 @@ public class Remote implements Serializable {
      * @return commit from file
      */
     public Commit commitFromFile(String shaVal) {
-        File commitFile = Utils.join(object, shaVal);
-        if (!commitFile.exists()) {
-            throw new IllegalArgumentException(
-                    "No commit file with that name found.");
+        return Commit.fromStore(store(), shaVal);
+    }
+
+    /** Takes in SHA-1 and outputs the deserialized tree.
+     * @param shaVal is a SHA-1 value
+     * @return tree from file
+     */
+    public Tree treeFromFile(String shaVal) {
+        return Tree.fromStore(store(), shaVal);
+    }
+
+    /** Return the object store of this remote.
+     * @return object store */
+    ObjectStore store() {
+        if (_store == null) {
+            _store = new ObjectStore(object);
         }
-        return Utils.readObject(commitFile, Commit.class);
+        return _store;
+    }
+
+    /** Return the journal of this remote's repository, through which
+     *  commands change its branches and history.
+     * @return journal */
+    Journal journal() {
+        if (_journal == null) {
+            _journal = new Journal(repo);
+        }
+        return _journal;
     }
 
     /** Takes in and deserializes branch name and return corresponding branch.
@@ -66,24 +90,19 @@ public class Remote implements Serializable {
      * @param name name of branch
      */
     public Branch branchFromFile(String name) {
-        File branchFile = Utils.join(branch, name);
-        if (!branchFile.exists()) {
-            throw new IllegalArgumentException(
-                    "No branch file with that name found.");
-        }
-        return Utils.readObject(branchFile, Branch.class);
+        return Branch.fromFile(Utils.join(branch, name), name);
     }
 
-    /** Takes in SHA-1 and outputs file content of deserialized history.
+    /** Returns the commit history of this remote.
      * @return history from file
      */
     public History historyFromFile() {
-        File stageFile = Utils.join(history, "current");
-        if (!stageFile.exists()) {
+        File historyFile = Utils.join(history, "current");
+        if (!historyFile.exists()) {
             throw new IllegalArgumentException(
                     "No history file.");
         }
-        return Utils.readObject(stageFile, History.class);
+        return new History(historyFile, store(), journal());
     }
 
     /** Takes in and deserializes a stage of branch b.
@@ -96,7 +115,7 @@ public class Remote implements Serializable {
             throw new IllegalArgumentException(
                     "No stage file with that branch found.");
         }
-        return Utils.readObject(stageFile, Stage.class);
+        return Stage.fromFile(stageFile);
     }
 
 
@@ -108,35 +127,70 @@ public class Remote implements Serializable {
             throw new IllegalArgumentException(
                     "No remote file with that name found.");
         }
-        return Utils.readObject(Utils.join(Main.REMOTE, name), Remote.class);
+        return decode(Utils.readContents(Utils.join(Main.REMOTE, name)));
     }
 
     /** Save a remote. */
     public void saveRemote() throws IOException {
-        Utils.join(Main.REMOTE, _name).createNewFile();
-        Utils.writeObject(Utils.join(Main.REMOTE, _name), this);
+        Journal.local().write(Utils.join(Main.REMOTE, _name), encode());
+    }
+
+    /** Return this remote in the binary format of Codec: its name and the
+     *  path of its repository, from which the other paths follow. */
+    byte[] encode() {
+        return new Codec.Writer(Codec.REMOTE).string(_name)
+            .string(repo.getPath()).toByteArray();
+    }
+
+    /** Return the remote stored as CONTENTS, in the binary format of Codec
+     *  or, as remotes once were, serialized. */
+    static Remote decode(byte[] contents) {
+        if (Codec.isSerialized(contents)) {
+            return Utils.deserialize(contents, Remote.class);
+        }
+        Codec.Reader in = new Codec.Reader(contents, Codec.REMOTE);
+        String name = in.string();
+        return new Remote(name, new File(in.string()));
     }
 
     /**
-     * Checks out all the files tracked by the given FILEMAP.
-     * Removes tracked files that
-     * are not present in that commit.
+     * Checks out all the files tracked by the given FILEMAP, from file
+     * name to the SHA-1 val of a blob in the local repository.
+     * As local checkout does, the plain files of the working directory
+     * that its .gitletignore leaves in, and the files in subdirectories
+     * that PREVIOUS, the files of the commit being replaced, tracks, are
+     * removed unless that commit has them.  Files whose SHA-1 val is the
+     * same in PREVIOUS are only written if missing.
      */
-    public void reset(HashMap<String, String> fileMap) throws IOException {
-        if (cwd.list() != null) {
-            for (File file : cwd.listFiles()) {
-                if (!file.isHidden()
-                        && !file.getName().equals("Makefile")
-                        && !file.getName().endsWith(".iml")) {
-                    file.delete();
+    public void reset(HashMap<String, String> fileMap,
+                      HashMap<String, String> previous) throws IOException {
+        Checkout checkout = new Checkout(cwd, repo, null);
+        Ignore ignore = Ignore.fromFile(cwd);
+        File[] files = cwd.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile() && !ignore.matches(file.getName(), false)
+                        && !fileMap.containsKey(file.getName())) {
+                    checkout.delete(file.getName());
                 }
             }
         }
+        for (String name : previous.keySet()) {
+            if (name.indexOf('/') >= 0 && !fileMap.containsKey(name)
+                    && Utils.join(cwd, name).isFile()) {
+                checkout.delete(name);
+            }
+        }
         for (String name : fileMap.keySet()) {
-            Utils.join(cwd, name).createNewFile();
-            Utils.writeContents(Utils.join(cwd,
-                    name), fileMap.get(name));
+            String shaVal = fileMap.get(name);
+            if (!shaVal.equals(previous.get(name))
+                    || !Utils.join(cwd, name).isFile()) {
+                checkout.write(name, shaVal);
+            } else {
+                checkout.keep(name);
+            }
         }
+        checkout.run();
     }
     /** remote name.
      * @return name . */
@@ -167,4 +221,11 @@ public class Remote implements Serializable {
 
     /** Name of the remote. */
     private String _name;
+    /** Object store of the remote, once opened. */
+    private transient ObjectStore _store;
+    /** Journal of the remote's repository, once opened. */
+    private transient Journal _journal;
+    /** Serialization version, kept from the original class so that
+     *  remotes added before methods were added still load. */
+    private static final long serialVersionUID = 9023914253254526484L;
 }
@@ -0,0 +1,167 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/** A lock on a repository, held while a command reads or changes it, so
+ *  that gitlet processes run at the same time in one repository neither
+ *  clobber each other's updates nor see them half made.  It is an
+ *  operating system lock on the file lock in the repository, taken with
+ *  FileChannel, and so is dropped when the process ends, however it
+ *  ends.  Any number of processes may hold it shared, or one alone.
+ *
+ *  A process waits for the lock for at most the number of milliseconds
+ *  in the system property gitlet.lock.timeout, ten seconds by default,
+ *  and then fails with an error.  Since an operating system lock belongs
+ *  to a whole process, acquiring a lock that the process already holds
+ *  does not wait; the lock is released when the outermost holder
+ *  closes it.
+ *  @author Aayush Sutaria
+ */
+class RepoLock implements AutoCloseable {
+
+    /** Return a lock on the repository in directory REPO, shared if
+     *  SHARED, waiting for other processes to release it if need be.
+     *  Fails if the process already holds it shared and SHARED is
+     *  false. */
+    static RepoLock acquire(File repo, boolean shared) throws IOException {
+        String key = repo.getCanonicalPath();
+        RepoLock held = HELD.get(key);
+        if (held != null) {
+            if (held.shared() && !shared) {
+                throw new IllegalStateException(
+                        "cannot take a shared repository lock alone");
+            }
+            held._holders += 1;
+            return held;
+        }
+        FileChannel channel = FileChannel.open(
+                Utils.join(repo, LOCK_FILE).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = waitFor(channel, shared);
+        } catch (IOException | RuntimeException excp) {
+            channel.close();
+            throw excp;
+        }
+        RepoLock result = new RepoLock(key, channel, lock);
+        HELD.put(key, result);
+        return result;
+    }
+
+    /** Return true iff this lock is shared with other processes, or was
+     *  given up by tryAlone(). */
+    boolean shared() {
+        return _lock == null || _lock.isShared();
+    }
+
+    /** Hold this lock alone rather than shared if that can be done without
+     *  waiting and no other holder in this process shares it, and return
+     *  true iff it then is.  The operating system cannot convert a shared
+     *  lock, so it is given up first: if this fails, the lock is no longer
+     *  held at all and the repository must not be used again under it. */
+    boolean tryAlone() throws IOException {
+        if (!shared()) {
+            return true;
+        }
+        if (_lock == null || _holders > 1) {
+            return false;
+        }
+        _lock.release();
+        _lock = _channel.tryLock(0, Long.MAX_VALUE, false);
+        return _lock != null;
+    }
+
+    /** Also lock the repository in directory REPO, shared if SHARED,
+     *  until this lock is released. */
+    void include(File repo, boolean shared) throws IOException {
+        _included.add(acquire(repo, shared));
+    }
+
+    /** Release this lock and those it includes, unless an enclosing
+     *  holder still has it. */
+    @Override
+    public void close() throws IOException {
+        _holders -= 1;
+        if (_holders > 0) {
+            return;
+        }
+        try {
+            for (RepoLock other : _included) {
+                other.close();
+            }
+            _included.clear();
+        } finally {
+            HELD.remove(_key);
+            _channel.close();
+        }
+    }
+
+    /** A lock on the repository whose path is KEY, held as LOCK on
+     *  CHANNEL. */
+    private RepoLock(String key, FileChannel channel, FileLock lock) {
+        _key = key;
+        _channel = channel;
+        _lock = lock;
+        _holders = 1;
+    }
+
+    /** Lock the whole of CHANNEL, shared if SHARED, retrying at growing
+     *  intervals until the timeout, when the command fails. */
+    private static FileLock waitFor(FileChannel channel, boolean shared)
+            throws IOException {
+        long deadline = System.currentTimeMillis()
+            + Long.getLong(TIMEOUT_PROPERTY, DEFAULT_TIMEOUT);
+        long pause = MIN_PAUSE;
+        while (true) {
+            FileLock lock = channel.tryLock(0, Long.MAX_VALUE, shared);
+            if (lock != null) {
+                return lock;
+            }
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                Main.error("Timed out waiting for another gitlet command "
+                           + "to finish with the repository.");
+            }
+            try {
+                Thread.sleep(Math.min(pause, left));
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted waiting for lock", excp);
+            }
+            pause = Math.min(2 * pause, MAX_PAUSE);
+        }
+    }
+
+    /** Name of the lock file in a repository. */
+    static final String LOCK_FILE = "lock";
+    /** System property giving the longest wait for a lock, in
+     *  milliseconds. */
+    static final String TIMEOUT_PROPERTY = "gitlet.lock.timeout";
+    /** Longest wait for a lock if the property is not set. */
+    private static final long DEFAULT_TIMEOUT = 10000;
+    /** Shortest and longest pause between attempts, in milliseconds. */
+    private static final long MIN_PAUSE = 2, MAX_PAUSE = 100;
+
+    /** The locks this process holds, by canonical repository path. */
+    private static final HashMap<String, RepoLock> HELD = new HashMap<>();
+
+    /** Canonical path of the repository. */
+    private final String _key;
+    /** Open on the lock file while the lock is held. */
+    private final FileChannel _channel;
+    /** The operating system lock, or null once given up. */
+    private FileLock _lock;
+    /** Locks on other repositories released with this one. */
+    private final List<RepoLock> _included = new ArrayList<>();
+    /** Number of holders that have not yet closed this lock. */
+    private int _holders;
+}
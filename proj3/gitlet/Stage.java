@@ -1,12 +1,15 @@
 package gitlet;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Set;
 
-/** Class Stage, the staging area.
+/** Class Stage, the staging area.  It is stored in the binary format of
+ *  Codec; stages stored serialized, as they once were, are still read.
  * @author Aayush Sutaria
  */
 public class Stage implements Serializable {
@@ -46,6 +49,23 @@ public class Stage implements Serializable {
         update();
     }
 
+    /** Add BLOBS to staging tree, as by addBlob.
+     * @param blobs blobs */
+    public void addBlobs(Collection<Blob> blobs) throws IOException {
+        if (blobs.isEmpty()) {
+            return;
+        }
+        if (!hasStagingTree()) {
+            Tree cur = new Tree();
+            cur.setTracked(_trackedFiles);
+            _stagingTree.add(cur);
+        }
+        for (Blob blob : blobs) {
+            _stagingTree.get(0).addBlob(blob);
+        }
+        update();
+    }
+
     /** Mark file with "name" for removal.
      * @param name of file to mark */
     public void remove(String name) {
@@ -66,6 +86,17 @@ public class Stage implements Serializable {
         }
     }
 
+    /** Unstage the files NAMES that are staged.
+     * @param names files to unstage */
+    public void unStage(Collection<String> names) {
+        if (hasStagingTree() && !names.isEmpty()) {
+            for (String name : names) {
+                _stagingTree.get(0).unStage(name);
+            }
+            update();
+        }
+    }
+
     /** If tracked files have all been staged, returns true. */
     public boolean allStaged() {
         if (!hasStagingTree()) {
@@ -91,12 +122,63 @@ public class Stage implements Serializable {
         saveStage(_name);
     }
 
-    /** Save stage as a branch to a file.
+    /** Save a copy of this stage as the stage of branch B.  This stage
+     *  keeps its own name, so that it is still saved as its branch's
+     *  when it is kept in memory for later commands.  The write is made
+     *  by the journal.
      * @param b is a branch */
     public void saveStage(String b) throws IOException {
-        Utils.join(Main.STAGE, b).createNewFile();
-        _name = b;
-        Utils.writeObject(Utils.join(Main.STAGE, b), this);
+        Journal.local().write(Utils.join(Main.STAGE, b), encode(b));
+    }
+
+    /** Return this stage in the binary format of Codec.  The tracked
+     *  files are left out when they are those of the staging tree, as
+     *  they are after every change. */
+    byte[] encode() {
+        return encode(_name);
+    }
+
+    /** Return this stage, as the stage of branch NAME, as by encode(). */
+    private byte[] encode(String name) {
+        Codec.Writer out = new Codec.Writer(Codec.STAGE).string(name)
+            .varint(_stagingTree.size());
+        for (Tree tree : _stagingTree) {
+            tree.write(out);
+        }
+        if (hasStagingTree()
+            && _trackedFiles.equals(_stagingTree.get(0).getTracked())) {
+            out.varint(0);
+        } else {
+            out.varint(1).files(_trackedFiles);
+        }
+        return out.toByteArray();
+    }
+
+    /** Return the stage stored as CONTENTS, in the binary format of Codec
+     *  or, as stages once were, serialized. */
+    static Stage decode(byte[] contents) {
+        if (Codec.isSerialized(contents)) {
+            return Utils.deserialize(contents, Stage.class);
+        }
+        Codec.Reader in = new Codec.Reader(contents, Codec.STAGE);
+        Stage stage = new Stage("");
+        stage._name = in.string();
+        for (int k = in.count(); k > 0; k -= 1) {
+            stage._stagingTree.add(Tree.read(in));
+        }
+        if (in.varint() == 0 && stage.hasStagingTree()) {
+            stage._trackedFiles.putAll(stage.getTree().getTracked());
+        } else {
+            stage._trackedFiles = in.files();
+        }
+        return stage;
+    }
+
+    /** Return the stage stored in FILE.
+     * @param file stage file
+     * @return stage */
+    static Stage fromFile(File file) {
+        return decode(Utils.readContents(file));
     }
 
     /** Takes in and deserializes a stage of branch b.
@@ -108,8 +190,7 @@ public class Stage implements Serializable {
             throw new IllegalArgumentException(
                     "No stage of branch with this name found.");
         }
-        return Utils.readObject(Utils.join(Main.STAGE,
-                b.replace("/", "-")), Stage.class);
+        return fromFile(Utils.join(Main.STAGE, b.replace("/", "-")));
     }
 
     /** Return hashmap of of staged files. key:file name
@@ -151,5 +232,8 @@ public class Stage implements Serializable {
     private HashMap<String, String> _trackedFiles;
     /** Tree in staging area.  */
     private LinkedList<Tree> _stagingTree;
+    /** Serialization version, kept from the original class so that
+     *  staging areas saved before methods were added still load. */
+    private static final long serialVersionUID = -5282198812337668848L;
 }
 
@@ -0,0 +1,271 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** The stat cache (.gitlet/index): for each working file whose SHA-1 val
+ *  has been computed, the file's size, modification time and file key
+ *  (the inode on Unix) at that moment.  A file whose stat data is
+ *  unchanged since then need not be read and hashed again.
+ *
+ *  A file modified within the file system's timestamp granularity of
+ *  being hashed can change without its stat data changing, so an entry
+ *  whose modification time is not safely older than the moment it was
+ *  recorded (the "racy" case) is never trusted.
+ *  @author Aayush Sutaria
+ */
+class StatIndex {
+
+    /** A stat cache backed by FILE. */
+    StatIndex(File file) {
+        _file = file;
+        _entries = new TreeMap<>();
+        if (file.exists()) {
+            _written = file.lastModified();
+            String contents = Utils.readContentsAsString(file);
+            for (String line : contents.split("\n")) {
+                String[] fields = line.split("\t", FIELDS);
+                if (fields.length == FIELDS) {
+                    Entry e = new Entry(fields[1], Long.parseLong(fields[2]),
+                                        Long.parseLong(fields[3]), fields[4]);
+                    e.racy = e.mtime >= _written - RACY_MILLIS;
+                    _entries.put(fields[0], e);
+                }
+            }
+        }
+    }
+
+    /** Return the stat cache of the current repository. */
+    static StatIndex fromFile() {
+        return new StatIndex(Utils.join(Main.REPO, "index"));
+    }
+
+    /** Return the SHA-1 val of the contents of the working file NAME,
+     *  hashing it only if its stat data changed since it was last hashed.
+     *  Returns null if there is no such file. */
+    String shaOf(String name) {
+        File f = Utils.join(Main.CWD, name);
+        BasicFileAttributes attrs = stat(f);
+        if (attrs == null) {
+            return null;
+        }
+        String cached = cachedSha(name, attrs);
+        if (cached != null) {
+            return cached;
+        }
+        String shaVal = new Blob(name).getShaVal();
+        record(name, shaVal, attrs);
+        return shaVal;
+    }
+
+    /** Return the SHA-1 vals of the contents of the working files NAMES,
+     *  in order, as by shaOf().  The files not known to be unchanged are
+     *  read and hashed on the worker threads. */
+    String[] shaOfAll(List<String> names) throws IOException {
+        String[] result = new String[names.size()];
+        BasicFileAttributes[] attrs = new BasicFileAttributes[result.length];
+        ArrayList<Integer> misses = new ArrayList<>();
+        for (int k = 0; k < result.length; k += 1) {
+            String name = names.get(k);
+            attrs[k] = stat(Utils.join(Main.CWD, name));
+            if (attrs[k] != null) {
+                result[k] = cachedSha(name, attrs[k]);
+                if (result[k] == null) {
+                    misses.add(k);
+                }
+            }
+        }
+        WorkerPool.forEach(misses.size(), i -> {
+            int k = misses.get(i);
+            result[k] = new Blob(names.get(k)).getShaVal();
+        });
+        for (int k : misses) {
+            record(names.get(k), result[k], attrs[k]);
+        }
+        return result;
+    }
+
+    /** Return the SHA-1 val of the contents of the working file NAME if
+     *  it is known without reading the file, else null. */
+    String cleanShaOf(String name) {
+        BasicFileAttributes attrs = stat(Utils.join(Main.CWD, name));
+        return attrs == null ? null : cachedSha(name, attrs);
+    }
+
+    /** Return a Blob for the working file NAME, stored in the object
+     *  store.  Hashing and storing are skipped if NAME is unchanged since
+     *  it was last hashed and its blob is already stored. */
+    Blob store(String name) throws IOException {
+        File f = Utils.join(Main.CWD, name);
+        BasicFileAttributes attrs = stat(f);
+        String cached = attrs == null ? null : cachedSha(name, attrs);
+        if (cached != null && ObjectStore.local().contains(cached)) {
+            return new Blob(name, cached);
+        }
+        Blob blob = Blob.store(name);
+        if (attrs != null) {
+            record(name, blob.getShaVal(), attrs);
+        }
+        return blob;
+    }
+
+    /** Return Blobs for the working files NAMES, in order, stored in the
+     *  object store as by store().  The files not known to be unchanged
+     *  are each read, hashed, compressed and written in one pass, on the
+     *  worker threads. */
+    List<Blob> storeAll(List<String> names) throws IOException {
+        Blob[] blobs = new Blob[names.size()];
+        BasicFileAttributes[] attrs = new BasicFileAttributes[blobs.length];
+        ArrayList<Integer> misses = new ArrayList<>();
+        ObjectStore store = ObjectStore.local();
+        for (int k = 0; k < blobs.length; k += 1) {
+            String name = names.get(k);
+            attrs[k] = stat(Utils.join(Main.CWD, name));
+            String cached = attrs[k] == null ? null
+                : cachedSha(name, attrs[k]);
+            if (cached != null && store.contains(cached)) {
+                blobs[k] = new Blob(name, cached);
+            } else {
+                misses.add(k);
+            }
+        }
+        WorkerPool.forEach(misses.size(), i -> {
+            int k = misses.get(i);
+            blobs[k] = Blob.store(names.get(k));
+        });
+        for (int k : misses) {
+            if (attrs[k] != null) {
+                record(names.get(k), blobs[k].getShaVal(), attrs[k]);
+            }
+        }
+        return Arrays.asList(blobs);
+    }
+
+    /** Note that the working file NAME was just written with the contents
+     *  of the blob SHAVAL, as by checkout. */
+    void written(String name, String shaVal) {
+        BasicFileAttributes attrs = stat(Utils.join(Main.CWD, name));
+        if (attrs != null) {
+            record(name, shaVal, attrs);
+        }
+    }
+
+    /** Forget the working file NAME. */
+    void remove(String name) {
+        if (_entries.remove(name) != null) {
+            _changed = true;
+        }
+    }
+
+    /** Return true iff an entry changed since this cache was read. */
+    boolean changed() {
+        return _changed;
+    }
+
+    /** Write this cache back to its file if it changed. */
+    void save() throws IOException {
+        if (!_changed) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        for (Map.Entry<String, Entry> e : _entries.entrySet()) {
+            Entry v = e.getValue();
+            lines.append(e.getKey()).append('\t').append(v.shaVal)
+                .append('\t').append(v.racy ? -1 : v.size)
+                .append('\t').append(v.mtime)
+                .append('\t').append(v.key).append('\n');
+        }
+        Journal.local().write(_file,
+                lines.toString().getBytes(StandardCharsets.UTF_8));
+        _changed = false;
+    }
+
+    /** Return the SHA-1 val recorded for NAME if ATTRS still match the
+     *  recorded stat data and the entry is not racy, else null. */
+    private String cachedSha(String name, BasicFileAttributes attrs) {
+        Entry e = _entries.get(name);
+        if (e == null || e.racy || e.size != attrs.size()
+            || e.mtime != attrs.lastModifiedTime().toMillis()
+            || !e.key.equals(keyOf(attrs))) {
+            return null;
+        }
+        return e.shaVal;
+    }
+
+    /** Record that the file NAME with stat data ATTRS has contents
+     *  SHAVAL. */
+    private void record(String name, String shaVal,
+                        BasicFileAttributes attrs) {
+        Entry e = new Entry(shaVal, attrs.size(),
+                            attrs.lastModifiedTime().toMillis(),
+                            keyOf(attrs));
+        e.racy = e.mtime >= System.currentTimeMillis() - RACY_MILLIS;
+        _entries.put(name, e);
+        _changed = true;
+    }
+
+    /** Return the attributes of regular file F, or null if F is not a
+     *  regular file. */
+    private static BasicFileAttributes stat(File f) {
+        try {
+            BasicFileAttributes attrs =
+                Files.readAttributes(f.toPath(), BasicFileAttributes.class);
+            return attrs.isRegularFile() ? attrs : null;
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Return the file key of ATTRS as a String, or "-" where the file
+     *  system has none. */
+    private static String keyOf(BasicFileAttributes attrs) {
+        Object key = attrs.fileKey();
+        return key == null ? "-" : key.toString().replace('\t', ' ');
+    }
+
+    /** Stat data and SHA-1 val recorded for one file. */
+    private static class Entry {
+        /** An entry for contents SHAVAL with SIZE, MTIME and KEY. */
+        Entry(String shaVal, long size, long mtime, String key) {
+            this.shaVal = shaVal;
+            this.size = size;
+            this.mtime = mtime;
+            this.key = key;
+        }
+
+        /** SHA-1 val of the contents. */
+        private final String shaVal;
+        /** Size in bytes. */
+        private final long size;
+        /** Modification time in milliseconds. */
+        private final long mtime;
+        /** File key. */
+        private final String key;
+        /** True if the file may have changed without its stat data
+         *  changing. */
+        private boolean racy;
+    }
+
+    /** Fields per line: name, SHA-1 val, size, mtime, file key. */
+    private static final int FIELDS = 5;
+    /** Modification times closer than this to the time an entry was
+     *  recorded are not trusted.  Covers coarse file-system clocks. */
+    private static final long RACY_MILLIS = 2000;
+
+    /** File backing this cache. */
+    private final File _file;
+    /** Entries by working file name. */
+    private final TreeMap<String, Entry> _entries;
+    /** Time _file was last written, when read. */
+    private long _written;
+    /** True if an entry changed since this cache was read. */
+    private boolean _changed;
+}
@@ -0,0 +1,162 @@
+package gitlet;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** The objects one object store is missing from another's history, as
+ *  found by fetch and push.  Starting from the commit wanted, the sending
+ *  store's history is walked back until it reaches commits the receiving
+ *  store already has; the commits passed, and those of their trees and
+ *  blobs the receiver lacks, are then sent in one pass.  A directory the
+ *  receiver already has is not looked into, since it has everything in
+ *  it too.  Of a blob stored as a list of chunks, only the chunks the
+ *  receiver lacks are sent.  A large batch is sent as a single packfile
+ *  rather than as loose objects.
+ *  @author Aayush Sutaria
+ */
+class Transfer {
+
+    /** A transfer of objects from the store FROM to the store TO. */
+    Transfer(ObjectStore from, ObjectStore to) {
+        _from = from;
+        _to = to;
+    }
+
+    /** Find the objects needed to give the receiver the commit WANT and
+     *  its history. */
+    void want(String want) {
+        HashSet<String> seen = new HashSet<>();
+        ArrayDeque<String> fringe = new ArrayDeque<>();
+        fringe.add(want);
+        while (!fringe.isEmpty()) {
+            String shaVal = fringe.poll();
+            if (!seen.add(shaVal) || _to.contains(shaVal)) {
+                continue;
+            }
+            Commit c = Commit.fromStore(_from, shaVal);
+            _commits.add(shaVal);
+            if (c.isLegacy()) {
+                _legacy.add(c);
+                wantBlobs(c.getTree().getTracked(), "");
+            } else {
+                _objects.put(shaVal, "");
+                wantTree(c.getTreeShaVal(), "");
+            }
+            if (c.getParentShaVal() != null) {
+                fringe.add(c.getParentShaVal());
+            }
+            if (c.getSecondParentShaVal() != null) {
+                fringe.add(c.getSecondParentShaVal());
+            }
+        }
+    }
+
+    /** Find the objects of the tree SHAVAL, whose files have paths
+     *  starting with PREFIX, that the receiver is missing.  A directory
+     *  the receiver already has is skipped with everything in it. */
+    private void wantTree(String shaVal, String prefix) {
+        if (_objects.containsKey(shaVal) || _to.contains(shaVal)) {
+            return;
+        }
+        _objects.put(shaVal, "");
+        List<Tree.Entry> entries = Tree.entries(_from, shaVal);
+        if (entries == null) {
+            wantBlobs(Tree.fromStore(_from, shaVal).getTracked(), prefix);
+            return;
+        }
+        for (Tree.Entry e : entries) {
+            if (e.isTree) {
+                wantTree(e.shaVal, prefix + e.name + "/");
+            } else if (!_objects.containsKey(e.shaVal)
+                       && !_to.contains(e.shaVal)) {
+                _objects.put(e.shaVal, prefix + e.name);
+            }
+        }
+    }
+
+    /** Find the blobs among the FILES, with paths prefixed by PREFIX, that
+     *  the receiver is missing. */
+    private void wantBlobs(Map<String, String> files, String prefix) {
+        for (Map.Entry<String, String> e : files.entrySet()) {
+            if (!_objects.containsKey(e.getValue())
+                && !_to.contains(e.getValue())) {
+                _objects.put(e.getValue(), prefix + e.getKey());
+            }
+        }
+    }
+
+    /** Return the SHA-1 vals of the commits the receiver is missing,
+     *  oldest first. */
+    List<String> commits() {
+        List<String> result = new ArrayList<>(_commits);
+        Collections.reverse(result);
+        return result;
+    }
+
+    /** Send all missing objects to the receiver.  Returns the number of
+     *  objects sent. */
+    int send() throws IOException {
+        for (Commit c : _legacy) {
+            c.getTree().saveTree(_to);
+            _to.writeLoose(c.getCommitShaVal(), c.encode());
+        }
+        List<String> lists = wantChunks();
+        if (_objects.size() >= UNPACK_LIMIT) {
+            new PackWriter(_from, _objects).send(_to, _objects.keySet());
+        } else {
+            for (String shaVal : _objects.keySet()) {
+                _to.copyFrom(_from, shaVal);
+            }
+        }
+        for (String shaVal : lists) {
+            _to.copyFrom(_from, shaVal);
+        }
+        return _objects.size() + lists.size() + 2 * _legacy.size();
+    }
+
+    /** Replace each missing blob stored as a list of chunks by the chunks
+     *  the receiver lacks, and return the lists, which are sent after
+     *  them as they are. */
+    private List<String> wantChunks() throws IOException {
+        List<String> lists = new ArrayList<>();
+        for (String shaVal : new ArrayList<>(_objects.keySet())) {
+            String name = _objects.get(shaVal);
+            List<String> chunks = name.isEmpty() ? null
+                : _from.chunks(shaVal);
+            if (chunks == null) {
+                continue;
+            }
+            _objects.remove(shaVal);
+            lists.add(shaVal);
+            for (String chunk : chunks) {
+                if (!_to.contains(chunk)) {
+                    _objects.putIfAbsent(chunk, name);
+                }
+            }
+        }
+        return lists;
+    }
+
+    /** Batches of at least this many objects are sent as a packfile. */
+    private static final int UNPACK_LIMIT = 100;
+
+    /** Sending store. */
+    private final ObjectStore _from;
+    /** Receiving store. */
+    private final ObjectStore _to;
+    /** Missing commits, newest first. */
+    private final List<String> _commits = new ArrayList<>();
+    /** Missing commits in the old format, which are converted as they
+     *  are sent. */
+    private final List<Commit> _legacy = new ArrayList<>();
+    /** Other missing objects, in the order found, with the file name of
+     *  each blob ("" for commits and trees). */
+    private final LinkedHashMap<String, String> _objects =
+        new LinkedHashMap<>();
+}
@@ -2,11 +2,26 @@ package gitlet;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
+import java.util.TreeMap;
 import java.util.TreeSet;
 
 /** Tree Class which points to specific files using Blobs!
+ *  In memory a tree maps each file's path, with "/" between directory
+ *  names, to the SHA-1 val of its blob.  It is stored as one object per
+ *  directory: a listing of lines "blob SHA NAME" or "tree SHA NAME",
+ *  sorted by name, with the names of directories ordered as if they
+ *  ended in "/", and named by the SHA-1 val of the listing.  A directory
+ *  whose contents did not change keeps its SHA-1 val, so its object is
+ *  shared by every commit that has it.  Trees stored whole as serialized
+ *  objects, before directories were supported, are still read.
  * @author Aayush Sutaria
  */
 
@@ -17,7 +32,7 @@ public class Tree implements Serializable {
         _stagedFiles = new HashMap<>();
         _stagedFilesName = new TreeSet<>();
         _removeSet = new TreeSet<>();
-        _treeShaVal = "no tree";
+        _treeShaVal = shaOf(_trackedFiles);
     }
     /** Add blob to tree which is waiting for commitment.
      * @param blob blob */
@@ -48,18 +63,367 @@ public class Tree implements Serializable {
     /** commit then unstage files. */
     public void commit() {
         _trackedFiles.putAll(_stagedFiles);
-        Object [] shaVal = _trackedFiles.keySet().toArray();
-        _treeShaVal = Utils.sha1(shaVal);
+        _listings = new HashMap<>();
+        _treeShaVal = listings(_trackedFiles, _listings);
         _removeSet.clear();
         _stagedFilesName.clear();
         _stagedFiles.clear();
     }
 
 
+    /** Return the SHA-1 val of the root directory listing of the files
+     *  TRACKED. */
+    private static String shaOf(HashMap<String, String> tracked) {
+        return listings(tracked, null);
+    }
+
+    /** Return the SHA-1 val of the root directory listing of the files
+     *  TRACKED, putting the listing of every directory into LISTINGS, by
+     *  SHA-1 val, if LISTINGS is not null.  The paths are sorted once;
+     *  with directory names ordered as if they ended in "/", that puts
+     *  the entries of every directory in listing order, so each listing
+     *  is finished as soon as the paths move past it. */
+    private static String listings(HashMap<String, String> tracked,
+                                   HashMap<String, byte[]> listings) {
+        String[] paths = tracked.keySet().toArray(new String[0]);
+        Arrays.sort(paths);
+        ArrayList<StringBuilder> open = new ArrayList<>();
+        open.add(new StringBuilder());
+        String dir = "";
+        for (String path : paths) {
+            while (!path.startsWith(dir)) {
+                dir = close(open, dir, listings);
+            }
+            int start = dir.length();
+            for (int end = path.indexOf('/', start); end >= 0;
+                 end = path.indexOf('/', start)) {
+                open.add(new StringBuilder());
+                start = end + 1;
+            }
+            dir = path.substring(0, start);
+            open.get(open.size() - 1).append(BLOB).append(' ')
+                .append(tracked.get(path)).append(' ')
+                .append(path, start, path.length()).append('\n');
+        }
+        while (!dir.isEmpty()) {
+            dir = close(open, dir, listings);
+        }
+        return finish(open.get(0), listings);
+    }
+
+    /** Finish the listing of the innermost directory DIR in OPEN, adding
+     *  its entry to the listing of its parent, and return the path of the
+     *  parent.  The listing is put into LISTINGS if not null. */
+    private static String close(ArrayList<StringBuilder> open, String dir,
+                                HashMap<String, byte[]> listings) {
+        String shaVal = finish(open.remove(open.size() - 1), listings);
+        int start = dir.lastIndexOf('/', dir.length() - 2) + 1;
+        open.get(open.size() - 1).append(TREE).append(' ').append(shaVal)
+            .append(' ').append(dir, start, dir.length() - 1).append('\n');
+        return dir.substring(0, start);
+    }
+
+    /** Return the SHA-1 val of the listing TEXT, putting it into LISTINGS
+     *  if not null. */
+    private static String finish(StringBuilder text,
+                                 HashMap<String, byte[]> listings) {
+        byte[] listing = text.toString().getBytes(StandardCharsets.UTF_8);
+        String shaVal = Utils.sha1(listing);
+        if (listings != null) {
+            listings.put(shaVal, listing);
+        }
+        return shaVal;
+    }
+
+    /** One line of a stored directory listing. */
+    static class Entry {
+        /** An entry for NAME, with SHA-1 val SHAVAL, which is a
+         *  subdirectory iff ISTREE. */
+        Entry(String name, String shaVal, boolean isTree) {
+            this.name = name;
+            this.shaVal = shaVal;
+            this.isTree = isTree;
+        }
+
+        /** File or directory name. */
+        final String name;
+        /** SHA-1 val of its blob or listing. */
+        final String shaVal;
+        /** True iff this is a subdirectory. */
+        final boolean isTree;
+    }
+
+    /** Return the entries of the directory listing SHAVAL in STORE, or
+     *  null if SHAVAL is a tree stored whole in the old format. */
+    static List<Entry> entries(ObjectStore store, String shaVal) {
+        if (!store.contains(shaVal)) {
+            throw new IllegalArgumentException(
+                    "No tree file with that name found.");
+        }
+        return entries(store.read(shaVal));
+    }
+
+    /** Return the entries of the directory listing LISTING, or null if it
+     *  is a tree stored whole in the old format. */
+    private static List<Entry> entries(byte[] listing) {
+        if (isSerialized(listing)) {
+            return null;
+        }
+        List<Entry> result = new ArrayList<>();
+        String text = new String(listing, StandardCharsets.UTF_8);
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            String line = text.substring(start, end);
+            int sep = line.indexOf(' ', BLOB.length() + 1);
+            result.add(new Entry(line.substring(sep + 1),
+                                 line.substring(line.indexOf(' ') + 1, sep),
+                                 line.startsWith(TREE)));
+            start = end + 1;
+        }
+        return result;
+    }
+
     /** Save tree to a file. */
     public void saveTree() throws IOException {
-        Utils.join(Main.OBJECT, getTreeShaVal()).createNewFile();
-        Utils.writeObject(Utils.join(Main.OBJECT, getTreeShaVal()), this);
+        saveTree(ObjectStore.local());
+    }
+
+    /** Save the listing of every directory of this tree that STORE does
+     *  not have yet to STORE. */
+    void saveTree(ObjectStore store) throws IOException {
+        HashMap<String, byte[]> listings = _listings;
+        if (listings == null || !listings.containsKey(_treeShaVal)) {
+            listings = new HashMap<>();
+            listings(_trackedFiles, listings);
+        }
+        for (Map.Entry<String, byte[]> e : listings.entrySet()) {
+            if (!store.contains(e.getKey())) {
+                store.writeLoose(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /** Return the blob SHA-1 vals, by path, of those of the files PATHS
+     *  that are in the tree SHAVAL.  Only the directories holding them
+     *  are read. */
+    static HashMap<String, String> lookup(String shaVal,
+                                          Set<String> paths) {
+        HashMap<String, String> result = new HashMap<>();
+        ObjectStore store = ObjectStore.local();
+        HashMap<String, HashMap<String, Entry>> dirs = new HashMap<>();
+        for (String path : paths) {
+            String dir = shaVal;
+            String[] names = path.split("/");
+            for (int i = 0; dir != null && i < names.length; i += 1) {
+                HashMap<String, Entry> byName = dirs.get(dir);
+                if (byName == null) {
+                    List<Entry> entries = entries(store, dir);
+                    if (entries == null) {
+                        HashMap<String, String> flat =
+                            fromStore(store, shaVal).getTracked();
+                        for (String p : paths) {
+                            if (flat.containsKey(p)) {
+                                result.put(p, flat.get(p));
+                            }
+                        }
+                        return result;
+                    }
+                    byName = new HashMap<>();
+                    for (Entry e : entries) {
+                        byName.put(e.name, e);
+                    }
+                    dirs.put(dir, byName);
+                }
+                Entry e = byName.get(names[i]);
+                dir = null;
+                if (e == null) {
+                    break;
+                } else if (i == names.length - 1) {
+                    if (!e.isTree) {
+                        result.put(path, e.shaVal);
+                    }
+                } else if (e.isTree) {
+                    dir = e.shaVal;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the blob SHA-1 vals, by path, of those of the files PATHS
+     *  that commit C tracks.  The tree of a commit read from the old
+     *  format is only in memory, so its files are looked up there. */
+    static HashMap<String, String> lookup(Commit c, Set<String> paths) {
+        if (!c.isLegacy()) {
+            return lookup(c.getTreeShaVal(), paths);
+        }
+        HashMap<String, String> result = new HashMap<>();
+        HashMap<String, String> flat = c.getBlobFiles();
+        for (String p : paths) {
+            if (flat.containsKey(p)) {
+                result.put(p, flat.get(p));
+            }
+        }
+        return result;
+    }
+
+    /** Return the paths of the files whose blobs differ between commits
+     *  A and B, either of which may be null for no files.  Commits read
+     *  from the old format, whose trees are only in memory, are compared
+     *  file by file. */
+    static Set<String> changedPaths(Commit a, Commit b) {
+        if (a != null && a.isLegacy() || b != null && b.isLegacy()) {
+            Set<String> result = new TreeSet<>();
+            changedFiles(a == null ? new HashMap<>() : a.getBlobFiles(),
+                         b == null ? new HashMap<>() : b.getBlobFiles(),
+                         "", result);
+            return result;
+        }
+        return changedPaths(a == null ? null : a.getTreeShaVal(),
+                            b == null ? null : b.getTreeShaVal());
+    }
+
+    /** Return the paths of the files whose blobs differ between the
+     *  trees with SHA-1 vals A and B, either of which may be null for an
+     *  empty tree.  Directories with the same SHA-1 val in both are not
+     *  looked into. */
+    static Set<String> changedPaths(String a, String b) {
+        Set<String> result = new TreeSet<>();
+        changedPaths(a, b, "", result);
+        return result;
+    }
+
+    /** Add to RESULT the paths, each prefixed by PREFIX, of the files
+     *  whose blobs differ between the trees A and B. */
+    private static void changedPaths(String a, String b, String prefix,
+                                     Set<String> result) {
+        if (a != null && a.equals(b)) {
+            return;
+        }
+        List<Entry> as = a == null ? new ArrayList<>()
+            : entries(ObjectStore.local(), a);
+        List<Entry> bs = b == null ? new ArrayList<>()
+            : entries(ObjectStore.local(), b);
+        if (as == null || bs == null) {
+            changedFiles(a == null ? new HashMap<>()
+                         : Tree.fromFile(a).getTracked(),
+                         b == null ? new HashMap<>()
+                         : Tree.fromFile(b).getTracked(), prefix, result);
+            return;
+        }
+        TreeMap<String, Entry[]> byName = new TreeMap<>();
+        for (Entry e : as) {
+            byName.computeIfAbsent(e.name, k -> new Entry[2])[0] = e;
+        }
+        for (Entry e : bs) {
+            byName.computeIfAbsent(e.name, k -> new Entry[2])[1] = e;
+        }
+        for (Entry[] pair : byName.values()) {
+            Entry x = pair[0], y = pair[1];
+            String path = prefix + (x != null ? x.name : y.name);
+            String xTree = x != null && x.isTree ? x.shaVal : null;
+            String yTree = y != null && y.isTree ? y.shaVal : null;
+            if (xTree != null || yTree != null) {
+                changedPaths(xTree, yTree, path + "/", result);
+            }
+            boolean xBlob = x != null && !x.isTree,
+                yBlob = y != null && !y.isTree;
+            if ((xBlob || yBlob)
+                && !(xBlob && yBlob && x.shaVal.equals(y.shaVal))) {
+                result.add(path);
+            }
+        }
+    }
+
+    /** Add to RESULT the paths, each prefixed by PREFIX, of the files
+     *  whose blobs differ between the file maps LEFT and RIGHT. */
+    private static void changedFiles(Map<String, String> left,
+                                     Map<String, String> right,
+                                     String prefix, Set<String> result) {
+        for (String name : left.keySet()) {
+            if (!left.get(name).equals(right.get(name))) {
+                result.add(prefix + name);
+            }
+        }
+        for (String name : right.keySet()) {
+            if (!left.containsKey(name)) {
+                result.add(prefix + name);
+            }
+        }
+    }
+
+    /** Takes in SHA-1 and outputs the deserialized tree.
+     * @param shaVal is a SHA-1 value
+     * @return tree from file
+     */
+    public static Tree fromFile(String shaVal) {
+        Tree tree = ObjectCache.shared().get(shaVal, Tree.class);
+        if (tree == null) {
+            tree = fromStore(ObjectStore.local(), shaVal);
+            ObjectCache.shared().put(shaVal, tree, tree._size);
+        }
+        return tree;
+    }
+
+    /** Return the tree with SHA-1 val SHAVAL in STORE. */
+    static Tree fromStore(ObjectStore store, String shaVal) {
+        if (!store.contains(shaVal)) {
+            throw new IllegalArgumentException(
+                    "No tree file with that name found.");
+        }
+        byte[] contents = store.read(shaVal);
+        if (isSerialized(contents)) {
+            Tree tree = Utils.deserialize(contents, Tree.class);
+            tree._size = contents.length;
+            return tree;
+        }
+        Tree tree = new Tree();
+        tree._size = contents.length;
+        tree.load(store, entries(contents), "");
+        tree._treeShaVal = shaVal;
+        return tree;
+    }
+
+    /** Add the files listed in ENTRIES, and in the listings in STORE of
+     *  the subdirectories among them, to this tree, with paths prefixed
+     *  by PREFIX. */
+    private void load(ObjectStore store, List<Entry> entries,
+                      String prefix) {
+        for (Entry e : entries) {
+            if (e.isTree) {
+                byte[] listing = store.read(e.shaVal);
+                _size += listing.length;
+                load(store, entries(listing), prefix + e.name + "/");
+            } else {
+                _trackedFiles.put(prefix + e.name, e.shaVal);
+            }
+        }
+    }
+
+    /** Write this tree, with what is staged in it, to OUT, as part of a
+     *  staging area. */
+    void write(Codec.Writer out) {
+        out.sha(_treeShaVal).files(_trackedFiles).files(_stagedFiles)
+            .names(_stagedFilesName).names(_removeSet);
+    }
+
+    /** Return the tree, with what is staged in it, written to IN by
+     *  write. */
+    static Tree read(Codec.Reader in) {
+        Tree tree = new Tree();
+        tree._treeShaVal = in.sha();
+        tree._trackedFiles = in.files();
+        tree._stagedFiles = in.files();
+        tree._stagedFilesName = in.names();
+        tree._removeSet = in.names();
+        return tree;
+    }
+
+    /** Return true iff CONTENTS is a Java serialization stream. */
+    private static boolean isSerialized(byte[] contents) {
+        return contents.length >= 2 && (contents[0] & 0xff) == SERIAL0
+            && (contents[1] & 0xff) == SERIAL1;
     }
 
     /** Return hashmap of of tracked files.
@@ -93,6 +457,15 @@ public class Tree implements Serializable {
         _trackedFiles.putAll(tracked);
     }
 
+    /** Serialization version, kept from the old format so that staging
+     *  areas written before trees were content-addressed still load. */
+    private static final long serialVersionUID = 8820535761765164108L;
+
+    /** Kinds of lines in a directory listing. */
+    private static final String BLOB = "blob", TREE = "tree";
+    /** First two bytes of a Java serialization stream. */
+    private static final int SERIAL0 = 0xac, SERIAL1 = 0xed;
+
     /** Hashmap of tracked files with key:file name and value:SHA-1 val. */
     private HashMap<String, String> _trackedFiles;
     /** Hashmap of staged files. ey:file name and value:SHA-1 val. */
@@ -103,5 +476,9 @@ public class Tree implements Serializable {
     private SortedSet<String> _removeSet;
     /** SHA-1 val for this tree. */
     private String _treeShaVal;
+    /** Bytes of the listings this tree was read from. */
+    private transient long _size;
+    /** Directory listings by SHA-1 val, as of the last commit, or null. */
+    private transient HashMap<String, byte[]> _listings;
 
 }
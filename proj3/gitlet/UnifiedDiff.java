@@ -0,0 +1,107 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import gitlet.LineDiff.Lines;
+
+/** Writes the differences between versions of files in the unified
+ *  format, with three lines of context around each change and changes
+ *  closer than that shown in one hunk.  Lines are copied from the files
+ *  to the output as bytes.
+ *  @author Aayush Sutaria
+ */
+class UnifiedDiff {
+
+    /** A writer of diffs to OUT. */
+    UnifiedDiff(OutputStream out) {
+        _out = out;
+    }
+
+    /** Write the diff of the file PATH from OLD to NEW, either of which
+     *  is null if the file is absent on that side. */
+    void write(String path, Lines old, Lines now) throws IOException {
+        Lines a = old == null ? EMPTY : old, b = now == null ? EMPTY : now;
+        int[] hunks = _engine.diff(a, b);
+        if (hunks.length == 0) {
+            return;
+        }
+        text("diff --git a/" + path + " b/" + path + "\n");
+        if (a.isBinary() || b.isBinary()) {
+            text("Binary files " + name("a/", path, old) + " and "
+                 + name("b/", path, now) + " differ\n");
+            return;
+        }
+        text("--- " + name("a/", path, old) + "\n");
+        text("+++ " + name("b/", path, now) + "\n");
+        for (int i = 0; i < hunks.length;) {
+            int j = i;
+            while (j + HUNK < hunks.length
+                   && hunks[j + HUNK] - hunks[j + 1] <= 2 * CONTEXT) {
+                j += HUNK;
+            }
+            int aStart = Math.max(0, hunks[i] - CONTEXT),
+                aEnd = Math.min(a.size(), hunks[j + 1] + CONTEXT),
+                bStart = hunks[i + 2] - (hunks[i] - aStart),
+                bEnd = hunks[j + 3] + (aEnd - hunks[j + 1]);
+            text("@@ -" + range(aStart, aEnd - aStart) + " +"
+                 + range(bStart, bEnd - bStart) + " @@\n");
+            int at = aStart;
+            for (int k = i; k <= j; k += HUNK) {
+                lines(' ', a, at, hunks[k]);
+                lines('-', a, hunks[k], hunks[k + 1]);
+                lines('+', b, hunks[k + 2], hunks[k + 3]);
+                at = hunks[k + 1];
+            }
+            lines(' ', a, at, aEnd);
+            i = j + HUNK;
+        }
+    }
+
+    /** Write lines FROM to before TO of LINES, each after MARK. */
+    private void lines(char mark, Lines lines, int from, int to)
+            throws IOException {
+        for (int i = from; i < to; i += 1) {
+            _out.write(mark);
+            lines.write(i, i + 1, _out);
+            if (!lines.endsLine(i + 1)) {
+                text("\n\\ No newline at end of file\n");
+            }
+        }
+    }
+
+    /** Write TEXT. */
+    private void text(String text) throws IOException {
+        _out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Return the name of PATH with PREFIX as shown in headers, or
+     *  /dev/null if the file, LINES, is absent. */
+    private static String name(String prefix, String path, Lines lines) {
+        return lines == null ? "/dev/null" : prefix + path;
+    }
+
+    /** Return the hunk header range of the LENGTH lines from line START,
+     *  counting from 0. */
+    private static String range(int start, int length) {
+        if (length == 0) {
+            return start + ",0";
+        } else if (length == 1) {
+            return Integer.toString(start + 1);
+        }
+        return (start + 1) + "," + length;
+    }
+
+    /** Ints describing each change. */
+    private static final int HUNK = LineDiff.HUNK;
+    /** Lines of context shown around changes. */
+    private static final int CONTEXT = 3;
+    /** A file with no lines. */
+    private static final Lines EMPTY = new Lines(new byte[0]);
+
+    /** Where diffs are written. */
+    private final OutputStream _out;
+    /** The diff engine, reused from file to file. */
+    private final LineDiff _engine = new LineDiff();
+}
@@ -1,10 +1,39 @@
 package gitlet;
 
 import ucb.junit.textui;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
-/** The suite of all JUnit tests for the gitlet package.
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ProcessBuilder.Redirect;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.InflaterInputStream;
+
+/** The suite of all JUnit tests for the gitlet package.  Tests that need
+ *  a repository run gitlet in a JVM of its own, in a new temporary
+ *  directory, as gitlet works on the working directory.
  *  @author Aayush Sutaria
  */
 public class UnitTest {
@@ -15,11 +44,1256 @@ public class UnitTest {
         System.exit(textui.runClasses(UnitTest.class));
     }
 
-    /** A dummy test to avoid complaint. */
+    /** Make the directory of the test. */
+    @Before
+    public void setUp() throws IOException {
+        _dir = Files.createTempDirectory("gitlet-test").toFile();
+    }
+
+    /** Delete the directory of the test. */
+    @After
+    public void tearDown() throws IOException {
+        delete(_dir.toPath());
+    }
+
+    /** The history index lists each commit once, oldest first, one
+     *  SHA-1 val to a line. */
     @Test
-    public void placeholderTest() {
+    public void historyIndexListsCommitsInOrder() throws IOException {
+        gitlet("init");
+        List<String> heads = new ArrayList<>();
+        heads.add(head());
+        for (int k = 1; k <= 3; k += 1) {
+            write("a.txt", k + "\n");
+            gitlet("add", "a.txt");
+            gitlet("commit", "commit " + k);
+            heads.add(head());
+        }
+        assertEquals(heads, Files.readAllLines(
+                new File(_dir, ".gitlet/history/current").toPath()));
     }
 
-}
+    /** A commit keeps only the SHA-1 vals of its parents and tree, and
+     *  reads back from its stored form as it was written. */
+    @Test
+    public void commitReadsBackAsWritten() {
+        Commit c = new Commit(null, "merge", Utils.sha1("one"),
+                              Utils.sha1("two"));
+        Commit d = Commit.decode(c.encode());
+        assertEquals(c.getCommitShaVal(), d.getCommitShaVal());
+        assertEquals(c.getTreeShaVal(), d.getTreeShaVal());
+        assertEquals(Utils.sha1("one"), d.getParentShaVal());
+        assertEquals(Utils.sha1("two"), d.getSecondParentShaVal());
+        assertEquals(c.getTimeStamp(), d.getTimeStamp());
+        assertEquals("merge", d.getMsg());
+        assertTrue(d.isMerged());
+        assertFalse(d.isLegacy() || d.isSerialized());
+    }
+
+    /** Records read back the fields written to them, SHA-1 vals and
+     *  file names in their compact forms included, and are not read if
+     *  cut short or of another kind. */
+    @Test
+    public void codecFieldsReadBack() {
+        String shaVal = Utils.sha1("x");
+        TreeSet<String> names = new TreeSet<>(Arrays.asList(
+                "a/b.txt", "a/bc.txt", "b.txt"));
+        HashMap<String, String> files = new HashMap<>();
+        files.put("d/e.txt", shaVal);
+        files.put("d/f.txt", "not a SHA-1 val");
+        byte[] record = new Codec.Writer(Codec.COMMIT).varint(0)
+            .varint(Byte.MAX_VALUE + 1).varint(-1L).string(null)
+            .string("").string("h\u00e9llo").sha(null).sha(shaVal)
+            .sha(shaVal.toUpperCase()).names(names).files(files)
+            .toByteArray();
+        Codec.Reader in = new Codec.Reader(record, Codec.COMMIT);
+        assertEquals(Codec.VERSION, in.version());
+        assertEquals(0, in.varint());
+        assertEquals(Byte.MAX_VALUE + 1, in.varint());
+        assertEquals(-1L, in.varint());
+        assertNull(in.string());
+        assertEquals("", in.string());
+        assertEquals("h\u00e9llo", in.string());
+        assertNull(in.sha());
+        assertEquals(shaVal, in.sha());
+        assertEquals(shaVal.toUpperCase(), in.sha());
+        assertEquals(names, in.names());
+        assertEquals(files, in.files());
+        byte[] hello = new Codec.Writer(Codec.COMMIT).string("hello")
+            .toByteArray();
+        try {
+            new Codec.Reader(Arrays.copyOf(hello, hello.length - 1),
+                             Codec.COMMIT).string();
+            fail("read a record cut short");
+        } catch (IllegalArgumentException excp) {
+            assertEquals("truncated gitlet record", excp.getMessage());
+        }
+        for (byte[] other : new byte[][] {
+                record, Arrays.copyOf(record, 2) }) {
+            try {
+                new Codec.Reader(other, Codec.STAGE);
+                fail("read a record of another kind");
+            } catch (IllegalArgumentException excp) {
+                assertEquals("not a gitlet record", excp.getMessage());
+            }
+        }
+    }
+
+    /** Staging areas and remotes read back as written, from the binary
+     *  format and from the serialized form they were once stored in. */
+    @Test
+    public void stagesAndRemotesReadBack() {
+        Stage removed = new Stage("master"), clean = new Stage("other");
+        removed.getTrackedFiles().put("a.txt", Utils.sha1("a"));
+        removed.getTrackedFiles().put("d/b.txt", Utils.sha1("b"));
+        clean.getTrackedFiles().putAll(removed.getTrackedFiles());
+        removed.remove("a.txt");
+        for (Stage stage : new Stage[] { removed, clean }) {
+            for (byte[] stored : new byte[][] {
+                    stage.encode(), Utils.serialize(stage) }) {
+                Stage read = Stage.decode(stored);
+                assertEquals(stage.getName(), read.getName());
+                assertEquals(stage.getTrackedFiles(),
+                             read.getTrackedFiles());
+                assertEquals(stage.hasStagingTree(), read.hasStagingTree());
+                assertTrue(!stage.hasStagingTree()
+                           || stage.getRemove().equals(read.getRemove()));
+            }
+        }
+        byte[] remote = new Codec.Writer(Codec.REMOTE).string("R")
+            .string("../r/.gitlet").toByteArray();
+        Remote read = Remote.decode(remote);
+        assertEquals("R", read.getName());
+        assertEquals(new File("../r/.gitlet"), read.getRepo());
+        assertEquals(new File("../r/.gitlet/object"), read.getObject());
+        assertArrayEquals(remote, read.encode());
+        assertEquals(read.getRepo(), Remote.decode(
+                Utils.serialize(read)).getRepo());
+    }
+
+    /** Initial commits made at different times are the same commit, so
+     *  every repository starts from it. */
+    @Test
+    public void initialCommitIsShared() {
+        try {
+            System.setProperty(Commit.TIME_PROPERTY, "0");
+            Commit first = new Commit(null, "initial commit", null, null);
+            System.setProperty(Commit.TIME_PROPERTY, "1000000000");
+            Commit second = new Commit(null, "initial commit", null, null);
+            assertNotEquals(first.getTimeStamp(), second.getTimeStamp());
+            assertEquals(first.getCommitShaVal(),
+                         second.getCommitShaVal());
+        } finally {
+            System.clearProperty(Commit.TIME_PROPERTY);
+        }
+    }
+
+    /** The commit graph numbers generations from the initial commit and
+     *  answers ancestry and merge-base questions over merges. */
+    @Test
+    public void commitGraphFindsAncestors() {
+        try {
+            String root = cached(new Commit(null, "root", null, null)),
+                a = cached(new Commit(null, "a", root, null)),
+                b = cached(new Commit(null, "b", root, null)),
+                merged = cached(new Commit(null, "m", a, b)),
+                c = cached(new Commit(null, "c", a, null));
+            CommitGraph graph = new CommitGraph(new File(_dir, "graph"));
+            assertEquals(3, graph.generation(merged));
+            assertEquals(1, graph.generation(root));
+            assertTrue(graph.isAncestor(b, merged));
+            assertTrue(graph.isAncestor(merged, merged));
+            assertFalse(graph.isAncestor(b, c));
+            assertFalse(graph.isAncestor(merged, a));
+            assertEquals(a, graph.lowestCommonAncestor(merged, c));
+            assertEquals(root, graph.lowestCommonAncestor(b, c));
+            assertEquals(b, graph.lowestCommonAncestor(merged, b));
+        } finally {
+            ObjectCache.shared().clear();
+        }
+    }
+
+    /** add stores a file zlib-compressed, after a header giving its
+     *  size, under the SHA-1 val of its contents, and it reads and
+     *  streams back as it was. */
+    @Test
+    public void blobsStoredCompressed() throws IOException {
+        gitlet("init");
+        String text = "a line repeated many times\n".repeat(REPEATS);
+        write("a.txt", text);
+        gitlet("add", "a.txt");
+        byte[] contents = bytes(text);
+        String shaVal = Utils.sha1(contents);
+        ObjectStore store = new ObjectStore(new File(_dir, ".gitlet/object"));
+        File loose = store.looseFile(shaVal);
+        assertTrue(loose.length() < contents.length);
+        try (InputStream in = new InflaterInputStream(
+                 new FileInputStream(loose))) {
+            assertArrayEquals(bytes("blob " + contents.length + "\0" + text),
+                              in.readAllBytes());
+        }
+        assertArrayEquals(contents, store.read(shaVal));
+        try (InputStream in = store.open(shaVal)) {
+            assertArrayEquals(contents, in.readAllBytes());
+        }
+    }
+
+    /** status trusts the stat cache for a file whose size, modification
+     *  time and inode are as they were when it was hashed, long enough
+     *  after it was modified, and hashes it again once they change. */
+    @Test
+    public void statCacheSkipsUnchangedFiles() throws IOException {
+        gitlet("init");
+        Path file = new File(_dir, "a.txt").toPath();
+        FileTime past = FileTime.fromMillis(System.currentTimeMillis()
+                                            - PAST_MILLIS);
+        write("a.txt", "one\n");
+        Files.setLastModifiedTime(file, past);
+        gitlet("add", "a.txt");
+        gitlet("commit", "one");
+        write("a.txt", "two\n");
+        Files.setLastModifiedTime(file, past);
+        assertFalse(gitlet("status").contains("a.txt (modified)"));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(
+                past.toMillis() + PAST_MILLIS / 2));
+        assertTrue(gitlet("status").contains("a.txt (modified)"));
+    }
+
+    /** status saves the stat data it refreshes for files that checkout
+     *  left racy, unless another command shares the lock when it ends. */
+    @Test
+    public void statusSavesRefreshedStatCache() throws IOException {
+        gitlet("init");
+        write("a.txt", "one\n");
+        gitlet("add", "a.txt");
+        gitlet("commit", "one");
+        String one = head();
+        write("a.txt", "two\n");
+        gitlet("add", "a.txt");
+        gitlet("commit", "two");
+        gitlet("checkout", one, "--", "a.txt");
+        File index = new File(_dir, ".gitlet/index");
+        assertEquals("-1", statField(index, "a.txt", 2));
+        Files.setLastModifiedTime(new File(_dir, "a.txt").toPath(),
+                FileTime.fromMillis(System.currentTimeMillis()
+                                    - PAST_MILLIS));
+        try (RepoLock shared = RepoLock.acquire(new File(_dir, ".gitlet"),
+                                                true)) {
+            assertTrue(gitlet("status").contains("a.txt (modified)"));
+            assertEquals("-1", statField(index, "a.txt", 2));
+            assertTrue(shared.shared());
+        }
+        gitlet("status");
+        assertEquals("4", statField(index, "a.txt", 2));
+    }
+
+    /** reset to a commit already in the history does not list it in the
+     *  history index again. */
+    @Test
+    public void resetKeepsHistoryIndexUnique() throws IOException {
+        gitlet("init");
+        write("a.txt", "one\n");
+        gitlet("add", "a.txt");
+        gitlet("commit", "one");
+        String one = head();
+        write("a.txt", "two\n");
+        gitlet("add", "a.txt");
+        gitlet("commit", "two");
+        gitlet("reset", one);
+        gitlet("reset", one);
+        List<String> ids = Files.readAllLines(
+                new File(_dir, ".gitlet/history/current").toPath());
+        assertEquals(3, ids.size());
+        assertEquals(ids.size(), new HashSet<>(ids).size());
+    }
+
+    /** A delta applied to its base gives the target, and is small when
+     *  the two mostly agree, wherever they differ. */
+    @Test
+    public void deltasRebuildTargets() {
+        StringBuilder text = new StringBuilder();
+        for (int k = 0; k < DELTA_LINES; k += 1) {
+            text.append("line ").append(k).append(" of the base\n");
+        }
+        byte[] base = bytes(text.toString());
+        String[] targets = {
+            text.toString(), "new first line\n" + text,
+            text + "new last line\n",
+            text.toString().replace("line 50 ", "changed line "),
+            text.substring(text.length() / 2), "",
+        };
+        for (String target : targets) {
+            byte[] delta = Delta.create(base, bytes(target));
+            assertArrayEquals(bytes(target), Delta.apply(base, delta));
+            assertTrue(delta.length < base.length / 10);
+        }
+        byte[] other = bytes("nothing in common");
+        assertArrayEquals(other, Delta.apply(new byte[0],
+                Delta.create(new byte[0], other)));
+    }
+
+    /** find matches any part of a message, --word and --prefix whole
+     *  words and their starts in any case, and --exact the whole message,
+     *  listing commits oldest first; global-log lists every message. */
+    @Test
+    public void findMatchesByOption() throws IOException {
+        gitlet("init");
+        String[] messages = {
+            "fix the parser", "parse trees faster", "Fix Parser bug", "parser",
+        };
+        List<String> ids = new ArrayList<>();
+        for (String msg : messages) {
+            write("a.txt", msg + "\n");
+            gitlet("add", "a.txt");
+            gitlet("commit", msg);
+            ids.add(head());
+        }
+        assertEquals(lines(ids.get(0), ids.get(3)), gitlet("find", "parser"));
+        assertEquals(lines(ids.get(0), ids.get(2), ids.get(3)),
+                     gitlet("find", "--word", "parser"));
+        assertEquals(lines(ids.get(0), ids.get(1), ids.get(2), ids.get(3)),
+                     gitlet("find", "--prefix", "pars"));
+        assertEquals(lines(ids.get(0)),
+                     gitlet("find", "--exact", "fix the parser"));
+        assertEquals("Found no commit with that message.\n",
+                     gitlet("find", "--word", "pars"));
+        String log = gitlet("global-log");
+        for (String id : ids) {
+            assertTrue(log.contains("commit " + id + "\n"));
+        }
+        assertTrue(log.contains("\nparse trees faster\n"));
+    }
+
+    /** A three-way merge takes a change made on one side, or the same
+     *  change made on both, and marks only the lines changed differently
+     *  on both sides as a conflict. */
+    @Test
+    public void lineMergeMarksOnlyConflicts() throws IOException {
+        String base = "a\nb\nc\nd\ne\n";
+        assertEquals("A\nb\nc\nd\nE\n",
+                     lineMerge(base, "A\nb\nc\nd\ne\n", "a\nb\nc\nd\nE\n"));
+        assertEquals("a\nB\nc\nd\n",
+                     lineMerge(base, "a\nB\nc\nd\n", "a\nB\nc\nd\ne\n"));
+        assertEquals("a\n<<<<<<< HEAD\nours\n=======\nb\ntheirs\n>>>>>>>\n"
+                     + "d\ne\n",
+                     lineMerge(base, "a\nours\nd\ne\n",
+                               "a\nb\ntheirs\nd\ne\n"));
+        assertEquals(base, lineMerge(base, base, base));
+    }
+
+    /** The changes a line diff finds turn one file into the other, and
+     *  are as few as the longest common subsequence allows. */
+    @Test
+    public void lineDiffIsMinimal() {
+        Random random = new Random(DIFF_SEED);
+        LineDiff engine = new LineDiff();
+        for (int k = 0; k < DIFF_CASES; k += 1) {
+            String[] a = randomLines(random), b = randomLines(random);
+            int[] hunks = engine.diff(new LineDiff.Lines(bytes(lines(a))),
+                                      new LineDiff.Lines(bytes(lines(b))));
+            List<String> rebuilt = new ArrayList<>();
+            int at = 0, changed = 0;
+            for (int i = 0; i < hunks.length; i += LineDiff.HUNK) {
+                rebuilt.addAll(Arrays.asList(a).subList(at, hunks[i]));
+                rebuilt.addAll(Arrays.asList(b).subList(hunks[i + 2],
+                                                        hunks[i + 3]));
+                changed += hunks[i + 1] - hunks[i]
+                    + hunks[i + 3] - hunks[i + 2];
+                at = hunks[i + 1];
+            }
+            rebuilt.addAll(Arrays.asList(a).subList(at, a.length));
+            assertEquals(Arrays.asList(b), rebuilt);
+            assertEquals(a.length + b.length - 2 * lcs(a, b), changed);
+        }
+    }
+
+    /** Unified diffs show added files as from /dev/null and mark lines
+     *  without a final newline, as git does. */
+    @Test
+    public void unifiedDiffMatchesGit() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        UnifiedDiff diff = new UnifiedDiff(out);
+        diff.write("new.txt", null, new LineDiff.Lines(bytes("x\ny\n")));
+        diff.write("same.txt", new LineDiff.Lines(bytes("s\n")),
+                   new LineDiff.Lines(bytes("s\n")));
+        diff.write("f.txt", new LineDiff.Lines(bytes("a\nb")),
+                   new LineDiff.Lines(bytes("a\nc")));
+        assertEquals(lines("diff --git a/new.txt b/new.txt",
+                           "--- /dev/null", "+++ b/new.txt",
+                           "@@ -0,0 +1,2 @@", "+x", "+y",
+                           "diff --git a/f.txt b/f.txt",
+                           "--- a/f.txt", "+++ b/f.txt",
+                           "@@ -1,2 +1,2 @@", " a", "-b",
+                           "\\ No newline at end of file", "+c",
+                           "\\ No newline at end of file"),
+                     new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    /** A checkout that cannot read one of its blobs changes no file of
+     *  the working directory. */
+    @Test
+    public void failedCheckoutChangesNothing() throws IOException {
+        gitlet("init");
+        for (int k = 0; k < CHECKOUT_FILES; k += 1) {
+            write("f" + k + ".txt", "old " + k + "\n");
+            gitlet("add", "f" + k + ".txt");
+        }
+        gitlet("commit", "old");
+        String old = head();
+        for (int k = 0; k < CHECKOUT_FILES; k += 1) {
+            write("f" + k + ".txt", "new " + k + "\n");
+            gitlet("add", "f" + k + ".txt");
+        }
+        write("added.txt", "added\n");
+        gitlet("add", "added.txt");
+        gitlet("commit", "new");
+        ObjectStore store = new ObjectStore(new File(_dir, ".gitlet/object"));
+        assertTrue(store.looseFile(Utils.sha1(bytes("old "
+                + (CHECKOUT_FILES - 1) + "\n"))).delete());
+        gitletFails("reset", old);
+        for (int k = 0; k < CHECKOUT_FILES; k += 1) {
+            assertEquals("new " + k + "\n", Utils.readContentsAsString(
+                    new File(_dir, "f" + k + ".txt")));
+        }
+        assertTrue(new File(_dir, "added.txt").isFile());
+        assertEquals(0, new File(_dir, ".gitlet").list(
+                (d, name) -> name.startsWith("checkout-")).length);
+    }
+
+    /** A tree is stored as one listing per directory, read back as the
+     *  files it tracks, and a directory whose files did not change keeps
+     *  its listing. */
+    @Test
+    public void treesShareUnchangedDirectories() throws IOException {
+        ObjectStore store = new ObjectStore(_dir);
+        Commit one = Commit.fromStore(store, stored(store, null,
+                "a.txt", "a\n", "d/b.txt", "b\n", "e/f/c.txt", "c\n")),
+            two = Commit.fromStore(store, stored(store, null,
+                "a.txt", "a\n", "d/b.txt", "b2\n", "e/f/c.txt", "c\n"));
+        HashMap<String, String> files = new HashMap<>();
+        files.put("a.txt", Utils.sha1(bytes("a\n")));
+        files.put("d/b.txt", Utils.sha1(bytes("b\n")));
+        files.put("e/f/c.txt", Utils.sha1(bytes("c\n")));
+        assertEquals(files,
+                     Tree.fromStore(store, one.getTreeShaVal()).getTracked());
+        HashMap<String, String> first = new HashMap<>(),
+            second = new HashMap<>();
+        for (Tree.Entry e : Tree.entries(store, one.getTreeShaVal())) {
+            first.put(e.name + (e.isTree ? "/" : ""), e.shaVal);
+        }
+        for (Tree.Entry e : Tree.entries(store, two.getTreeShaVal())) {
+            second.put(e.name + (e.isTree ? "/" : ""), e.shaVal);
+        }
+        assertEquals(first.keySet(), new HashSet<>(
+                Arrays.asList("a.txt", "d/", "e/")));
+        assertEquals(first.get("a.txt"), second.get("a.txt"));
+        assertEquals(first.get("e/"), second.get("e/"));
+        assertNotEquals(first.get("d/"), second.get("d/"));
+    }
+
+    /** The object cache holds objects up to its limit in bytes, drops
+     *  the least recently used first, and does not keep an object larger
+     *  than itself. */
+    @Test
+    public void objectCacheEvictsLeastRecentlyUsed() {
+        ObjectCache cache = new ObjectCache(CACHE_LIMIT);
+        cache.put("a", "A", 4);
+        cache.put("b", "B", 4);
+        assertEquals("A", cache.get("a", String.class));
+        cache.put("c", "C", 4);
+        assertTrue(cache.contains("a") && cache.contains("c"));
+        assertFalse(cache.contains("b"));
+        assertNull(cache.get("a", Integer.class));
+        cache.put("d", "D", CACHE_LIMIT + 1);
+        assertFalse(cache.contains("d"));
+        assertTrue(cache.stats().startsWith("cache: 1 hits, 1 misses, "
+                                            + "1 evictions, 2 objects"));
+    }
+
+    /** --stats reports the use of the object cache when the command
+     *  ends, as well as its usual output. */
+    @Test
+    public void statsReportsCacheUse() throws IOException {
+        gitlet("init");
+        String out = gitlet("--stats", "log");
+        assertTrue(out.contains("initial commit"));
+        assertTrue(Pattern.compile("cache: [0-9]+ hits, [0-9]+ misses")
+                   .matcher(out).find());
+    }
+
+    /** Commands run in a repository with a daemon are run by it, which
+     *  keeps what they read cached for the next, and give the output and
+     *  messages they would give run by themselves. */
+    @Test
+    public void daemonRunsCommands() throws IOException,
+                                            InterruptedException {
+        gitlet("init");
+        Process daemon = new ProcessBuilder(JAVA, "-cp", CLASS_PATH,
+                "gitlet.Main", "daemon").directory(_dir)
+            .redirectErrorStream(true).redirectOutput(Redirect.DISCARD)
+            .start();
+        try {
+            File socket = new File(_dir, ".gitlet/daemon.sock");
+            for (int k = 0; !socket.exists(); k += 1) {
+                assertTrue(k < DAEMON_WAITS && daemon.isAlive());
+                Thread.sleep(DAEMON_PAUSE);
+            }
+            write("a.txt", "one\n");
+            gitlet("add", "a.txt");
+            gitlet("commit", "one");
+            assertEquals("No changes added to the commit.\n",
+                         gitlet("commit", "two"));
+            assertEquals("Incorrect operands.\n",
+                         gitlet("checkout", "--", "a.txt", "extra"));
+            gitlet("log");
+            String stats = gitlet("--stats", "log");
+            assertTrue(stats.contains("\none\n"));
+            assertTrue(stats.contains(" 0 misses"));
+        } finally {
+            daemon.destroy();
+            daemon.waitFor();
+        }
+    }
+
+    /** Chunks are cut by their contents, between the shortest and the
+     *  longest chunk, so bytes inserted in a file change only the chunks
+     *  around them. */
+    @Test
+    public void chunkerCutsByContents() {
+        byte[] data = new byte[CHUNKED_BYTES];
+        new Random(DIFF_SEED).nextBytes(data);
+        byte[] inserted = new byte[data.length + INSERTED];
+        System.arraycopy(data, 0, inserted, 0, CHUNKED_BYTES / 2);
+        System.arraycopy(data, CHUNKED_BYTES / 2, inserted,
+                         CHUNKED_BYTES / 2 + INSERTED, CHUNKED_BYTES / 2);
+        List<String> before = chunks(data), after = chunks(inserted);
+        HashSet<String> changed = new HashSet<>(after);
+        changed.removeAll(before);
+        assertTrue(before.size() > 2 && changed.size() <= 2);
+    }
+
+    /** add stores a large file as a list of chunks, which reads back as
+     *  the file, and stores a small change to it as a chunk or two. */
+    @Test
+    public void largeFilesStoredInChunks() throws IOException {
+        gitlet("init");
+        byte[] data = new byte[CHUNKED_BYTES];
+        new Random(DIFF_SEED).nextBytes(data);
+        Path file = new File(_dir, "big.bin").toPath();
+        Files.write(file, data);
+        gitlet("add", "big.bin");
+        gitlet("commit", "big");
+        String first = head();
+        data[CHUNKED_BYTES / 2] += 1;
+        Files.write(file, data);
+        gitlet("add", "big.bin");
+        gitlet("commit", "changed");
+        ObjectStore store = new ObjectStore(new File(_dir, ".gitlet/object"));
+        List<String> chunks = store.chunks(Utils.sha1(data));
+        assertArrayEquals(data, store.read(Utils.sha1(data)));
+        data[CHUNKED_BYTES / 2] -= 1;
+        HashSet<String> changed = new HashSet<>(chunks);
+        changed.removeAll(store.chunks(Utils.sha1(data)));
+        assertTrue(chunks.size() > 2 && changed.size() <= 2);
+        gitlet("checkout", first, "--", "big.bin");
+        assertArrayEquals(data, Files.readAllBytes(file));
+    }
+
+    /** gc removes the objects no branch or staging area reaches, from
+     *  packs as well as loose, and prune the loose ones. */
+    @Test
+    public void gcRemovesUnreachableObjects() throws IOException {
+        gitlet("init");
+        write("a.txt", "a\n");
+        gitlet("add", "a.txt");
+        gitlet("commit", "one");
+        String packed = abandoned("packed");
+        gitlet("repack");
+        File graph = new File(_dir, ".gitlet/commit-graph"),
+            filters = new File(_dir, ".gitlet/commit-graph-paths");
+        long records = graph.length(), bits = filters.length();
+        assertEquals("Removed 3 unreachable objects.\n", gitlet("gc"));
+        assertTrue(graph.length() < records && filters.length() < bits);
+        String loose = abandoned("loose");
+        write("s.txt", "s\n");
+        gitlet("add", "s.txt");
+        records = graph.length();
+        assertEquals("Removed 3 unreachable objects.\n", gitlet("prune"));
+        assertTrue(graph.length() < records);
+        assertEquals("Removed 0 unreachable objects.\n", gitlet("gc"));
+        ObjectStore store = new ObjectStore(new File(_dir, ".gitlet/object"));
+        for (String gone : new String[] { packed, loose }) {
+            assertFalse(store.contains(gone));
+            assertFalse(store.contains(Utils.sha1(bytes(gone + "\n"))));
+        }
+        assertArrayEquals(bytes("a\n"), store.read(Utils.sha1(bytes("a\n"))));
+        assertTrue(store.contains(Utils.sha1(bytes("s\n"))));
+        gitlet("commit", "two");
+        assertTrue(gitlet("log").contains("\none\n"));
+    }
+
+    /** A store made before fan-out directories is read as it is, and
+     *  moved into them by the first command that locks it alone, which
+     *  then finds commits by abbreviated id in the new layout. */
+    @Test
+    public void flatStoresFannedOut() throws IOException {
+        gitlet("init");
+        write("a.txt", "one\n");
+        gitlet("add", "a.txt");
+        gitlet("commit", "one");
+        String id = head();
+        File objects = new File(_dir, ".gitlet/object");
+        for (File dir : objects.listFiles(File::isDirectory)) {
+            for (File f : dir.listFiles()) {
+                Files.move(f.toPath(), new File(objects, dir.getName()
+                                                + f.getName()).toPath());
+            }
+            Files.delete(dir.toPath());
+        }
+        Files.delete(new File(objects, ObjectStore.FAN_OUT_FILE).toPath());
+        assertTrue(gitlet("log").contains("commit " + id + "\n"));
+        write("a.txt", "two\n");
+        gitlet("checkout", id.substring(0, ABBREV), "--", "a.txt");
+        assertEquals("one\n", Utils.readContentsAsString(
+                new File(_dir, "a.txt")));
+        assertTrue(new File(objects, ObjectStore.FAN_OUT_FILE).isFile());
+        assertTrue(new File(objects, id.substring(0, 2)).isDirectory());
+        for (String name : objects.list()) {
+            assertTrue(name.length() < id.length());
+        }
+    }
+
+    /** Objects are found by any prefix of their SHA-1 vals, however
+     *  many fan-out directories it spans. */
+    @Test
+    public void objectsFoundByPrefix() throws IOException {
+        assertTrue(new File(_dir, ObjectStore.FAN_OUT_FILE).createNewFile());
+        ObjectStore store = new ObjectStore(_dir);
+        String zeros = "0".repeat(Utils.UID_LENGTH - 3);
+        String[] names = { "ab0" + zeros, "ab1" + zeros, "ac0" + zeros };
+        for (String name : names) {
+            store.writeLoose(name, bytes(name));
+        }
+        assertEquals(Arrays.asList(names), store.withPrefix("a"));
+        assertEquals(Arrays.asList(names[0], names[1]),
+                     store.withPrefix("ab"));
+        assertEquals(Arrays.asList(names[1]), store.withPrefix("ab1"));
+        assertEquals(Arrays.asList(names[2]), store.withPrefix(names[2]));
+        assertTrue(store.withPrefix("b").isEmpty());
+        assertTrue(store.withPrefix("xyz").isEmpty());
+    }
+
+    /** A path filter says it may contain every path it was made of, and
+     *  few others; none is made of too many paths. */
+    @Test
+    public void pathFiltersFindEveryPath() {
+        List<String> paths = new ArrayList<>();
+        for (int k = 0; k < PathFilter.MAX_PATHS; k += 1) {
+            paths.add("dir" + (k % DIRS) + "/file" + k + ".txt");
+        }
+        byte[] filter = PathFilter.of(paths);
+        for (String path : paths) {
+            assertTrue(PathFilter.mayContain(filter, PathFilter.hash(path)));
+        }
+        int falsePositives = 0;
+        for (int k = 0; k < OTHER_PATHS; k += 1) {
+            if (PathFilter.mayContain(filter,
+                                      PathFilter.hash("other" + k))) {
+                falsePositives += 1;
+            }
+        }
+        assertTrue(falsePositives < OTHER_PATHS / 50);
+        assertFalse(PathFilter.mayContain(PathFilter.of(new ArrayList<>()),
+                                          PathFilter.hash("a.txt")));
+        paths.add("one/too/many.txt");
+        assertNull(PathFilter.of(paths));
+    }
+
+    /** Ignore rules match names or, with a "/", whole paths, by globs,
+     *  with the last matching rule deciding, and always leave out hidden
+     *  files. */
+    @Test
+    public void ignoreRulesMatchGlobs() {
+        Ignore ignore = new Ignore(Arrays.asList(
+                "# comment", "", "*.log", "!keep.log", "build/",
+                "/docs/*.tmp", "src/**/gen", "file?.txt", "[ab].c",
+                "[!x]y.z"));
+        String[] ignored = {
+            "a.log", "d/a.log", "docs/x.tmp", "src/gen", "src/a/b/gen",
+            "file1.txt", "a.c", "ay.z", ".hidden", "d/.hidden", "Makefile",
+        };
+        String[] kept = {
+            "keep.log", "d/keep.log", "build", "sub/docs/x.tmp", "gen",
+            "file10.txt", "c.c", "xy.z", "# comment", "docs/x/y.tmp",
+        };
+        for (String path : ignored) {
+            assertTrue(path, ignore.matches(path, false));
+        }
+        for (String path : kept) {
+            assertFalse(path, ignore.matches(path, false));
+        }
+        assertTrue(ignore.matches("build", true));
+        assertTrue(ignore.ignores("build/x.java", false));
+        assertTrue(ignore.ignores("d/build/x.java", false));
+        assertFalse(ignore.ignores("builds/x.java", false));
+    }
+
+    /** A transfer sends only the commits the receiver lacks, and of
+     *  their trees only the directories and blobs that changed. */
+    @Test
+    public void transferSendsOnlyMissingObjects() throws IOException {
+        File fromDir = new File(_dir, "from"), toDir = new File(_dir, "to");
+        assertTrue(fromDir.mkdir() && toDir.mkdir());
+        ObjectStore from = new ObjectStore(fromDir),
+            to = new ObjectStore(toDir);
+        String one = stored(from, null, "a.txt", "one\n",
+                            "sub/b.txt", "b\n"),
+            two = stored(from, one, "a.txt", "two\n", "sub/b.txt", "b\n");
+        Transfer first = new Transfer(from, to);
+        first.want(one);
+        assertEquals(Arrays.asList(one), first.commits());
+        assertEquals(5, first.send());
+        Transfer second = new Transfer(from, to);
+        second.want(two);
+        assertEquals(Arrays.asList(two), second.commits());
+        assertEquals(3, second.send());
+        for (String shaVal : from.names()) {
+            assertTrue(to.contains(shaVal));
+        }
+        Transfer none = new Transfer(from, to);
+        none.want(two);
+        assertTrue(none.commits().isEmpty());
+        assertEquals(0, none.send());
+    }
+
+    /** Objects read back from a pack mapped in windows much smaller than
+     *  its entries, as those of a pack over 2 GiB are, are those packed,
+     *  deltas included. */
+    @Test
+    public void packReadsAcrossWindows() throws IOException {
+        ObjectStore store = new ObjectStore(_dir);
+        LinkedHashMap<String, String> hints = new LinkedHashMap<>();
+        List<byte[]> versions = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        for (int k = 0; k < PACKED_VERSIONS; k += 1) {
+            text.append("line ").append(k).append(" of the file\n");
+            byte[] contents = text.toString().getBytes(StandardCharsets.UTF_8);
+            String shaVal = Utils.sha1(contents);
+            store.writeLoose(shaVal, contents);
+            hints.put(shaVal, "f.txt");
+            versions.add(contents);
+        }
+        PackWriter writer = new PackWriter(store, hints);
+        assertEquals(PACKED_VERSIONS, writer.repack());
+        assertTrue(writer.deltas() > 0);
+        ObjectStore.Pack packed = store.packs().get(0);
+        ObjectStore.Pack pack = store.new Pack(packed.indexFile(),
+                packed.packFile(), SMALL_WINDOW);
+        for (byte[] contents : versions) {
+            long offset = pack.offset(Utils.sha1(contents));
+            assertTrue(offset >= 0);
+            assertArrayEquals(contents, pack.read(offset));
+        }
+    }
+
+    /** An append queued after a write to the same file, as a push makes
+     *  to a remote's history, adds to the contents written. */
+    @Test
+    public void journalAppendsAfterWrite() throws IOException {
+        File target = new File(_dir, "f");
+        Journal journal = new Journal(_dir);
+        journal.write(target, bytes("one\n"));
+        journal.append(target, bytes("two\n"));
+        journal.commit();
+        assertEquals("one\ntwo\n", Utils.readContentsAsString(target));
+        journal.write(target, bytes("three\n"));
+        journal.delete(target);
+        journal.append(target, bytes("four\n"));
+        journal.commit();
+        assertEquals("four\n", Utils.readContentsAsString(target));
+        assertFalse(journal.pending());
+    }
+
+    /** A journal left by a command killed after writing it is replayed
+     *  by recover(), as often as it is killed while replaying, and the
+     *  temporary files of one killed before are deleted. */
+    @Test
+    public void journalRecoversKilledCommands() throws IOException {
+        File temp = new File(_dir, "journal-temp"),
+            journalFile = new File(_dir, "journal");
+        File written = new File(_dir, "w"), appended = new File(_dir, "a"),
+            deleted = new File(_dir, "d");
+        write("w", "old\n");
+        write("a", "one\ntw");
+        write("d", "gone\n");
+        write("journal-temp/0", "new\n");
+        write("journal-temp/1", "two\n");
+        String journal = lines(
+            String.join("\t", "write", "journal-temp/0", "w", "0"),
+            String.join("\t", "append", "journal-temp/1", "a", "4"),
+            String.join("\t", "delete", "-", "d", "0"));
+        write("journal", journal);
+        Journal recovered = new Journal(_dir);
+        assertTrue(recovered.pending());
+        recovered.recover();
+        for (int k = 0; k < 2; k += 1) {
+            assertEquals("new\n", Utils.readContentsAsString(written));
+            assertEquals("one\ntwo\n", Utils.readContentsAsString(appended));
+            assertFalse(deleted.exists() || journalFile.exists());
+            assertEquals(0, temp.list().length);
+            write("journal-temp/1", "two\n");
+            write("journal", journal);
+            recovered.recover();
+        }
+        write("journal-temp/0", "unfinished\n");
+        recovered.recover();
+        assertEquals(0, temp.list().length);
+        assertEquals("new\n", Utils.readContentsAsString(written));
+    }
+
+    /** A journal names its files relative to its repository, so one left
+     *  by a command killed while pushing to a remote elsewhere is replayed
+     *  by the next command run in the remote itself. */
+    @Test
+    public void journalReplayedFromAnywhere() throws IOException {
+        File remote = new File(_dir, "x/R");
+        remote.mkdirs();
+        gitletIn(remote, "init");
+        File repo = new File(new File(".").getAbsoluteFile().toPath()
+            .relativize(new File(remote, ".gitlet").getAbsoluteFile()
+                        .toPath()).toString());
+        File branch = new File(repo, "branch/other"),
+            doomed = new File(repo, "doomed"),
+            unfinished = new File(repo, "missing/file");
+        Utils.writeContents(doomed, "gone\n");
+        Journal journal = new Journal(repo);
+        journal.write(unfinished, bytes("made\n"));
+        journal.write(branch,
+                      Utils.readContents(new File(repo, "branch/master")));
+        journal.delete(doomed);
+        try {
+            journal.commit();
+            fail("replayed into a missing directory");
+        } catch (IOException excp) {
+            assertTrue(journal.pending());
+            assertFalse(branch.exists());
+        }
+        new File(repo, "missing").mkdir();
+        assertTrue(gitletIn(remote, "status").contains("other\n"));
+        assertFalse(journal.pending() || doomed.exists());
+        assertEquals("made\n", Utils.readContentsAsString(unfinished));
+        assertTrue(branch.exists());
+    }
+
+    /** Commands that only read a repository share its lock, and others
+     *  wait for it alone, giving up after the timeout.  A process that
+     *  holds the lock may take it again, but not alone if it holds it
+     *  shared. */
+    @Test
+    public void repoLockSharedOrAlone() throws IOException {
+        gitlet("init");
+        write("a.txt", "one\n");
+        _options.add("-D" + RepoLock.TIMEOUT_PROPERTY + "=" + LOCK_TIMEOUT);
+        File repo = new File(_dir, ".gitlet");
+        String timedOut = "Timed out waiting for another gitlet command "
+            + "to finish with the repository.\n";
+        try (RepoLock shared = RepoLock.acquire(repo, true)) {
+            assertTrue(gitlet("log").contains("initial commit"));
+            assertEquals(timedOut, gitlet("add", "a.txt"));
+            RepoLock again = RepoLock.acquire(repo, true);
+            assertSame(shared, again);
+            again.close();
+            assertEquals(timedOut, gitlet("add", "a.txt"));
+            try {
+                RepoLock.acquire(repo, false);
+                fail("took a shared lock alone");
+            } catch (IllegalStateException excp) {
+                assertTrue(shared.shared());
+            }
+        }
+        assertEquals("", gitlet("add", "a.txt"));
+        try (RepoLock alone = RepoLock.acquire(repo, false)) {
+            assertFalse(alone.shared());
+            assertEquals(timedOut, gitlet("log"));
+        }
+    }
+
+    /** Reading a history index in the old format, as find does, rewrites
+     *  it as lines of SHA-1 vals through the journal. */
+    @Test
+    public void legacyIndexRewritten() throws IOException {
+        gitlet("init");
+        write("a.txt", "one\n");
+        gitlet("add", "a.txt");
+        gitlet("commit", "one");
+        File index = new File(_dir, ".gitlet/history/current");
+        List<String> ids = Files.readAllLines(index.toPath());
+        Files.write(index.toPath(), Utils.serialize(new HashMap<>()));
+        assertTrue(gitlet("find", "one").contains(head()));
+        assertEquals(new HashSet<>(ids),
+                     new HashSet<>(Files.readAllLines(index.toPath())));
+        assertFalse(new File(_dir, ".gitlet/journal").exists());
+    }
+
+    /** fetch from a remote whose history index is in the old format
+     *  rewrites that index through the remote's own journal. */
+    @Test
+    public void fetchRewritesLegacyRemoteIndex() throws IOException {
+        File remote = new File(_dir, "r"), local = new File(_dir, "l");
+        gitletIn(remote, "init");
+        write("r/a.txt", "one\n");
+        gitletIn(remote, "add", "a.txt");
+        gitletIn(remote, "commit", "one");
+        File index = new File(remote, ".gitlet/history/current");
+        List<String> ids = Files.readAllLines(index.toPath());
+        Files.write(index.toPath(), Utils.serialize(new HashMap<>()));
+        gitletIn(local, "init");
+        gitletIn(local, "add-remote", "R", "../r/.gitlet");
+        gitletIn(local, "fetch", "R", "master");
+        assertEquals(new HashSet<>(ids),
+                     new HashSet<>(Files.readAllLines(index.toPath())));
+        assertFalse(new File(remote, ".gitlet/journal").exists());
+        assertEquals(new HashSet<>(ids), new HashSet<>(Files.readAllLines(
+                new File(local, ".gitlet/history/R").toPath())));
+    }
+
+    /** push removes from the remote's working directory the files in
+     *  subdirectories the replaced commit tracked, and leaves the files
+     *  the remote's .gitletignore ignores. */
+    @Test
+    public void pushResetsRemoteWorkingDirectory() throws IOException {
+        File remote = new File(_dir, "r"), local = new File(_dir, "l");
+        gitletIn(remote, "init");
+        gitletIn(local, "init");
+        write("l/sub/a.txt", "a\n");
+        write("l/b.txt", "b\n");
+        gitletIn(local, "add", "sub/a.txt");
+        gitletIn(local, "add", "b.txt");
+        gitletIn(local, "commit", "one");
+        gitletIn(local, "add-remote", "R", "../r/.gitlet");
+        gitletIn(local, "push", "R", "master");
+        assertTrue(new File(remote, "sub/a.txt").isFile());
+        write("r/.gitletignore", "keep.txt\n");
+        write("r/keep.txt", "k\n");
+        gitletIn(local, "rm", "sub/a.txt");
+        gitletIn(local, "commit", "two");
+        gitletIn(local, "push", "R", "master");
+        assertFalse(new File(remote, "sub").exists());
+        assertTrue(new File(remote, "b.txt").isFile());
+        assertTrue(new File(remote, "keep.txt").isFile());
+    }
+
+    /** Commits made with the commit time pinned are dated then, and so
+     *  have the same SHA-1 val however far apart they are made. */
+    @Test
+    public void pinnedCommitTime() throws InterruptedException {
+        String parent = Utils.sha1("parent");
+        System.setProperty(Commit.TIME_PROPERTY, "1000000000");
+        try {
+            Commit first = new Commit(null, "m", parent, null);
+            Thread.sleep(PIN_PAUSE);
+            Commit second = new Commit(null, "m", parent, null);
+            assertEquals(first.getCommitShaVal(), second.getCommitShaVal());
+            assertTrue(first.getTimeStamp().endsWith(" 2001 +0000"));
+        } finally {
+            System.clearProperty(Commit.TIME_PROPERTY);
+        }
+    }
+
+    /** The same commands, run with the commit time pinned, as the
+     *  repository generator runs them, make the same repository. */
+    @Test
+    public void pinnedCommandsRepeat() throws IOException {
+        _options.add("-D" + Commit.TIME_PROPERTY + "=1000000000");
+        List<String> logs = new ArrayList<>();
+        for (String name : new String[] { "one", "two" }) {
+            File dir = new File(_dir, name);
+            gitletIn(dir, "init");
+            write(name + "/a.txt", "a\n");
+            gitletIn(dir, "add", "a.txt");
+            gitletIn(dir, "commit", "a");
+            gitletIn(dir, "branch", "other");
+            write(name + "/b.txt", "b\n");
+            gitletIn(dir, "add", "b.txt");
+            gitletIn(dir, "commit", "b");
+            gitletIn(dir, "checkout", "other");
+            write(name + "/c.txt", "c\n");
+            gitletIn(dir, "add", "c.txt");
+            gitletIn(dir, "commit", "c");
+            gitletIn(dir, "checkout", "master");
+            gitletIn(dir, "merge", "other");
+            logs.add(gitletIn(dir, "global-log"));
+        }
+        assertEquals(logs.get(0), logs.get(1));
+        assertTrue(logs.get(0).contains("Date: Sun Sep 9 01:46:40 2001"));
+        assertEquals(headIn(new File(_dir, "one")),
+                     headIn(new File(_dir, "two")));
+    }
 
+    /** Return the output of gitlet run with ARGS in the directory of the
+     *  test. */
+    private String gitlet(String... args) throws IOException {
+        return gitletIn(_dir, args);
+    }
+
+    /** Return the output of gitlet run with ARGS in DIR, which is made
+     *  if need be. */
+    private String gitletIn(File dir, String... args) throws IOException {
+        return exec(dir, false, args);
+    }
 
+    /** Return the output of gitlet run with ARGS in the directory of the
+     *  test, which must fail. */
+    private String gitletFails(String... args) throws IOException {
+        return exec(_dir, true, args);
+    }
+
+    /** Return the output of gitlet run with ARGS in DIR, which is made
+     *  if need be, checking that it FAILS or succeeds. */
+    private String exec(File dir, boolean fails, String... args)
+            throws IOException {
+        Files.createDirectories(dir.toPath());
+        List<String> command = new ArrayList<>(Arrays.asList(
+                JAVA, "-cp", CLASS_PATH));
+        command.addAll(_options);
+        command.add("gitlet.Main");
+        command.addAll(Arrays.asList(args));
+        Process p = new ProcessBuilder(command).directory(dir)
+            .redirectErrorStream(true).redirectInput(Redirect.PIPE).start();
+        p.getOutputStream().close();
+        String out = new String(p.getInputStream().readAllBytes(),
+                                StandardCharsets.UTF_8);
+        try {
+            if ((p.waitFor() != 0) != fails) {
+                fail("gitlet " + String.join(" ", args)
+                     + (fails ? " succeeded:\n" : " failed:\n") + out);
+            }
+        } catch (InterruptedException excp) {
+            fail("interrupted");
+        }
+        return out;
+    }
+
+    /** Return the SHA-1 val of the head commit of the current branch. */
+    private String head() throws IOException {
+        return headIn(_dir);
+    }
+
+    /** Return the SHA-1 val of the head commit of the current branch of
+     *  the repository in DIR. */
+    private String headIn(File dir) throws IOException {
+        Matcher m = Pattern.compile("commit ([0-9a-f]+)")
+            .matcher(gitletIn(dir, "log"));
+        assertTrue(m.find());
+        return m.group(1);
+    }
+
+    /** Write TEXT to the file NAME in the directory of the test. */
+    private void write(String name, String text) throws IOException {
+        Path path = new File(_dir, name).toPath();
+        Files.createDirectories(path.getParent());
+        Files.write(path, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Put commit C in the object cache, where the commit graph reads
+     *  it from, and return its SHA-1 val. */
+    private static String cached(Commit c) {
+        ObjectCache.shared().put(c.getCommitShaVal(), c, 1);
+        return c.getCommitShaVal();
+    }
+
+    /** Store in STORE the commit with parent PARENT, or none, of the
+     *  FILES, given as alternate names and contents, with its tree and
+     *  blobs, and return its SHA-1 val. */
+    private static String stored(ObjectStore store, String parent,
+                                 String... files) throws IOException {
+        HashMap<String, String> tracked = new HashMap<>();
+        for (int k = 0; k < files.length; k += 2) {
+            byte[] contents = bytes(files[k + 1]);
+            String shaVal = Utils.sha1(contents);
+            if (!store.contains(shaVal)) {
+                store.writeLoose(shaVal, contents);
+            }
+            tracked.put(files[k], shaVal);
+        }
+        Tree tree = new Tree();
+        tree.setTracked(tracked);
+        tree.commit();
+        tree.saveTree(store);
+        Commit c = new Commit(tree, "commit", parent, null);
+        store.writeLoose(c.getCommitShaVal(), c.encode());
+        return c.getCommitShaVal();
+    }
+
+    /** Return the merge of OURS and THEIRS, both changed from BASE,
+     *  checking that a conflict is reported iff it is marked. */
+    private static String lineMerge(String base, String ours, String theirs)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        boolean conflict = new LineMerge(out).merge(
+                new LineDiff.Lines(bytes(base)),
+                new LineDiff.Lines(bytes(ours)),
+                new LineDiff.Lines(bytes(theirs)));
+        String result = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        assertEquals(conflict, result.contains("<<<<<<< HEAD"));
+        return result;
+    }
+
+    /** Return up to DIFF_LINES lines, each one of the LETTERS, chosen by
+     *  RANDOM. */
+    private static String[] randomLines(Random random) {
+        String[] result = new String[random.nextInt(DIFF_LINES + 1)];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = String.valueOf(LETTERS.charAt(
+                    random.nextInt(LETTERS.length())));
+        }
+        return result;
+    }
+
+    /** Return the length of the longest common subsequence of A and B. */
+    private static int lcs(String[] a, String[] b) {
+        int[][] len = new int[a.length + 1][b.length + 1];
+        for (int i = a.length - 1; i >= 0; i -= 1) {
+            for (int j = b.length - 1; j >= 0; j -= 1) {
+                len[i][j] = a[i].equals(b[j]) ? len[i + 1][j + 1] + 1
+                    : Math.max(len[i + 1][j], len[i][j + 1]);
+            }
+        }
+        return len[0][0];
+    }
+
+    /** Return the SHA-1 vals of the chunks DATA is cut into, checking
+     *  that each is of a length allowed. */
+    private static List<String> chunks(byte[] data) {
+        List<String> result = new ArrayList<>();
+        for (int at = 0; at < data.length;) {
+            int len = Chunker.cut(data, at, data.length - at);
+            assertTrue(len <= Chunker.MAX_CHUNK);
+            assertTrue(len >= Chunker.MIN_CHUNK || at + len == data.length);
+            result.add(Utils.sha1(Arrays.copyOfRange(data, at, at + len)));
+            at += len;
+        }
+        return result;
+    }
+
+    /** Return LINES, each ended by a newline. */
+    private static String lines(String... lines) {
+        return lines.length == 0 ? "" : String.join("\n", lines) + "\n";
+    }
+
+    /** Commit the file NAME.txt, holding NAME, on a new branch NAME,
+     *  which is then removed, and return the SHA-1 val of the commit. */
+    private String abandoned(String name) throws IOException {
+        gitlet("branch", name);
+        gitlet("checkout", name);
+        write(name + ".txt", name + "\n");
+        gitlet("add", name + ".txt");
+        gitlet("commit", name);
+        String result = head();
+        gitlet("checkout", "master");
+        gitlet("rm-branch", name);
+        return result;
+    }
+
+    /** Return field K of the line for NAME in the stat cache INDEX. */
+    private static String statField(File index, String name, int k) {
+        for (String line : Utils.readContentsAsString(index).split("\n")) {
+            String[] fields = line.split("\t");
+            if (fields[0].equals(name)) {
+                return fields[k];
+            }
+        }
+        return null;
+    }
+
+    /** Return TEXT in UTF-8. */
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Delete DIR and everything in it. */
+    private static void delete(Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file,
+                                             BasicFileAttributes attrs)
+                throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path d,
+                                                      IOException excp)
+                throws IOException {
+                Files.delete(d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /** The java command of this JVM. */
+    private static final String JAVA =
+        Utils.join(System.getProperty("java.home"), "bin", "java").getPath();
+    /** The class path of this JVM, made absolute. */
+    private static final String CLASS_PATH = absolute(
+            System.getProperty("java.class.path"));
+
+    /** Return the class path PATH with each entry made absolute. */
+    private static String absolute(String path) {
+        List<String> entries = new ArrayList<>();
+        for (String entry : path.split(File.pathSeparator)) {
+            entries.add(new File(entry).getAbsolutePath());
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+
+    /** Milliseconds before the test that statCacheSkipsUnchangedFiles
+     *  dates its file. */
+    private static final long PAST_MILLIS = 60000;
+    /** Lines of the file blobsStoredCompressed adds. */
+    private static final int REPEATS = 1000;
+    /** Lines of the base of deltasRebuildTargets. */
+    private static final int DELTA_LINES = 200;
+    /** Bytes held by the cache of objectCacheEvictsLeastRecentlyUsed. */
+    private static final long CACHE_LIMIT = 10;
+    /** Times daemonRunsCommands looks for the daemon's socket. */
+    private static final int DAEMON_WAITS = 100;
+    /** Milliseconds between those looks. */
+    private static final int DAEMON_PAUSE = 100;
+    /** Seed of the files lineDiffIsMinimal diffs. */
+    private static final long DIFF_SEED = 61;
+    /** Pairs of files it diffs. */
+    private static final int DIFF_CASES = 500;
+    /** Most lines in each. */
+    private static final int DIFF_LINES = 30;
+    /** Lines of those files, few enough that many lines repeat. */
+    private static final String LETTERS = "abc";
+    /** Milliseconds gitlet waits for the lock in repoLockSharedOrAlone. */
+    private static final int LOCK_TIMEOUT = 300;
+    /** Bytes of the files chunked by chunkerCutsByContents and
+     *  largeFilesStoredInChunks, over the default threshold. */
+    private static final int CHUNKED_BYTES = 3 << 20;
+    /** Bytes inserted in the middle of one. */
+    private static final int INSERTED = 8;
+    /** Digits of the abbreviated id flatStoresFannedOut checks out. */
+    private static final int ABBREV = 8;
+    /** Directories of the paths of pathFiltersFindEveryPath. */
+    private static final int DIRS = 10;
+    /** Paths it tests that were not added to its filter. */
+    private static final int OTHER_PATHS = 10000;
+    /** Files that failedCheckoutChangesNothing checks out. */
+    private static final int CHECKOUT_FILES = 8;
+    /** Versions of a file packed by packReadsAcrossWindows. */
+    private static final int PACKED_VERSIONS = 30;
+    /** Bytes in each window of the pack it maps. */
+    private static final int SMALL_WINDOW = 7;
+
+    /** Milliseconds between the commits of pinnedCommitTime. */
+    private static final int PIN_PAUSE = 1100;
+
+    /** Directory of the test, the working directory of gitlet. */
+    private File _dir;
+    /** Options of the JVMs gitlet is run in. */
+    private final List<String> _options = new ArrayList<>();
+}
@@ -0,0 +1,134 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/** Lists the files of a working directory, and of the directories in it,
+ *  that the rules of an Ignore leave in.  Each directory is listed by a
+ *  task of its own on a fork-join pool of worker threads, which forks a
+ *  task for each directory it finds; ignored directories are passed over
+ *  without being listed.  The names found are merged and sorted, so the
+ *  result does not depend on the order the tasks ran in.  Links to
+ *  directories are not followed.  The repository directory is always
+ *  left out, whatever the rules say.
+ *  @author Aayush Sutaria
+ */
+class WorkTree {
+
+    /** Return the paths from ROOT, sorted and with "/" between their
+     *  parts, of the plain files in the directory DIR under ROOT, or DIR
+     *  itself if it is a plain file, that IGNORE does not ignore. */
+    static List<String> files(Path root, Path dir, Ignore ignore)
+        throws IOException {
+        String prefix = root.relativize(dir).toString()
+            .replace(dir.getFileSystem().getSeparator(), "/");
+        if (inRepo(prefix)) {
+            return new ArrayList<>();
+        } else if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) {
+            return Files.isRegularFile(dir) && !ignore.ignores(prefix, false)
+                ? Collections.singletonList(prefix) : new ArrayList<>();
+        } else if (!prefix.isEmpty() && ignore.ignores(prefix, true)) {
+            return new ArrayList<>();
+        }
+        Walk walk = new Walk(dir, prefix.isEmpty() ? "" : prefix + "/",
+                             ignore);
+        List<String> result;
+        if (WorkerPool.threads() <= 1) {
+            result = walk.compute();
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(WorkerPool.threads());
+            try {
+                result = pool.invoke(walk);
+            } catch (UncheckedIOException excp) {
+                throw excp.getCause();
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Return the files of the working directory ROOT, as by the other
+     *  files(). */
+    static List<String> files(Path root, Ignore ignore) throws IOException {
+        return files(root, root, ignore);
+    }
+
+    /** Return true iff PATH, from the root, is the repository directory
+     *  or in it. */
+    private static boolean inRepo(String path) {
+        return path.equals(REPO_NAME) || path.startsWith(REPO_NAME + "/");
+    }
+
+    /** Name of the repository directory in the root. */
+    private static final String REPO_NAME = Main.REPO.getName();
+
+    /** The task listing one directory and, through tasks it forks, the
+     *  directories in it. */
+    private static class Walk extends RecursiveTask<List<String>> {
+
+        /** A task listing the directory DIR, whose path from the root
+         *  is PREFIX, ending in "/" unless it is the root, by the rules
+         *  IGNORE. */
+        Walk(Path dir, String prefix, Ignore ignore) {
+            _dir = dir;
+            _prefix = prefix;
+            _ignore = ignore;
+        }
+
+        @Override
+        protected List<String> compute() {
+            List<String> result = new ArrayList<>();
+            List<Walk> subdirs = new ArrayList<>();
+            try (DirectoryStream<Path> entries =
+                     Files.newDirectoryStream(_dir)) {
+                for (Path p : entries) {
+                    String path = _prefix + p.getFileName();
+                    BasicFileAttributes attrs = Files.readAttributes(
+                            p, BasicFileAttributes.class,
+                            LinkOption.NOFOLLOW_LINKS);
+                    if (attrs.isDirectory()) {
+                        if (!inRepo(path) && !_ignore.matches(path, true)) {
+                            Walk sub = new Walk(p, path + "/", _ignore);
+                            if (inForkJoinPool()) {
+                                sub.fork();
+                            }
+                            subdirs.add(sub);
+                        }
+                    } else if ((attrs.isRegularFile()
+                                || attrs.isSymbolicLink()
+                                && Files.isRegularFile(p))
+                               && !_ignore.matches(path, false)) {
+                        result.add(path);
+                    }
+                }
+            } catch (IOException excp) {
+                throw new UncheckedIOException(excp);
+            }
+            for (Walk sub : subdirs) {
+                result.addAll(inForkJoinPool() ? sub.join() : sub.compute());
+            }
+            return result;
+        }
+
+        /** The directory listed. */
+        private final Path _dir;
+        /** Its path from the root, ending in "/" unless it is the root. */
+        private final String _prefix;
+        /** The rules of what to leave out. */
+        private final Ignore _ignore;
+        /** Serialization version; walks are never serialized. */
+        private static final long serialVersionUID = 1L;
+    }
+}
@@ -0,0 +1,70 @@
+package gitlet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Runs a numbered batch of tasks, such as reading or writing one file
+ *  each, on a fixed pool of worker threads, and waits for all of them.
+ *  The first failure of a task is rethrown to the caller.
+ *  @author Aayush Sutaria
+ */
+class WorkerPool {
+
+    /** One task of a batch. */
+    interface Task {
+        /** Do the task numbered K. */
+        void run(int k) throws IOException;
+    }
+
+    /** Run TASK numbered 0 to COUNT - 1 on the worker threads, or in this
+     *  thread if there is only one worker or task. */
+    static void forEach(int count, Task task) throws IOException {
+        int nThreads = Math.min(threads(), count);
+        if (nThreads <= 1) {
+            for (int k = 0; k < count; k += 1) {
+                task.run(k);
+            }
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+        try {
+            List<Future<?>> pending = new ArrayList<>();
+            for (int k = 0; k < count; k += 1) {
+                int n = k;
+                pending.add(pool.submit(() -> {
+                    task.run(n);
+                    return null;
+                }));
+            }
+            for (Future<?> f : pending) {
+                f.get();
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted");
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Return the number of worker threads to use: the value of the
+     *  system property gitlet.threads, or by default the number of
+     *  available processors. */
+    static int threads() {
+        return Math.max(1, Integer.getInteger("gitlet.threads",
+                Runtime.getRuntime().availableProcessors()));
+    }
+}